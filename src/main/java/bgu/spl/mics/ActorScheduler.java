@@ -0,0 +1,127 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs micro-services as actors on a bounded pool of worker threads (M:N scheduling).
+ * <p>
+ * Instead of owning a thread that blocks in {@link MessageBus#awaitMessage(MicroService)},
+ * a spawned micro-service is scheduled on the pool only when its mailbox is non-empty, or when
+ * the {@link SimulationClock} it follows advanced.
+ * A scheduled service drains up to {@link #BATCH_SIZE} messages, handles them and then yields its
+ * worker, so a busy service cannot starve the others. Each service is scheduled at most
+ * once at a time, so its callbacks still run one message after the other, exactly as
+ * on a dedicated thread.
+ * <p>
+ * Callbacks must not block: a blocked callback holds one of the pool's workers.
+ */
+public class ActorScheduler {
+
+    // Maximal number of messages an actor handles before yielding its worker
+    static final int BATCH_SIZE = 64;
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+    private final ForkJoinPool workers;
+    private final List<Actor> actors = new ArrayList<>();
+
+    /**
+     * @param parallelism The number of worker threads running the actors.
+     */
+    public ActorScheduler(int parallelism) {
+        // asyncMode gives FIFO scheduling of actors that were never joined
+        workers = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Starts {@code service} as an actor. Its registration and {@link MicroService#initialize()}
+     * run on the worker pool, after which it is scheduled whenever messages arrive.
+     *
+     * @param service The micro-service to run.
+     */
+    public void spawn(MicroService service) {
+        Actor actor = new Actor(service);
+        synchronized (actors) {
+            actors.add(actor);
+        }
+        actor.scheduled.set(true);
+        workers.execute(actor);
+    }
+
+    /**
+     * Waits until every spawned micro-service has terminated, then shuts the worker pool down.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitTermination() throws InterruptedException {
+        List<Actor> spawned;
+        synchronized (actors) {
+            spawned = new ArrayList<>(actors);
+        }
+        for (Actor actor : spawned) {
+            actor.done.await();
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // A micro-service together with its scheduling state
+    private final class Actor implements Runnable {
+        private final MicroService service;
+        // True while the actor is queued on, or running in, the worker pool
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Mailbox mailbox; // Set once the service is registered
+        // Reused between runs, only ever touched by the worker currently running the actor
+        private final List<Message> batch = new ArrayList<>(BATCH_SIZE);
+
+        private Actor(MicroService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (mailbox == null) {
+                    // First run: register, subscribe and start listening for messages
+                    service.start();
+                    mailbox = messageBus.getMailbox(service);
+                    mailbox.setListener(this::schedule);
+                } else {
+                    mailbox.drainTo(batch, BATCH_SIZE);
+                    service.handleTicks();
+                    service.dispatchBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                // Same as a service thread dying: report, then unregister below
+                e.printStackTrace();
+                service.terminate();
+            }
+
+            if (service.isTerminated()) {
+                // Stays "scheduled" forever, so it is never run again
+                service.stop();
+                done.countDown();
+                return;
+            }
+            mailbox.enterIdle(); // Waits for messages until scheduled again
+            scheduled.set(false);
+            // A message may have arrived after the last drain but before scheduled was cleared
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+
+        // Queues the actor on the pool, unless it is already queued or running
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                mailbox.leaveIdle();
+                workers.execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package bgu.spl.mics;
+
+/**
+ * Determines how a broadcast reaches the micro-services subscribed to its type.
+ * <p>
+ * The mode is chosen per broadcast type with
+ * {@link MessageBusImpl#setBroadcastMode(Class, BroadcastMode)}.
+ */
+public enum BroadcastMode {
+
+    /**
+     * The sender adds the broadcast to the mailbox of every subscriber. This is the default.
+     */
+    FAN_OUT,
+
+    /**
+     * The sender appends the broadcast once to the log of its type, and only wakes the idle
+     * subscribers. Each subscriber reads the log with its own cursor, and a broadcast is moved
+     * to its mailbox when the subscriber takes its next message, or when the next message is
+     * sent to it - so broadcasts keep their order relative to the subscriber's other messages.
+     * Sending costs the same however many micro-services subscribe.
+     */
+    TOPIC;
+
+    /**
+     * Parses a configuration value such as "fan_out" or "topic" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching mode.
+     * @throws IllegalArgumentException if the value does not name a mode.
+     */
+    public static BroadcastMode fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
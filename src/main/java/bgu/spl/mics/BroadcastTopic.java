@@ -0,0 +1,204 @@
+package bgu.spl.mics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The append-only log of a single {@link Broadcast} type in {@link BroadcastMode#TOPIC} mode.
+ * <p>
+ * A sender appends a broadcast once, and every subscribed mailbox reads the log with its own
+ * {@link Cursor}. The log is a chain of fixed-size segments; the topic only keeps the last one,
+ * so segments every cursor has moved past are garbage collected.
+ * <p>
+ * Every broadcast is stamped with a sequence number shared by all the topics of the bus, so a
+ * mailbox reading several topics reads their broadcasts in the order they were sent.
+ * <p>
+ * A cursor may have a filter. Broadcasts it rejects are skipped, and do not wake the mailbox.
+ * <p>
+ * Publishing wakes only the mailboxes that are idle (see {@link Mailbox#enterIdle()}). A busy mailbox
+ * checks its topics once more after it goes idle, so it reads the broadcast before it waits.
+ */
+final class BroadcastTopic {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    private static final class Segment {
+        final Broadcast[] broadcasts = new Broadcast[SEGMENT_SIZE];
+        final long[] sequences = new long[SEGMENT_SIZE];
+        // Set before the first broadcast of the next segment is published
+        Segment next;
+    }
+
+    /**
+     * The read position of one mailbox in the topic. Not thread-safe: the owning mailbox
+     * guards it.
+     */
+    static final class Cursor {
+        private final BroadcastTopic topic;
+        private final Mailbox mailbox;
+        private final Predicate<Message> filter; // Null if the mailbox accepts every broadcast
+        private Segment segment;
+        private int index;
+        // Number of broadcasts read so far, counted from the start of the log
+        private long position;
+
+        private Cursor(BroadcastTopic topic, Mailbox mailbox, Predicate<Message> filter,
+                       Segment segment, int index, long position) {
+            this.topic = topic;
+            this.mailbox = mailbox;
+            this.filter = filter;
+            this.segment = segment;
+            this.index = index;
+            this.position = position;
+        }
+
+        /**
+         * @return true if a broadcast was published after the last one read, including a broadcast
+         *         the filter rejects (see {@link #skipRejected()}).
+         */
+        boolean hasUnread() {
+            return position < topic.published;
+        }
+
+        /**
+         * Moves past the unread broadcasts the filter rejects.
+         *
+         * @return true if an accepted broadcast is unread.
+         */
+        boolean skipRejected() {
+            while (hasUnread()) {
+                if (accepts(peek())) {
+                    return true;
+                }
+                advance();
+            }
+            return false;
+        }
+
+        private boolean accepts(Broadcast b) {
+            return filter == null || filter.test(b);
+        }
+
+        /**
+         * @return the sequence number of the next unread broadcast. Requires {@link #hasUnread()}.
+         */
+        long nextSequence() {
+            skipFullSegment();
+            return segment.sequences[index];
+        }
+
+        /**
+         * @return the next unread broadcast, without moving past it. Requires {@link #hasUnread()}.
+         */
+        Broadcast peek() {
+            skipFullSegment();
+            return segment.broadcasts[index];
+        }
+
+        /**
+         * Moves past the broadcast returned by {@link #peek()}.
+         */
+        void advance() {
+            index++;
+            position++;
+        }
+
+        BroadcastTopic getTopic() {
+            return topic;
+        }
+
+        /**
+         * Asks the topic to wake the mailbox on the next accepted broadcast. Called when the mailbox goes
+         * idle, before its taker checks the topics once more: a broadcast published meanwhile is either
+         * seen by that check, or published after the cursor was parked.
+         */
+        void park() {
+            topic.parked.add(this);
+        }
+
+        /**
+         * Stops waking the mailbox on every broadcast, once it is busy again.
+         */
+        void unpark() {
+            topic.parked.remove(this);
+        }
+
+        private void skipFullSegment() {
+            if (index == SEGMENT_SIZE) {
+                segment = segment.next;
+                index = 0;
+            }
+        }
+    }
+
+    private final AtomicLong sequence;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment tail = new Segment(); // Guarded by appendLock
+    private int tailIndex; // Guarded by appendLock
+    // Number of broadcasts appended; written under appendLock after the broadcast, so readers see it complete
+    private volatile long published;
+    // The cursors of the idle mailboxes reading this topic, whose mailboxes are woken on every accepted broadcast
+    private final Set<Cursor> parked = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param sequence The sequence shared by all the topics of the bus.
+     */
+    BroadcastTopic(AtomicLong sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Appends {@code b} to the log and wakes the idle subscribed mailboxes.
+     */
+    void publish(Broadcast b) {
+        appendLock.lock();
+        try {
+            if (tailIndex == SEGMENT_SIZE) {
+                Segment next = new Segment();
+                tail.next = next;
+                tail = next;
+                tailIndex = 0;
+            }
+            tail.broadcasts[tailIndex] = b;
+            tail.sequences[tailIndex] = sequence.incrementAndGet();
+            tailIndex++;
+            published++;
+        } finally {
+            appendLock.unlock();
+        }
+        // After published was written: an idle mailbox missed b when it last checked, so it was parked before
+        for (Cursor reader : parked) {
+            if (reader.accepts(b)) {
+                reader.mailbox.broadcastPublished();
+            }
+        }
+    }
+
+    /**
+     * Subscribes {@code mailbox} to the broadcasts published from now on. Called by the micro-service
+     * owning {@code mailbox}, which is busy meanwhile.
+     *
+     * @param filter The broadcasts {@code mailbox} accepts, or null for all of them.
+     */
+    void subscribe(Mailbox mailbox, Predicate<Message> filter) {
+        Cursor cursor;
+        appendLock.lock();
+        try {
+            cursor = new Cursor(this, mailbox, filter, tail, tailIndex, published);
+        } finally {
+            appendLock.unlock();
+        }
+        mailbox.addCursor(cursor);
+    }
+
+    /**
+     * Stops delivering broadcasts to {@code mailbox}.
+     */
+    void unsubscribe(Mailbox mailbox) {
+        mailbox.removeCursor(this);
+        parked.removeIf(cursor -> cursor.mailbox == mailbox);
+    }
+}
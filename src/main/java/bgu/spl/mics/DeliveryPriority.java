@@ -0,0 +1,20 @@
+package bgu.spl.mics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the {@link MessagePriority} of a message class. Messages of classes without
+ * this annotation have NORMAL priority.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DeliveryPriority {
+
+    /**
+     * @return The priority of messages of the annotated class.
+     */
+    MessagePriority value();
+}
@@ -0,0 +1,172 @@
+package bgu.spl.mics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Runs micro-services as actors one after the other on a single thread, for reproducible runs.
+ * <p>
+ * Like the {@link ActorScheduler}, a spawned micro-service runs only when its mailbox is
+ * non-empty, or when the {@link SimulationClock} it follows advanced, and handles up to
+ * {@link ActorScheduler#BATCH_SIZE} messages per run. Instead of a worker pool, the actors with
+ * work wait in a first-in first-out run queue, which {@link #runUntilIdle()} empties on the
+ * calling thread, in rounds: every actor of a round takes its messages before the first one
+ * handles them, as services on their own threads would all take a broadcast they were waiting
+ * for before the messages it causes reach them. The messages sent meanwhile go to the next round,
+ * and the services terminated in a round only stop, and run their lifecycle actions, once every
+ * actor of the round handled its messages, as a service thread stops after the others took their turn.
+ * Nothing ever blocks on a queue, and the order in which the services run only depends on the
+ * order of the messages: a broadcast schedules its subscribers in the order they subscribed, and
+ * services spawned together initialize in the order they were spawned.
+ * <p>
+ * Every method must be called on the thread that created the scheduler, and so must every
+ * message be sent: the services, and a driver sending them messages between runs of the queue.
+ * Callbacks must not block, since no other service runs meanwhile. For the same reason, a message
+ * sent to a full mailbox which would make its sender wait for room throws an
+ * {@link IllegalStateException} instead (see {@link OverflowPolicy#BLOCK} and {@link Undroppable}).
+ */
+public class DeterministicScheduler {
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+    private final Thread owner = Thread.currentThread();
+    // The actors waiting for the next round, each at most once
+    private final Queue<Actor> runQueue = new ArrayDeque<>();
+    // The actors of the current round which took their messages and did not handle them yet
+    private final Queue<Actor> round = new ArrayDeque<>();
+    // The actors terminated in the current round, stopped once it is over
+    private final List<Actor> terminated = new ArrayList<>();
+    private final List<Actor> actors = new ArrayList<>();
+
+    /**
+     * Spawns {@code service} as an actor. Its registration and {@link MicroService#initialize()}
+     * are its first run, after which it is scheduled whenever messages arrive.
+     *
+     * @param service The micro-service to run.
+     */
+    public void spawn(MicroService service) {
+        checkOwner();
+        Actor actor = new Actor(service);
+        actors.add(actor);
+        actor.scheduled = true;
+        runQueue.add(actor);
+    }
+
+    /**
+     * Runs the actors in the run queue, and those they schedule in turn, until none has anything
+     * left to do. May be called by a running actor, to let the others handle what it sent them:
+     * the caller is not run again meanwhile.
+     */
+    public void runUntilIdle() {
+        checkOwner();
+        while (!round.isEmpty() || !runQueue.isEmpty()) {
+            if (round.isEmpty()) {
+                // Next round
+                Actor actor;
+                while ((actor = runQueue.poll()) != null) {
+                    actor.take();
+                    round.add(actor);
+                }
+            }
+            round.poll().run();
+            if (round.isEmpty()) {
+                stopTerminated();
+            }
+        }
+    }
+
+    /**
+     * Runs the actors until none has anything left to do, and checks that they all terminated.
+     *
+     * @throws IllegalStateException if some services wait for messages no one is left to send.
+     */
+    public void awaitTermination() {
+        runUntilIdle();
+        List<String> waiting = new ArrayList<>();
+        for (Actor actor : actors) {
+            if (!actor.service.isTerminated()) {
+                waiting.add(actor.service.getName());
+            }
+        }
+        if (!waiting.isEmpty()) {
+            throw new IllegalStateException("No message is left for the services still running: " + waiting);
+        }
+    }
+
+    // Stops the actors terminated in the round just over
+    private void stopTerminated() {
+        while (!terminated.isEmpty()) {
+            terminated.remove(0).service.stop();
+        }
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("A deterministic scheduler runs on the thread that created it, not on "
+                    + Thread.currentThread().getName() + ".");
+        }
+    }
+
+    // A micro-service together with its scheduling state
+    private final class Actor {
+        private final MicroService service;
+        // True while the actor is in the run queue, or running
+        private boolean scheduled;
+        private Mailbox mailbox; // Set once the service is registered
+        // Reused between runs
+        private final List<Message> batch = new ArrayList<>(ActorScheduler.BATCH_SIZE);
+
+        private Actor(MicroService service) {
+            this.service = service;
+        }
+
+        // Takes the messages of this run, if the service is registered already
+        private void take() {
+            if (mailbox != null) {
+                mailbox.drainTo(batch, ActorScheduler.BATCH_SIZE);
+            }
+        }
+
+        private void run() {
+            try {
+                if (mailbox == null) {
+                    // First run: register, subscribe and start listening for messages
+                    service.start();
+                    mailbox = messageBus.getMailbox(service);
+                    mailbox.setListener(this::schedule);
+                    mailbox.forbidWaitingForRoom(); // Nobody could make room meanwhile
+                } else {
+                    service.handleTicks();
+                    service.dispatchBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                // Same as a service thread dying: report, then unregister below
+                e.printStackTrace();
+                service.terminate();
+            }
+
+            if (service.isTerminated()) {
+                // Stays "scheduled" forever, so it is never run again
+                terminated.add(this);
+                return;
+            }
+            mailbox.enterIdle(); // Waits for messages until scheduled again
+            scheduled = false;
+            // Messages it sent itself, or more than one batch
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+
+        // Queues the actor, unless it is already queued or running
+        private void schedule() {
+            checkOwner();
+            if (!scheduled) {
+                scheduled = true;
+                mailbox.leaveIdle();
+                runQueue.add(this);
+            }
+        }
+    }
+}
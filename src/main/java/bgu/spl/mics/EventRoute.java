@@ -0,0 +1,256 @@
+package bgu.spl.mics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * The routing table of a single {@link Event} type.
+ * <p>
+ * Holds an immutable snapshot of the subscribed micro-services together with their
+ * mailboxes, and an atomic cursor used to pick the next subscriber in a
+ * round-robin fashion. The snapshot is copied and replaced only when a micro-service
+ * subscribes or unsubscribes, so choosing a subscriber never takes a lock.
+ * <p>
+ * The subscriber is chosen according to the route's {@link RoutingStrategy}; strategies that
+ * look at queue depths read them from the mailboxes without locking. For key affinity, each
+ * snapshot has a consistent-hash ring of its subscribers, built the first time it is needed.
+ * <p>
+ * A subscriber may have a filter. If the chosen subscriber's filter rejects an event, the event
+ * goes to the next subscriber in round-robin order that accepts it.
+ */
+final class EventRoute {
+
+    /**
+     * A single routing target - a subscribed micro-service, its mailbox and its filter.
+     */
+    static final class Target {
+        final MicroService service;
+        final Mailbox mailbox;
+        final Predicate<Message> filter; // Null if the target accepts every event
+
+        Target(MicroService service, Mailbox mailbox, Predicate<Message> filter) {
+            this.service = service;
+            this.mailbox = mailbox;
+            this.filter = filter;
+        }
+
+        boolean accepts(Event<?> event) {
+            return filter == null || filter.test(event);
+        }
+    }
+
+    // Points each subscriber has on the hash ring; more points spread the keys more evenly
+    private static final int VIRTUAL_NODES = 64;
+
+    // Immutable snapshot of the subscribers, with their hash ring once it was needed
+    private static final class Table {
+        final Target[] targets;
+        // True if any target has a filter
+        final boolean filtered;
+        // Built on demand; two threads may both build it, with equal results
+        private volatile Ring ring;
+
+        Table(Target[] targets) {
+            this.targets = targets;
+            boolean anyFilter = false;
+            for (Target target : targets) {
+                anyFilter |= target.filter != null;
+            }
+            this.filtered = anyFilter;
+        }
+
+        // The owner of a key: the first ring position at or after its hash, wrapping around
+        Target owner(Object key) {
+            Ring current = ring;
+            if (current == null) {
+                current = new Ring(targets);
+                ring = current;
+            }
+            return current.owner(key);
+        }
+    }
+
+    // Consistent-hash ring of a set of targets
+    private static final class Ring {
+        final int[] ringHashes; // Sorted positions on the ring
+        final Target[] ringOwners; // ringOwners[i] owns the keys hashed up to ringHashes[i]
+
+        Ring(Target[] targets) {
+            long[] points = new long[targets.length * VIRTUAL_NODES];
+            for (int t = 0; t < targets.length; t++) {
+                // Identity hashes are stable for the lifetime of the service, names may repeat
+                int seed = System.identityHashCode(targets[t].service);
+                for (int v = 0; v < VIRTUAL_NODES; v++) {
+                    // Ring position in the high bits, owner in the low bits, so sorting keeps them together
+                    points[t * VIRTUAL_NODES + v] = ((long) mix(seed * 31 + v) << 32) | t;
+                }
+            }
+            Arrays.sort(points);
+            ringHashes = new int[points.length];
+            ringOwners = new Target[points.length];
+            for (int i = 0; i < points.length; i++) {
+                ringHashes[i] = (int) (points[i] >> 32);
+                ringOwners[i] = targets[(int) points[i]];
+            }
+        }
+
+        Target owner(Object key) {
+            int index = Arrays.binarySearch(ringHashes, mix(key.hashCode()));
+            if (index < 0) {
+                index = -index - 1; // Insertion point
+            }
+            return ringOwners[index == ringOwners.length ? 0 : index];
+        }
+    }
+
+    private static final Table EMPTY = new Table(new Target[0]);
+
+    // Immutable snapshot of the current subscribers, replaced on every change
+    private volatile Table table = EMPTY;
+    // Round-robin position, shared by all senders of this event type
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile RoutingStrategy strategy = RoutingStrategy.ROUND_ROBIN;
+
+    /**
+     * Picks the subscriber for {@code event} according to the routing strategy.
+     *
+     * @return the chosen target, or null if there are no subscribers, or none accepts {@code event}.
+     */
+    Target next(Event<?> event) {
+        Table snapshot = table; // Single volatile read
+        Target chosen = choose(snapshot, event);
+        if (chosen == null || !snapshot.filtered || chosen.accepts(event)) {
+            return chosen;
+        }
+        return nextAccepting(snapshot.targets, event);
+    }
+
+    // Picks a target by the routing strategy alone, or returns null if there are none
+    private Target choose(Table snapshot, Event<?> event) {
+        Target[] targets = snapshot.targets;
+        int length = targets.length;
+        if (length == 0) {
+            return null;
+        }
+        if (length == 1) {
+            return targets[0]; // Nothing to choose from
+        }
+        switch (strategy) {
+            case LEAST_QUEUE_DEPTH:
+                return leastQueueDepth(targets);
+            case POWER_OF_TWO_CHOICES:
+                return powerOfTwoChoices(targets);
+            case KEY_AFFINITY:
+                Object key = event instanceof KeyedEvent ? ((KeyedEvent<?>) event).getRoutingKey() : null;
+                return key != null ? snapshot.owner(key) : roundRobin(targets); // No key - round-robin
+            default:
+                return roundRobin(targets);
+        }
+    }
+
+    private Target roundRobin(Target[] snapshot) {
+        // floorMod keeps the index valid after the cursor overflows
+        return snapshot[Math.floorMod(cursor.getAndIncrement(), snapshot.length)];
+    }
+
+    // Returns the first target accepting event, in round-robin order, or null if none does
+    private Target nextAccepting(Target[] snapshot, Event<?> event) {
+        int start = Math.floorMod(cursor.getAndIncrement(), snapshot.length);
+        for (int i = 0; i < snapshot.length; i++) {
+            Target candidate = snapshot[(start + i) % snapshot.length];
+            if (candidate.accepts(event)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // Scans all targets, starting at the round-robin position so ties are spread evenly
+    private Target leastQueueDepth(Target[] snapshot) {
+        int start = Math.floorMod(cursor.getAndIncrement(), snapshot.length);
+        Target best = snapshot[start];
+        int bestDepth = best.mailbox.size();
+        for (int i = 1; i < snapshot.length && bestDepth > 0; i++) {
+            Target candidate = snapshot[(start + i) % snapshot.length];
+            int depth = candidate.mailbox.size();
+            if (depth < bestDepth) {
+                best = candidate;
+                bestDepth = depth;
+            }
+        }
+        return best;
+    }
+
+    // Samples two distinct targets and keeps the one with the shorter queue
+    private Target powerOfTwoChoices(Target[] snapshot) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(snapshot.length);
+        int second = random.nextInt(snapshot.length - 1);
+        if (second >= first) {
+            second++; // Skip the first choice, so the two are distinct
+        }
+        Target a = snapshot[first];
+        Target b = snapshot[second];
+        return b.mailbox.size() < a.mailbox.size() ? b : a;
+    }
+
+    // Spreads the bits of a hash code (the MurmurHash3 finalizer), so similar keys land far apart on the ring
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Sets the strategy used by {@link #next(Event)} from now on.
+     */
+    void setStrategy(RoutingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Adds {@code service} to the routing table. Subscribing twice has no effect.
+     *
+     * @param filter The events {@code service} accepts, or null for all of them.
+     */
+    synchronized void add(MicroService service, Mailbox mailbox, Predicate<Message> filter) {
+        Target[] current = table.targets;
+        for (Target target : current) {
+            if (target.service == service) {
+                return;
+            }
+        }
+        Target[] updated = new Target[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new Target(service, mailbox, filter);
+        table = new Table(updated);
+    }
+
+    /**
+     * Removes {@code service} from the routing table if it is subscribed.
+     */
+    synchronized void remove(MicroService service) {
+        Target[] current = table.targets;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].service == service) {
+                Target[] updated = new Target[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                table = updated.length == 0 ? EMPTY : new Table(updated);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of subscribers currently in the routing table.
+     */
+    int size() {
+        return table.targets.length;
+    }
+}
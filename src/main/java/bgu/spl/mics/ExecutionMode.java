@@ -0,0 +1,91 @@
+package bgu.spl.mics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Determines which kind of thread runs the event loop of each {@link MicroService}.
+ * <p>
+ * The mode is chosen in the configuration file (the optional "ExecutionMode" key).
+ */
+public enum ExecutionMode {
+
+    /**
+     * Every micro-service runs on its own platform (OS) thread. This is the default.
+     */
+    PLATFORM,
+
+    /**
+     * Every micro-service runs on its own virtual thread. A service blocked in
+     * {@link MessageBus#awaitMessage(MicroService)} does not hold an OS thread, so
+     * thousands of services can be simulated. Requires a Java 21+ runtime.
+     */
+    VIRTUAL,
+
+    /**
+     * Micro-services are actors run by an {@link ActorScheduler}: a fixed pool of worker
+     * threads runs a service only when its mailbox is non-empty. Threads created by
+     * {@link #newThread(Runnable, String)} in this mode are platform threads, for services
+     * that drive themselves instead of reacting to messages (such as a timer).
+     */
+    ACTOR,
+
+    /**
+     * Micro-services are actors run one after the other on a single thread by a
+     * {@link DeterministicScheduler}, in an order that only depends on the messages, so repeated
+     * runs are identical. A service driving the others runs on that thread too, and lets them
+     * run by waiting for quiescence (see {@link MicroService#awaitQuiescence()}).
+     */
+    DETERMINISTIC;
+
+    /**
+     * Parses a configuration value such as "platform", "virtual", "actor" or "deterministic" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching mode.
+     * @throws IllegalArgumentException if the value does not name a mode.
+     */
+    public static ExecutionMode fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * @return true if this mode can run on the current JVM.
+     */
+    public boolean isSupported() {
+        return this != VIRTUAL || VirtualThreads.FACTORY != null;
+    }
+
+    /**
+     * Creates an unstarted thread of this mode for {@code task}.
+     * If virtual threads are not supported by the running JVM, a platform thread is
+     * created instead.
+     *
+     * @param task The runnable to execute, usually a micro-service.
+     * @param name The name of the thread.
+     * @return The new, unstarted thread.
+     */
+    public Thread newThread(Runnable task, String name) {
+        Thread thread = (this == VIRTUAL && VirtualThreads.FACTORY != null)
+                ? VirtualThreads.FACTORY.newThread(task)
+                : new Thread(task);
+        thread.setName(name);
+        return thread;
+    }
+
+    // Looks up the virtual thread factory reflectively, so the project still builds and
+    // runs (with platform threads) on runtimes older than Java 21.
+    private static class VirtualThreads {
+        private static final ThreadFactory FACTORY = lookupFactory();
+
+        private static ThreadFactory lookupFactory() {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                return null; // Virtual threads are not available on this runtime
+            }
+        }
+    }
+}
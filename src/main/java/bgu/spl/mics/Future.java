@@ -1,29 +1,32 @@
 package bgu.spl.mics;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
 /**
  * A Future object represents a promised result - an object that will
  * eventually be resolved to hold a result of some operation. The class allows
  * Retrieving the result once it is available.
+ * <p>
+ * Besides blocking on {@link #get()}, a sender may register continuations with
+ * {@link #onComplete(Callback)} or {@link #thenApply(Function)}. These run once the
+ * Future is resolved, without parking any thread.
  *
- * Only private methods may be added to this class.
  * No public constructor is allowed except for the empty constructor.
  */
 public class Future<T> {
 
 	// Added fields
-	private T result;
-	private boolean isDone;
-	// A private lock object used for synchronization.
-	private final Object lock = new Object();
+	// The state is either a stack of pending continuations (null when there are none)
+	// or a Resolved holder. Every transition is a compare-and-set, no locks are taken.
+	private final AtomicReference<Object> state = new AtomicReference<>(null);
 
 	/**
 	 * This should be the only public constructor in this class.
 	 */
 	public Future() {
-		result = null;
-		isDone = false;
 	}
 
 	/**
@@ -35,39 +38,37 @@ public class Future<T> {
 	 *
 	 */
 	public T get() {
-		synchronized (lock) {
-			// Block until the result is resolved
-			while (!isDone) { // Check if future is resolved
-				try {
-					lock.wait(); // Wait until notified by resolve()
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt(); // Restore interrupt status
-				}
-			}
-			return result;
+		Object current = state.get();
+		if (!(current instanceof Resolved)) { // Fast path - already resolved, no waiting needed
+			current = awaitResolution(false, 0L);
 		}
+		return valueOf(current);
 	}
 
 	/**
 	 * Resolves the result of this Future object.
+	 * Continuations registered so far are run by the calling thread, in registration order.
 	 */
 	public void resolve (T result) {
-		synchronized (lock) {
-			if (!isDone) { // Ensure the result is set only once
-				this.result = result;  // Store the result
-				isDone = true;         // Mark the Future as resolved
-				lock.notifyAll();      // Notify all threads waiting on the lock
+		Resolved<T> resolved = new Resolved<>(result);
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Resolved) {
+				return; // Ensure the result is set only once
 			}
-		}
+		} while (!state.compareAndSet(current, resolved));
+
+		@SuppressWarnings("unchecked") // Anything but a Resolved holder is the continuation stack
+		Continuation<T> pending = (Continuation<T>) current;
+		runContinuations(pending, result);
 	}
 
 	/**
 	 * @return true if this object has been resolved, false otherwise
 	 */
 	public boolean isDone() {
-		synchronized (lock) {
-			return isDone; // Return whether the Future is resolved
-		}
+		return state.get() instanceof Resolved;
 	}
 
 	/**
@@ -82,22 +83,169 @@ public class Future<T> {
 	 *         elapsed, return null.
 	 */
 	public T get(long timeout, TimeUnit unit) {
-		synchronized (lock) {
-			if (!isDone) { // Wait only if the Future is not resolved
-				try {
-					long timeoutMillis = unit.toMillis(timeout); // Convert timeout to milliseconds
-					long endTime = System.currentTimeMillis() + timeoutMillis; // Calculate end time
-					while (!isDone && System.currentTimeMillis() < endTime) {
-						long remainingTime = endTime - System.currentTimeMillis();
-						if (remainingTime > 0) {
-							lock.wait(remainingTime); // Wait for the remaining time
-						}
-					}
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt(); // Restore interrupt status
+		Object current = state.get();
+		if (!(current instanceof Resolved)) { // Wait only if the Future is not resolved
+			current = awaitResolution(true, unit.toNanos(timeout));
+		}
+		return current instanceof Resolved ? valueOf(current) : null; // Return result if resolved, otherwise null
+	}
+
+	/**
+	 * Registers {@code callback} to be called with the result once this Future is resolved.
+	 * If it is already resolved, the callback is called immediately by the calling thread.
+	 * Otherwise it is called by the thread that resolves the Future, so it should be short
+	 * and must not block.
+	 * <p>
+	 * @param callback	the continuation to call with the result.
+	 */
+	public void onComplete(Callback<? super T> callback) {
+		if (!push(new Continuation<>(callback, null))) {
+			callback.call(valueOf(state.get()));
+		}
+	}
+
+	/**
+	 * Returns a new Future that is resolved with {@code function} applied to the result
+	 * of this Future. The function runs under the same rules as {@link #onComplete(Callback)}.
+	 * If it throws, the returned Future is resolved with null, like an event nobody handled.
+	 * <p>
+	 * @param <U>		the result type of the returned Future.
+	 * @param function	the transformation to apply to the result.
+	 * @return a Future of the transformed result.
+	 */
+	public <U> Future<U> thenApply(Function<? super T, ? extends U> function) {
+		Future<U> next = new Future<>();
+		onComplete(result -> {
+			U value;
+			try {
+				value = function.apply(result);
+			} catch (RuntimeException e) {
+				value = null; // Resolved anyway, so nobody waits for next forever
+			}
+			next.resolve(value);
+		});
+		return next;
+	}
+
+	// Pushes continuation on top of the pending continuations, unlinking the cancelled waiters on top.
+	// Returns false if the Future is already resolved.
+	private boolean push(Continuation<T> continuation) {
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Resolved) {
+				return false;
+			}
+			@SuppressWarnings("unchecked") // Anything but a Resolved holder is the continuation stack
+			Continuation<T> pending = (Continuation<T>) current;
+			while (pending != null && pending.isCancelled()) {
+				pending = pending.next;
+			}
+			continuation.next = pending;
+		} while (!state.compareAndSet(current, continuation));
+		return true;
+	}
+
+	// Parks the calling thread until the Future is resolved (or the timeout elapses, if timed)
+	// and returns the last observed state.
+	private Object awaitResolution(boolean timed, long timeoutNanos) {
+		// Pushed like a continuation, so resolve wakes this thread
+		Continuation<T> waiter = new Continuation<>(null, Thread.currentThread());
+		if (!push(waiter)) {
+			return state.get(); // Resolved meanwhile
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		boolean interrupted = false;
+		Object current;
+		while (!((current = state.get()) instanceof Resolved)) {
+			if (timed) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || interrupted) {
+					break; // Time has elapsed, or a timed wait was interrupted
 				}
+				LockSupport.parkNanos(this, remaining);
+			} else {
+				LockSupport.park(this);
+			}
+			if (Thread.interrupted()) {
+				interrupted = true; // Keep waiting, the status is restored below
 			}
-			return isDone ? result : null; // Return result if resolved, otherwise null
+		}
+		if (!(current instanceof Resolved)) {
+			// Gave up waiting: cancel the waiter, so it does not stay on the stack until the Future is resolved
+			waiter.waiter = null;
+			state.compareAndSet(waiter, waiter.next); // Unlinked later by push if not on top anymore
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt(); // Restore interrupt status
+		}
+		return current;
+	}
+
+	// Runs the continuations of a stack in registration order (the stack holds the newest on top).
+	private static <T> void runContinuations(Continuation<T> top, T result) {
+		Continuation<T> reversed = null;
+		while (top != null) {
+			Continuation<T> next = top.next;
+			top.next = reversed;
+			reversed = top;
+			top = next;
+		}
+		for (Continuation<T> c = reversed; c != null; c = c.next) {
+			if (c.callback == null) {
+				Thread waiter = c.waiter;
+				if (waiter != null) {
+					LockSupport.unpark(waiter);
+				}
+				continue;
+			}
+			try {
+				c.callback.call(result);
+			} catch (RuntimeException e) {
+				// A failing continuation must not prevent the others, or break the resolving service
+			}
+		}
+	}
+
+	// Returns the number of continuations and waiters on the stack, for tests
+	int pendingContinuations() {
+		Object current = state.get();
+		int count = 0;
+		if (!(current instanceof Resolved)) {
+			for (Continuation<?> c = (Continuation<?>) current; c != null; c = c.next) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked") // Only called with a Resolved holder of this Future
+	private static <T> T valueOf(Object resolved) {
+		return ((Resolved<T>) resolved).value;
+	}
+
+	// Holder for the result, distinguishing a resolved null from "not resolved yet"
+	private static final class Resolved<T> {
+		private final T value;
+
+		private Resolved(T value) {
+			this.value = value;
+		}
+	}
+
+	// A node in the stack of continuations waiting for the result: a callback, or a thread parked in get
+	private static final class Continuation<T> {
+		private final Callback<? super T> callback; // Null for a parked thread
+		private volatile Thread waiter; // The parked thread, cleared once it stops waiting
+		private Continuation<T> next;
+
+		private Continuation(Callback<? super T> callback, Thread waiter) {
+			this.callback = callback;
+			this.waiter = waiter;
+		}
+
+		private boolean isCancelled() {
+			return callback == null && waiter == null;
 		}
 	}
 }
@@ -0,0 +1,17 @@
+package bgu.spl.mics;
+
+/**
+ * An {@link Event} with a routing key. When its event type is routed with
+ * {@link RoutingStrategy#KEY_AFFINITY}, all events with equal keys go to the same subscriber
+ * for as long as the subscribers don't change.
+ *
+ * @param <T> the type of the expected result of the event.
+ */
+public interface KeyedEvent<T> extends Event<T> {
+
+    /**
+     * @return the routing key of this event (compared by {@code equals} and {@code hashCode}),
+     *         or null to route this event in round-robin order.
+     */
+    Object getRoutingKey();
+}
@@ -0,0 +1,384 @@
+package bgu.spl.mics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Mailbox} guarded by a single lock (see {@link MailboxType#LOCKING}).
+ * <p>
+ * Each priority lane is an {@code ArrayDeque}. Holding the lock, a sender can remove queued
+ * messages, so every {@link OverflowPolicy} is supported.
+ * <p>
+ * Topic broadcasts are read under the lock, so the lock also guards the cursors.
+ */
+final class LockingMailbox extends Mailbox {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // One FIFO lane per priority, indexed by MessagePriority.ordinal(), guarded by lock
+    private final List<ArrayDeque<Message>> lanes;
+    // Total number of queued messages, written under lock and volatile so routing can read it without locking
+    private volatile int size;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final MailboxCounters counters;
+    private int peakSize; // Largest size reported to the counters, guarded by lock
+    private boolean closed; // Guarded by lock
+    // True while the taker waits for a message, so a topic only takes the lock to wake a waiting taker
+    private volatile boolean takerWaiting;
+
+    /**
+     * Creates an unbounded mailbox.
+     */
+    LockingMailbox() {
+        this(MailboxConfig.UNBOUNDED, new MailboxCounters());
+    }
+
+    /**
+     * @param config   The capacity and overflow policy of the mailbox.
+     * @param counters The counters to update whenever the overflow policy fires.
+     */
+    LockingMailbox(MailboxConfig config, MailboxCounters counters) {
+        lanes = new ArrayList<>(MessagePriority.values().length);
+        for (int i = 0; i < MessagePriority.values().length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+        this.capacity = config.getCapacity();
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.counters = counters;
+    }
+
+    @Override
+    Message add(Message message) {
+        Message dropped;
+        lock.lock();
+        try {
+            readBroadcasts(true);
+            dropped = enqueue(message);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        notifyListener();
+        return dropped;
+    }
+
+    // Takes the lock once for all the messages
+    @Override
+    void addAll(List<? extends Message> messages, Collection<? super Message> dropped) {
+        lock.lock();
+        try {
+            readBroadcasts(true);
+            for (Message message : messages) {
+                Message droppedMessage = enqueue(message);
+                if (droppedMessage != null) {
+                    dropped.add(droppedMessage);
+                }
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        notifyListener();
+    }
+
+    // Applies the overflow policy if needed, then queues message. Requires lock. Returns the dropped message, if any.
+    // An undroppable message waits for room, and so does any message when only undroppable ones are queued.
+    private Message enqueue(Message message) {
+        Message dropped = null;
+        ArrayDeque<Message> lane = laneOf(message);
+        if (size >= capacity && !closed) {
+            switch (isDroppable(message) ? overflowPolicy : OverflowPolicy.BLOCK) {
+                case BLOCK:
+                    if (!awaitRoom()) {
+                        return message;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropped = removeOldestOfLowestLane();
+                    if (dropped != null) {
+                        counters.incrementDroppedOldest();
+                    } else if (!awaitRoom()) {
+                        return message;
+                    }
+                    break;
+                case DROP_NEWEST:
+                    counters.incrementDroppedNewest();
+                    return message;
+                case COALESCE:
+                    dropped = removeOldestOfType(lane, message.getClass());
+                    if (dropped != null) {
+                        counters.incrementCoalesced();
+                    } else if ((dropped = removeOldestOfLowestLane()) != null) {
+                        counters.incrementDroppedOldest();
+                    } else if (!awaitRoom()) {
+                        return message;
+                    }
+                    break;
+            }
+        }
+        if (closed) {
+            return message; // The service was unregistered, nobody will take the message
+        }
+        lane.addLast(message);
+        size++;
+        if (size > peakSize) {
+            peakSize = size;
+            counters.updateHighWaterMark(peakSize);
+        }
+        return dropped;
+    }
+
+    // Moves the unread topic broadcasts to the lanes, in the order they were sent, so they are taken before
+    // anything added later. A sender applies the overflow policy (see enqueueBroadcast); the taker only
+    // reads while there is room, since it cannot wait for room itself. Requires lock.
+    private void readBroadcasts(boolean sender) {
+        BroadcastTopic.Cursor cursor;
+        while ((sender || size < capacity) && (cursor = nextUnreadCursor()) != null) {
+            enqueueBroadcast(cursor.peek());
+            cursor.advance();
+        }
+    }
+
+    // Queues a broadcast read from a topic. Unlike enqueue, never removes a message of another type to
+    // make room, since nobody would discard it: a full mailbox coalesces the broadcast under COALESCE,
+    // waits for room under BLOCK or if the broadcast is undroppable, and otherwise drops it. Requires lock.
+    private void enqueueBroadcast(Broadcast broadcast) {
+        ArrayDeque<Message> lane = laneOf(broadcast);
+        if (size >= capacity && !closed) {
+            if (overflowPolicy == OverflowPolicy.BLOCK || !isDroppable(broadcast)) {
+                if (!awaitRoom()) {
+                    return;
+                }
+            } else if (overflowPolicy == OverflowPolicy.COALESCE && removeOldestOfType(lane, broadcast.getClass()) != null) {
+                counters.incrementCoalesced();
+            } else {
+                counters.incrementDroppedNewest();
+                return;
+            }
+        }
+        if (closed) {
+            return;
+        }
+        lane.addLast(broadcast);
+        size++;
+        if (size > peakSize) {
+            peakSize = size;
+            counters.updateHighWaterMark(peakSize);
+        }
+    }
+
+    // Waits until the mailbox has room or is closed. Returns false if the sender was interrupted.
+    private boolean awaitRoom() {
+        // Messages added earlier in the same addAll were not announced yet - the taker must see them to make room
+        notEmpty.signal();
+        notifyListener();
+        checkMayWaitForRoom();
+        counters.incrementBlockedSends();
+        try {
+            while (size >= capacity && !closed) {
+                notFull.await();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            counters.incrementDroppedNewest();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private ArrayDeque<Message> laneOf(Message message) {
+        return lanes.get(priorityOf(message).ordinal());
+    }
+
+    // Removes the oldest message of the given type from its lane, or returns null if there is none. Requires lock.
+    private Message removeOldestOfType(ArrayDeque<Message> lane, Class<?> type) {
+        for (Iterator<Message> it = lane.iterator(); it.hasNext(); ) {
+            Message queued = it.next();
+            if (queued.getClass() == type) {
+                it.remove();
+                size--;
+                return queued;
+            }
+        }
+        return null;
+    }
+
+    // Removes the oldest droppable message of the lowest priority lane holding one, to make room, or returns null
+    // if every queued message is undroppable. Requires lock.
+    private Message removeOldestOfLowestLane() {
+        for (int i = lanes.size() - 1; i >= 0; i--) {
+            for (Iterator<Message> it = lanes.get(i).iterator(); it.hasNext(); ) {
+                Message queued = it.next();
+                if (isDroppable(queued)) {
+                    it.remove();
+                    size--;
+                    return queued;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Removes the next message in priority order, or returns null if the mailbox is empty. Requires lock.
+    private Message pollNext() {
+        for (ArrayDeque<Message> lane : lanes) {
+            Message message = lane.pollFirst();
+            if (message != null) {
+                size--;
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    Message take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            readBroadcasts(false);
+            if (size == 0) {
+                enterIdle();
+                try {
+                    while (size == 0) {
+                        awaitMessage(false);
+                    }
+                } finally {
+                    leaveIdle();
+                }
+            }
+            notFull.signal();
+            return pollNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    Message poll() {
+        lock.lock();
+        try {
+            readBroadcasts(false);
+            Message message = pollNext();
+            if (message != null) {
+                notFull.signal();
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Read without locking
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    int takeBatch(Collection<? super Message> target, int maxMessages) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            readBroadcasts(false);
+            if (size == 0 && !hasUnreadTicks()) {
+                enterIdle();
+                try {
+                    while (size == 0 && !hasUnreadTicks()) {
+                        awaitMessage(true);
+                    }
+                } finally {
+                    leaveIdle();
+                }
+            }
+            return moveTo(target, maxMessages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    int drainTo(Collection<? super Message> target, int maxMessages) {
+        lock.lock();
+        try {
+            readBroadcasts(false);
+            return moveTo(target, maxMessages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until a message is added or a broadcast is published to a topic, or, if ticks is set, the
+    // clock advances. Then reads the topics. Requires lock.
+    private void awaitMessage(boolean ticks) throws InterruptedException {
+        // Announced before checking the topics and the clock: a broadcast published or a tick advanced
+        // in between is either seen here, or sees the taker waiting and signals it
+        takerWaiting = true;
+        try {
+            if (!hasUnreadBroadcasts() && !(ticks && hasUnreadTicks())) {
+                notEmpty.await();
+            }
+        } finally {
+            takerWaiting = false;
+        }
+        readBroadcasts(false);
+    }
+
+    // Only while nobody holds the lock: a taker waiting for a message released it
+    @Override
+    boolean skipRejectedBroadcasts() {
+        if (!lock.tryLock()) {
+            return true;
+        }
+        try {
+            return skipRejectedCursors();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void wakeTaker() {
+        if (takerWaiting) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Moves up to maxMessages messages to target, wakes up the senders waiting for room and takes the ticks
+    // reached by now. Requires lock.
+    private int moveTo(Collection<? super Message> target, int maxMessages) {
+        int moved = 0;
+        Message message;
+        while (moved < maxMessages && (message = pollNext()) != null) {
+            target.add(message);
+            moved++;
+        }
+        if (moved > 0) {
+            notFull.signalAll();
+        }
+        takeTicks();
+        return moved;
+    }
+
+    @Override
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
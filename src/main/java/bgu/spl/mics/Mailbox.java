@@ -0,0 +1,419 @@
+package bgu.spl.mics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The message queue allocated to a single registered {@link MicroService}.
+ * <p>
+ * Besides the blocking {@link #take()} used by a service running on its own thread,
+ * a mailbox can notify a listener whenever a message is added. This lets a scheduler
+ * run the service only when it has messages to handle (see {@link ActorScheduler}).
+ * <p>
+ * A mailbox may be bounded (see {@link MailboxConfig}). When a bounded mailbox is full, its
+ * {@link OverflowPolicy} decides whether the sender waits or which message is dropped. Messages
+ * of an {@link Undroppable} class are never dropped: their senders wait for room instead.
+ * <p>
+ * Messages are queued in one lane per {@link MessagePriority}. Higher lanes are emptied
+ * first, and each lane is FIFO.
+ * <p>
+ * Broadcasts sent in {@link BroadcastMode#TOPIC} mode are not added by their sender. Instead, the
+ * mailbox keeps a cursor into each topic its micro-service subscribed to, and moves the unread
+ * broadcasts to its lanes, in the order they were sent, whenever a message is added or taken.
+ * <p>
+ * A mailbox may also watch a {@link SimulationClock}. Its ticks are not queued: the mailbox only
+ * counts the ticks its micro-service handled, and {@link #takeBatch(Collection, int)} returns,
+ * possibly without messages, once the clock is ahead of that count. Taking messages also takes
+ * the ticks the clock reached by then, which the micro-service handles before those messages.
+ * <p>
+ * A mailbox is idle while its taker waits with nothing to take (see {@link #isIdle()}). Every mailbox
+ * going idle or leaving it bumps a shared counter, so a thread scanning the mailboxes can tell
+ * whether any of them changed during its scan (see {@link ServiceLifecycle#awaitQuiescence(MicroService)}).
+ * <p>
+ * Any number of threads may add messages, but only one thread at a time may take them -
+ * the owning micro-service.
+ */
+abstract class Mailbox {
+
+    // Priorities set by the owning micro-service, overriding the declared ones
+    private final Map<Class<? extends Message>, MessagePriority> priorities = new ConcurrentHashMap<>();
+
+    private static final BroadcastTopic.Cursor[] NO_CURSORS = new BroadcastTopic.Cursor[0];
+
+    // Caches whether each message class may be dropped, so the annotation is read once per class
+    private static final ClassValue<Boolean> DROPPABLE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return !type.isAnnotationPresent(Undroppable.class);
+        }
+    };
+
+    // Called after every added message, null when nobody listens
+    private volatile Runnable listener;
+    // Set when the senders run on the taker's thread, where waiting for room would never end
+    private volatile boolean mustNotWait;
+
+    // Bumped whenever any mailbox goes idle or leaves it
+    private static final AtomicLong idleTransitions = new AtomicLong();
+    // The thread waiting for the mailboxes to go idle, if any, woken whenever one does
+    private static volatile Thread quiescenceWaiter;
+    // True while the taker waits and takes nothing. Cleared before it takes anything.
+    private volatile boolean idle;
+
+    // Read positions in the broadcast topics the owning micro-service subscribed to, replaced on every change
+    private volatile BroadcastTopic.Cursor[] cursors = NO_CURSORS;
+
+    // The clock whose ticks the owning micro-service handles, if any, the last tick it handled, and the
+    // tick the clock had reached when messages were last taken. Only touched by the taker.
+    private SimulationClock clock;
+    private int ticksRead;
+    private int ticksTaken;
+
+    /**
+     * Creates the mailbox implementation chosen by {@code config}.
+     *
+     * @param config   The type, capacity and overflow policy of the mailbox.
+     * @param counters The counters to update whenever the overflow policy fires.
+     */
+    static Mailbox create(MailboxConfig config, MailboxCounters counters) {
+        if (config.getType() == MailboxType.RING_BUFFER) {
+            return new RingBufferMailbox(config, counters);
+        }
+        return new LockingMailbox(config, counters);
+    }
+
+    /**
+     * Adds {@code message} to the end of its priority lane and notifies the listener, if any.
+     * If the mailbox is full, its overflow policy is applied first.
+     *
+     * @return the message that was dropped instead of being handled: a queued message, or
+     *         {@code message} itself if it was not added. Null if nothing was dropped.
+     */
+    abstract Message add(Message message);
+
+    /**
+     * Adds all of {@code messages}, in order, then wakes the taker and notifies the listener once.
+     * The overflow policy is applied to each message.
+     *
+     * @param dropped Receives the messages that were dropped instead of being handled.
+     */
+    abstract void addAll(List<? extends Message> messages, Collection<? super Message> dropped);
+
+    /**
+     * Takes the next message, waiting until one is available.
+     */
+    abstract Message take() throws InterruptedException;
+
+    /**
+     * @return the next message, or null if the mailbox is empty.
+     */
+    abstract Message poll();
+
+    /**
+     * @return the number of queued messages. May already be outdated.
+     */
+    abstract int size();
+
+    /**
+     * @return true if there are no messages in the mailbox, no unread broadcasts in its topics
+     *         and no unread ticks.
+     */
+    boolean isEmpty() {
+        return size() == 0 && !hasUnreadBroadcasts() && !hasUnreadTicks();
+    }
+
+    /**
+     * Takes the next message, waiting until one is available, followed by up to
+     * {@code maxMessages - 1} more messages that are already in the mailbox.
+     * If the mailbox watches a clock, also returns once a tick is unread, with the messages
+     * that are already in the mailbox, if any.
+     *
+     * @return the number of messages added to {@code target}.
+     */
+    abstract int takeBatch(Collection<? super Message> target, int maxMessages) throws InterruptedException;
+
+    /**
+     * Removes up to {@code maxMessages} messages from the mailbox, without waiting, and
+     * adds them to {@code target}.
+     *
+     * @return the number of messages added to {@code target}.
+     */
+    abstract int drainTo(Collection<? super Message> target, int maxMessages);
+
+    /**
+     * Removes all the messages from the mailbox and adds them to {@code target}.
+     */
+    void drainTo(Collection<? super Message> target) {
+        drainTo(target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Closes the mailbox: from now on every added message is returned as dropped, and senders
+     * waiting for room are released.
+     */
+    abstract void close();
+
+    /**
+     * Makes a sender throw instead of waiting for room in the full mailbox. For mailboxes whose
+     * messages are taken on the thread sending them, such as those of a {@link DeterministicScheduler}.
+     */
+    final void forbidWaitingForRoom() {
+        mustNotWait = true;
+    }
+
+    /**
+     * Called by a sender about to wait for room in the full mailbox.
+     *
+     * @throws IllegalStateException if waiting is forbidden (see {@link #forbidWaitingForRoom()}).
+     */
+    final void checkMayWaitForRoom() {
+        if (mustNotWait) {
+            throw new IllegalStateException("The mailbox is full, and its messages are taken on the sender's thread,"
+                    + " so waiting for room would never end.");
+        }
+    }
+
+    // Returns false if the message's type is declared Undroppable
+    static boolean isDroppable(Message message) {
+        return DROPPABLE.get(message.getClass());
+    }
+
+    /**
+     * Queues messages of type {@code type} with {@code priority} instead of their declared priority.
+     * Should be set before messages of that type are sent to the mailbox.
+     */
+    void setPriority(Class<? extends Message> type, MessagePriority priority) {
+        priorities.put(type, priority);
+    }
+
+    // Returns the priority of the message's type, taking overrides by the owning service into account
+    final MessagePriority priorityOf(Message message) {
+        Class<? extends Message> type = message.getClass();
+        MessagePriority priority = priorities.isEmpty() ? null : priorities.get(type);
+        return priority != null ? priority : MessagePriority.of(type);
+    }
+
+    /**
+     * Starts reading a broadcast topic with {@code cursor}.
+     */
+    synchronized void addCursor(BroadcastTopic.Cursor cursor) {
+        BroadcastTopic.Cursor[] current = cursors;
+        BroadcastTopic.Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = cursor;
+        cursors = updated;
+    }
+
+    /**
+     * Stops reading {@code topic}. Its unread broadcasts are never moved to the mailbox.
+     */
+    synchronized void removeCursor(BroadcastTopic topic) {
+        cursors = Arrays.stream(cursors)
+                .filter(cursor -> cursor.getTopic() != topic)
+                .toArray(BroadcastTopic.Cursor[]::new);
+    }
+
+    /**
+     * @return true if a broadcast was published to one of the mailbox's topics and not read yet,
+     *         including broadcasts a filter will skip.
+     */
+    final boolean hasUnreadBroadcasts() {
+        for (BroadcastTopic.Cursor cursor : cursors) {
+            if (cursor.hasUnread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the cursors past the unread broadcasts their filters reject, unless the taker or a
+     * sender is reading the topics meanwhile. May be called by any thread.
+     *
+     * @return true if an accepted broadcast is unread, or the cursors could not be moved.
+     */
+    abstract boolean skipRejectedBroadcasts();
+
+    /**
+     * Moves every cursor past the unread broadcasts its filter rejects.
+     * Requires the subclass's exclusive access to the cursors.
+     *
+     * @return true if an accepted broadcast is unread.
+     */
+    final boolean skipRejectedCursors() {
+        boolean accepted = false;
+        for (BroadcastTopic.Cursor cursor : cursors) {
+            accepted |= cursor.skipRejected();
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns the cursor whose next broadcast was sent first, or null if every broadcast was read.
+     * Broadcasts rejected by a cursor's filter are skipped.
+     * The caller moves that broadcast to the mailbox and then advances the cursor, so concurrent
+     * senders still see it unread and wait for it (see {@link #hasUnreadBroadcasts()}).
+     * Requires the subclass's exclusive access to the cursors.
+     */
+    final BroadcastTopic.Cursor nextUnreadCursor() {
+        // A first pass, so a broadcast seen unread below is seen together with every broadcast sent
+        // before it: this pass's reads come after the sender published those
+        if (!hasUnreadBroadcasts()) {
+            return null;
+        }
+        BroadcastTopic.Cursor earliest = null;
+        long earliestSequence = Long.MAX_VALUE;
+        for (BroadcastTopic.Cursor cursor : cursors) {
+            if (cursor.skipRejected() && cursor.nextSequence() < earliestSequence) {
+                earliest = cursor;
+                earliestSequence = cursor.nextSequence();
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Starts watching {@code clock}, from its current tick on. Called by the taker.
+     */
+    void watchClock(SimulationClock clock) {
+        this.clock = clock;
+        ticksRead = clock.currentTick();
+        ticksTaken = ticksRead;
+        clock.watch(this);
+    }
+
+    /**
+     * @return the watched clock, or null if there is none.
+     */
+    final SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return true if the watched clock advanced past the last tick read. Called by the taker.
+     */
+    final boolean hasUnreadTicks() {
+        return clock != null && clock.currentTick() > ticksRead;
+    }
+
+    /**
+     * Takes the ticks the clock reached so far, along with the messages being taken. Called by the
+     * taker after taking messages.
+     */
+    final void takeTicks() {
+        if (clock != null) {
+            ticksTaken = clock.currentTick();
+        }
+    }
+
+    /**
+     * Reads the tick after the last one read, if it was taken. Called by the taker.
+     *
+     * @return the tick, or 0 if it was not taken yet.
+     */
+    final int nextUnreadTick() {
+        return ticksRead < ticksTaken ? ++ticksRead : 0;
+    }
+
+    /**
+     * Called by the watched clock after it advanced. Wakes the taker and notifies the listener,
+     * as for an added message.
+     */
+    final void tickAdvanced() {
+        wakeTaker();
+        notifyListener();
+    }
+
+    /**
+     * Called by a topic after a broadcast was published to it. Wakes the taker and notifies the
+     * listener, as for an added message.
+     */
+    final void broadcastPublished() {
+        wakeTaker();
+        notifyListener();
+    }
+
+    /**
+     * Wakes the thread waiting in {@link #take()} or {@link #takeBatch(Collection, int)}, if any,
+     * so it reads the topics and the clock.
+     */
+    abstract void wakeTaker();
+
+    /**
+     * Marks the mailbox idle: its taker waits for messages instead of taking any. Called by the taker,
+     * or by the scheduler running it, once it found nothing to take. Only idle mailboxes are woken by
+     * their topics, so the caller must check {@link #isEmpty()} once more before waiting.
+     */
+    final void enterIdle() {
+        // Counted before the flag is set, so a scan seeing the flag also sees the count changed
+        idleTransitions.incrementAndGet();
+        idle = true;
+        for (BroadcastTopic.Cursor cursor : cursors) {
+            cursor.park(); // From now on, publishing to the topic wakes the taker
+        }
+        wakeQuiescenceWaiter();
+    }
+
+    /**
+     * Marks the mailbox busy again, before its taker takes anything.
+     */
+    final void leaveIdle() {
+        // Cleared before it is counted, so a scan that missed the change sees the count changed
+        idle = false;
+        for (BroadcastTopic.Cursor cursor : cursors) {
+            cursor.unpark(); // The taker reads the topics before it waits again
+        }
+        idleTransitions.incrementAndGet();
+    }
+
+    /**
+     * @return true if the taker waits and the mailbox is empty (see {@link #isEmpty()}), not counting
+     *         the unread topic broadcasts its filters reject: these never wake the taker, so they
+     *         are skipped here. May be read by any thread, and then errs towards false.
+     */
+    final boolean isIdle() {
+        return idle && size() == 0 && !hasUnreadTicks() && !(hasUnreadBroadcasts() && skipRejectedBroadcasts());
+    }
+
+    /**
+     * @return the number of times mailboxes went idle or left it so far.
+     */
+    static long idleTransitions() {
+        return idleTransitions.get();
+    }
+
+    /**
+     * Sets the thread to wake whenever a mailbox goes idle (null for none). One thread at a time.
+     */
+    static void setQuiescenceWaiter(Thread waiter) {
+        quiescenceWaiter = waiter;
+    }
+
+    /**
+     * Wakes the thread waiting for the mailboxes to go idle, if any, so it scans them again.
+     */
+    static void wakeQuiescenceWaiter() {
+        Thread waiter = quiescenceWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Sets the listener to notify whenever a message is added (null to stop notifying).
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    final void notifyListener() {
+        Runnable current = listener;
+        if (current != null) {
+            current.run();
+        }
+    }
+}
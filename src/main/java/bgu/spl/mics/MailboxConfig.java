@@ -0,0 +1,99 @@
+package bgu.spl.mics;
+
+/**
+ * The type, capacity and overflow policy of the mailbox allocated to a micro-service on registration.
+ * <p>
+ * Configurations are set per micro-service name with
+ * {@link MessageBusImpl#setMailboxConfig(String, MailboxConfig)}, and apply to micro-services
+ * registered afterwards.
+ */
+public final class MailboxConfig {
+
+    /**
+     * A mailbox without a capacity limit. This is the default for every micro-service.
+     */
+    public static final MailboxConfig UNBOUNDED = new MailboxConfig(Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+
+    /**
+     * The largest capacity of a ring-buffer mailbox, whose slots are all allocated up front.
+     */
+    public static final int MAX_RING_BUFFER_CAPACITY = 1 << 20;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final MailboxType type;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Configures a {@link MailboxType#LOCKING} mailbox.
+     *
+     * @param capacity       The maximal number of queued messages (at least 1).
+     * @param overflowPolicy What to do with a new message when the mailbox is full.
+     */
+    public MailboxConfig(int capacity, OverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, MailboxType.LOCKING, WaitStrategy.PARK);
+    }
+
+    /**
+     * @param capacity       The maximal number of queued messages (at least 1). A ring buffer
+     *                       holds at most {@link #MAX_RING_BUFFER_CAPACITY} messages.
+     * @param overflowPolicy What to do with a new message when the mailbox is full. A ring buffer
+     *                       supports only {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#DROP_NEWEST}.
+     * @param type           The mailbox implementation.
+     * @param waitStrategy   How threads wait on a ring-buffer mailbox. Ignored by a locking mailbox.
+     */
+    public MailboxConfig(int capacity, OverflowPolicy overflowPolicy, MailboxType type, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be at least 1.");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null.");
+        }
+        if (type == null || waitStrategy == null) {
+            throw new IllegalArgumentException("Mailbox type and wait strategy must not be null.");
+        }
+        if (type == MailboxType.RING_BUFFER) {
+            if (capacity > MAX_RING_BUFFER_CAPACITY) {
+                throw new IllegalArgumentException("Ring-buffer capacity must be at most " + MAX_RING_BUFFER_CAPACITY + ".");
+            }
+            if (overflowPolicy != OverflowPolicy.BLOCK && overflowPolicy != OverflowPolicy.DROP_NEWEST) {
+                throw new IllegalArgumentException("A ring-buffer mailbox supports only the block and drop_newest overflow policies.");
+            }
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.type = type;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public MailboxType getType() {
+        return type;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @return true if the mailbox has no capacity limit.
+     */
+    public boolean isUnbounded() {
+        return capacity == Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        if (type == MailboxType.RING_BUFFER) {
+            return "ring buffer, capacity=" + capacity + ", overflow=" + overflowPolicy + ", wait=" + waitStrategy;
+        }
+        return isUnbounded() ? "unbounded" : "capacity=" + capacity + ", overflow=" + overflowPolicy;
+    }
+}
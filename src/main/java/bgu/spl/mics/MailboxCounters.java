@@ -0,0 +1,87 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often the overflow policy of a micro-service's mailbox fired.
+ * <p>
+ * Counters are kept per micro-service name by {@link MessageBusImpl#getMailboxCounters()}, and
+ * outlive the registration of the micro-service, so they can be reported after the run.
+ */
+public final class MailboxCounters {
+
+    private final AtomicLong blockedSends = new AtomicLong();
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
+
+    /**
+     * @return the number of sends that had to wait for room in the mailbox.
+     */
+    public long getBlockedSends() {
+        return blockedSends.get();
+    }
+
+    /**
+     * @return the number of queued messages dropped to make room for newer ones.
+     */
+    public long getDroppedOldest() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * @return the number of new messages dropped because the mailbox was full.
+     */
+    public long getDroppedNewest() {
+        return droppedNewest.get();
+    }
+
+    /**
+     * @return the number of queued messages replaced by a newer message of the same type.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the largest number of messages that were queued at the same time.
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * @return true if the overflow policy never fired.
+     */
+    public boolean isIdle() {
+        return getBlockedSends() == 0 && getDroppedOldest() == 0 && getDroppedNewest() == 0 && getCoalesced() == 0;
+    }
+
+    void incrementBlockedSends() {
+        blockedSends.incrementAndGet();
+    }
+
+    void incrementDroppedOldest() {
+        droppedOldest.incrementAndGet();
+    }
+
+    void incrementDroppedNewest() {
+        droppedNewest.incrementAndGet();
+    }
+
+    void incrementCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    void updateHighWaterMark(int size) {
+        highWaterMark.accumulateAndGet(size, Math::max);
+    }
+
+    @Override
+    public String toString() {
+        return "blocked=" + getBlockedSends() + ", droppedOldest=" + getDroppedOldest()
+                + ", droppedNewest=" + getDroppedNewest() + ", coalesced=" + getCoalesced()
+                + ", highWaterMark=" + getHighWaterMark();
+    }
+}
@@ -0,0 +1,34 @@
+package bgu.spl.mics;
+
+/**
+ * The implementation of the mailbox allocated to a micro-service on registration.
+ * <p>
+ * The type is part of a {@link MailboxConfig}.
+ */
+public enum MailboxType {
+
+    /**
+     * A queue guarded by a lock, supporting every {@link OverflowPolicy}. This is the default.
+     */
+    LOCKING,
+
+    /**
+     * Preallocated ring buffers, which senders add to without taking a lock and without
+     * allocating. Waiting for messages follows the configured {@link WaitStrategy}.
+     * The capacity is fixed, and only the {@link OverflowPolicy#BLOCK} and
+     * {@link OverflowPolicy#DROP_NEWEST} policies are supported, since senders cannot
+     * remove queued messages.
+     */
+    RING_BUFFER;
+
+    /**
+     * Parses a configuration value such as "locking" or "ring_buffer" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching type.
+     * @throws IllegalArgumentException if the value does not name a type.
+     */
+    public static MailboxType fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -2,27 +2,65 @@ package bgu.spl.mics;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
- * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
- * Write your implementation here!
- * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class
- * All other methods and members you add the class must be private.
+ * The {@link MessageBusImpl} class is the implementation of the MessageBus interface.
+ * <p>
+ * Besides the MessageBus methods, its public methods configure the bus before the micro-services
+ * register: how events are routed ({@link #setRoutingStrategy}), how broadcasts are delivered
+ * ({@link #setBroadcastMode}), which messages a micro-service takes first ({@link #setPriority}),
+ * and the mailboxes ({@link #setMailboxConfig}, {@link #setDefaultMailboxConfig}), whose overflow
+ * counters {@link #getMailboxCounters()} reports. The package-private methods serve the other
+ * classes of this package, such as the schedulers running the micro-services. All other members
+ * are private.
  */
 public class MessageBusImpl implements MessageBus {
 
 	// Maps each MicroService to its own message queue
-	private final Map<MicroService, BlockingQueue<Message>> microServiceQueues;
+	private final Map<MicroService, Mailbox> microServiceQueues;
 
-	// Maps event types to a list of MicroServices subscribed to them
-	private final Map<Class<? extends Event<?>>, Queue<MicroService>> eventSubscribers;
+	// Maps event types to their routing table of subscribed MicroServices
+	private final Map<Class<? extends Event<?>>, EventRoute> eventSubscribers;
 
-	// Maps broadcast types to a list of MicroServices subscribed to them
-	private final Map<Class<? extends Broadcast>, List<MicroService>> broadcastSubscribers;
+	// Maps broadcast types to a list of MicroServices subscribed to them, with their filters
+	private final Map<Class<? extends Broadcast>, List<BroadcastSubscriber>> broadcastSubscribers;
 
-	// Maps events to their corresponding Future objects
+	// Maps broadcast types sent in topic mode to their logs, which subscribers read instead of being in broadcastSubscribers
+	private final Map<Class<? extends Broadcast>, BroadcastTopic> broadcastTopics;
+
+	// Orders the broadcasts of all the topics, so a subscriber of several topics reads them in sending order
+	private final AtomicLong broadcastSequence = new AtomicLong();
+
+	// Maps each MicroService to the message types it subscribed to, so unregister only visits those
+	private final Map<MicroService, Set<Class<? extends Message>>> subscriptions;
+
+	// Maps events to their corresponding Future objects, only until each event is resolved
 	private final Map<Event<?>, Future<?>> eventFutures;
 
+	// Mailbox configurations by MicroService name, and the one used for all other MicroServices
+	private final Map<String, MailboxConfig> mailboxConfigs;
+	private volatile MailboxConfig defaultMailboxConfig = MailboxConfig.UNBOUNDED;
+
+	// Overflow counters by MicroService name, kept after the MicroService unregisters
+	private final Map<String, MailboxCounters> mailboxCounters;
+
+	// A MicroService subscribed to a broadcast type, and the broadcasts it accepts (all of them if filter is null)
+	private static final class BroadcastSubscriber {
+		final MicroService service;
+		final Predicate<Message> filter;
+
+		BroadcastSubscriber(MicroService service, Predicate<Message> filter) {
+			this.service = service;
+			this.filter = filter;
+		}
+
+		boolean accepts(Broadcast b) {
+			return filter == null || filter.test(b);
+		}
+	}
+
 	// Singleton instance of MessageBus
 	private static class SingletonHolder {
 		private static final MessageBusImpl INSTANCE = new MessageBusImpl();
@@ -34,7 +72,11 @@ public class MessageBusImpl implements MessageBus {
 		microServiceQueues = new ConcurrentHashMap<>();
 		eventSubscribers = new ConcurrentHashMap<>();
 		broadcastSubscribers = new ConcurrentHashMap<>();
+		broadcastTopics = new ConcurrentHashMap<>();
 		eventFutures = new ConcurrentHashMap<>();
+		subscriptions = new ConcurrentHashMap<>();
+		mailboxConfigs = new ConcurrentHashMap<>();
+		mailboxCounters = new ConcurrentHashMap<>();
 	}
 
 	// Public method to get the singleton instance
@@ -44,29 +86,74 @@ public class MessageBusImpl implements MessageBus {
 
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		// Create a new queue if event type doesn't have a queue in the hash map.
-		eventSubscribers.putIfAbsent(type, new ConcurrentLinkedQueue<>());
-		// Add the MicroService to the list of subscribers for the given event type.
-		Queue<MicroService> subscribers = eventSubscribers.get(type);
-		// Lock the queue to avoid interference with sendEvent or unregister, Synchronize on shared object explicitly
-		synchronized (subscribers) {
-			subscribers.add(m);
+		addEventSubscriber(type, m, null);
+	}
+
+	@Override
+	public <T, E extends Event<T>> void subscribeEvent(Class<E> type, MicroService m, Predicate<? super E> filter) {
+		addEventSubscriber(type, m, asMessageFilter(filter));
+	}
+
+	// Subscribes m to events of type, with a filter that is only ever tested on events of that type
+	private void addEventSubscriber(Class<? extends Event<?>> type, MicroService m, Predicate<Message> filter) {
+		// The routing table keeps the subscriber's mailbox, so the MicroService must be registered first.
+		Mailbox mailbox = microServiceQueues.get(m);
+		if (mailbox == null) {
+			throw new IllegalStateException("MicroService is not registered.");
 		}
+		// Create a routing table if the event type doesn't have one yet, then add the MicroService to it.
+		eventSubscribers.computeIfAbsent(type, k -> new EventRoute()).add(m, mailbox, filter);
+		subscriptionsOf(m).add(type);
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
+		addBroadcastSubscriber(type, m, null);
+	}
+
+	@Override
+	public <B extends Broadcast> void subscribeBroadcast(Class<B> type, MicroService m, Predicate<? super B> filter) {
+		addBroadcastSubscriber(type, m, asMessageFilter(filter));
+	}
+
+	// Subscribes m to broadcasts of type, with a filter that is only ever tested on broadcasts of that type
+	private void addBroadcastSubscriber(Class<? extends Broadcast> type, MicroService m, Predicate<Message> filter) {
+		BroadcastTopic topic = broadcastTopics.get(type);
+		if (topic != null) {
+			// Topic mode: the subscriber's mailbox reads the topic from now on
+			topic.subscribe(getMailbox(m), filter);
+			subscriptionsOf(m).add(type);
+			return;
+		}
 		// Create a new list if broadcast type doesn't have a list in the hash map.
 		broadcastSubscribers.putIfAbsent(type, new CopyOnWriteArrayList<>());
 		// Add the MicroService to the list of subscribers for the given broadcast type.
-		broadcastSubscribers.get(type).add(m);
+		broadcastSubscribers.get(type).add(new BroadcastSubscriber(m, filter));
+		subscriptionsOf(m).add(type);
+	}
+
+	// The cast is safe because a subscription's filter is only tested on messages of the subscribed type,
+	// which are all Ms. Java cannot express this, since the type is only known at runtime.
+	@SuppressWarnings("unchecked")
+	private static <M extends Message> Predicate<Message> asMessageFilter(Predicate<? super M> filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter must not be null.");
+		}
+		return (Predicate<Message>) (Predicate<?>) filter;
+	}
+
+	// Returns the set of message types m subscribed to, creating it on the first subscription
+	private Set<Class<? extends Message>> subscriptionsOf(MicroService m) {
+		return subscriptions.computeIfAbsent(m, k -> ConcurrentHashMap.newKeySet());
 	}
 
 	@Override
 	public <T> void complete(Event<T> e, T result) {
 		// Resolve the Future associated with the given event, allowing the sender to retrieve the result.
+		// The mapping is removed at the same time, so resolved events are never kept alive by the bus.
+		// Events sent one-way have no mapping, so there is nothing to resolve.
 		@SuppressWarnings("unchecked") // Suppress unchecked cast warning
-		Future<T> future = (Future<T>) eventFutures.get(e);
+		Future<T> future = (Future<T>) eventFutures.remove(e);
 		if (future != null) {
 			future.resolve(result);
 		}
@@ -74,99 +161,346 @@ public class MessageBusImpl implements MessageBus {
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
+		BroadcastTopic topic = broadcastTopics.get(b.getClass());
+		if (topic != null) {
+			// Topic mode: append once, the subscribers read it with their own cursors.
+			// The cursors share one entry of the log, so a pooled broadcast is not recycled.
+			PooledMessage.detach(b);
+			topic.publish(b);
+			return;
+		}
 		// Get the list of subscribers to broadcast type from broadcastSubscribers hash map.
-		List<MicroService> subscribers = broadcastSubscribers.getOrDefault(b.getClass(), Collections.emptyList());
-		// Add the broadcast message to each subscriber's queue
-		for (MicroService subscriber : subscribers) {
-			BlockingQueue<Message> queue = microServiceQueues.get(subscriber);
-			if (queue != null) {
-				synchronized (queue) {
-					queue.add(b);
-				}
+		List<BroadcastSubscriber> subscribers = broadcastSubscribers.getOrDefault(b.getClass(), Collections.emptyList());
+		// Add the broadcast message to the queue of each subscriber which accepts it
+		for (BroadcastSubscriber subscriber : subscribers) {
+			if (!subscriber.accepts(b)) {
+				continue; // Filtered out before enqueuing, so the subscriber is not woken up
+			}
+			Mailbox mailbox = microServiceQueues.get(subscriber.service);
+			if (mailbox != null) {
+				// A pooled broadcast is referenced by each mailbox, before the subscriber can handle it
+				PooledMessage.retain(b);
+				// No monitor is held here: the mailbox is thread-safe, and a monitor would pin a virtual thread
+				discard(mailbox.add(b));
 			}
 		}
+		// Release the sender's reference: once every subscriber handled it, a pooled broadcast is recycled
+		PooledMessage.release(b);
 	}
 
 
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
-		// Retrieve the queue of MicroServices subscribed to this event type.
-		// If no subscriptions exist for this event type, use an empty queue.
-		Queue<MicroService> subscribers = eventSubscribers.getOrDefault(e.getClass(), new ConcurrentLinkedQueue<>());
+		// Retrieve the routing table of this event type.
+		EventRoute route = eventSubscribers.get(e.getClass());
+		if (route == null) {
+			// No MicroService has ever subscribed to this event type.
+			PooledMessage.release(e);
+			return null;
+		}
 
-		MicroService chosenMs; // This will hold the MicroService chosen to handle the event.
+		// Choose the subscriber according to the routing strategy (round-robin by default). This is lock-free:
+		// the routing table is an immutable snapshot which is only replaced on subscribe or unregister.
+		EventRoute.Target target = route.next(e);
+		if (target == null) {
+			// All subscribers of this event type have unregistered.
+			PooledMessage.release(e);
+			return null;
+		}
 
-		// Synchronize on the subscribers queue to ensure thread-safe access and modification.
-		synchronized (subscribers) {
-			// Poll the next MicroService in the queue (round-robin approach).
-			chosenMs = subscribers.poll();
+		// Create a Future object to represent the result of this event.
+		// It is mapped before the event is queued, so the handler can never complete it too early.
+		Future<T> future = new Future<>();
+		eventFutures.put(e, future);
 
-			// Check if the chosen MicroService is valid (i.e., it is registered and has a queue).
-			// If it's not valid, keep polling the next MicroService until a valid one is found or the queue is empty.
-			while (chosenMs != null && microServiceQueues.get(chosenMs) == null) {
-				chosenMs = subscribers.poll(); // Skip unregistered or invalid services.
-			}
+		// Add the event to the chosen MicroService's message queue, which takes over the sender's reference.
+		// If its overflow policy dropped a message instead, that event's Future is resolved with null.
+		discard(target.mailbox.add(e));
+		return future;
+	}
 
-			// If a valid MicroService was found, re-add it to the end of the queue for round-robin delivery.
-			if (chosenMs != null) {
-				subscribers.add(chosenMs);
+	@Override
+	public <T> List<Future<T>> sendEvents(Collection<? extends Event<T>> events) {
+		List<Future<T>> futures = new ArrayList<>(events.size());
+		// Route every event first, grouping them by the chosen mailbox (in first-use order)
+		Map<Mailbox, List<Message>> groups = new LinkedHashMap<>();
+		for (Event<T> e : events) {
+			EventRoute.Target target = routeOf(e);
+			if (target == null) {
+				futures.add(null); // No subscribers for this event type
+				PooledMessage.release(e);
+				continue;
 			}
+			// Mapped before the event is queued, so the handler can never complete it too early
+			Future<T> future = new Future<>();
+			eventFutures.put(e, future);
+			futures.add(future);
+			groups.computeIfAbsent(target.mailbox, k -> new ArrayList<>()).add(e);
 		}
+		enqueueGroups(groups);
+		return futures;
+	}
 
-		// If a valid MicroService was chosen, proceed to send the event.
-		if (chosenMs != null) {
-			// Retrieve the message queue for the chosen MicroService.
-			BlockingQueue<Message> queue = microServiceQueues.get(chosenMs);
-			if (queue != null) {
-				// Add the event to the chosen MicroService's message queue.
-				queue.add(e);
+	@Override
+	public boolean sendOneWay(Event<?> e) {
+		EventRoute.Target target = routeOf(e);
+		if (target == null) {
+			PooledMessage.release(e);
+			return false; // No subscribers for this event type
+		}
+		// No Future is created or mapped, so nothing is kept for this event once it is queued.
+		// If the event is dropped on overflow, there is no sender to release.
+		discard(target.mailbox.add(e));
+		return true;
+	}
 
-				// Create a Future object to represent the result of this event.
-				Future<T> future = new Future<>();
+	@Override
+	public int sendEventsOneWay(Collection<? extends Event<?>> events) {
+		int sent = 0;
+		Map<Mailbox, List<Message>> groups = new LinkedHashMap<>();
+		for (Event<?> e : events) {
+			EventRoute.Target target = routeOf(e);
+			if (target != null) {
+				groups.computeIfAbsent(target.mailbox, k -> new ArrayList<>()).add(e);
+				sent++;
+			} else {
+				PooledMessage.release(e);
+			}
+		}
+		enqueueGroups(groups);
+		return sent;
+	}
 
-				// Map this event to its corresponding Future for result resolution later.
-				eventFutures.put(e, future);
+	// Chooses the subscriber for e, or null if no MicroService is subscribed to its type
+	private EventRoute.Target routeOf(Event<?> e) {
+		EventRoute route = eventSubscribers.get(e.getClass());
+		return route == null ? null : route.next(e);
+	}
 
-				// Return the Future object to the caller.
-				return future;
+	@Override
+	public void sendBroadcasts(Collection<? extends Broadcast> broadcasts) {
+		Map<Mailbox, List<Message>> groups = new LinkedHashMap<>();
+		for (Broadcast b : broadcasts) {
+			BroadcastTopic topic = broadcastTopics.get(b.getClass());
+			if (topic != null) {
+				// Queue the broadcasts grouped so far first, so the subscribers keep the order of broadcasts
+				enqueueGroups(groups);
+				groups.clear();
+				PooledMessage.detach(b);
+				topic.publish(b);
+				continue;
+			}
+			for (BroadcastSubscriber subscriber : broadcastSubscribers.getOrDefault(b.getClass(), Collections.emptyList())) {
+				Mailbox mailbox = subscriber.accepts(b) ? microServiceQueues.get(subscriber.service) : null;
+				if (mailbox != null) {
+					PooledMessage.retain(b); // Referenced by the mailbox
+					groups.computeIfAbsent(mailbox, k -> new ArrayList<>()).add(b);
+				}
 			}
 		}
+		enqueueGroups(groups);
+		// Release the sender's references
+		for (Broadcast b : broadcasts) {
+			PooledMessage.release(b);
+		}
+	}
 
-		// If no valid MicroService was available to handle the event, return null.
-		// This may happen if no MicroService is subscribed to this event type.
-		return null;
+	// Adds each group to its mailbox with one lock acquisition and one wake-up, then discards what was dropped
+	private void enqueueGroups(Map<Mailbox, List<Message>> groups) {
+		List<Message> dropped = new ArrayList<>(0);
+		for (Map.Entry<Mailbox, List<Message>> group : groups.entrySet()) {
+			group.getKey().addAll(group.getValue(), dropped);
+		}
+		discard(dropped);
 	}
 
 	@Override
 	public void register(MicroService m) {
-		// Create a queue for the MicroService
-		microServiceQueues.putIfAbsent(m, new LinkedBlockingQueue<>());
+		// Create a queue for the MicroService, of the type and bound set by its mailbox configuration
+		MailboxConfig config = mailboxConfigs.getOrDefault(m.getName(), defaultMailboxConfig);
+		MailboxCounters counters = mailboxCounters.computeIfAbsent(m.getName(), k -> new MailboxCounters());
+		microServiceQueues.putIfAbsent(m, Mailbox.create(config, counters));
 	}
 
 	@Override
 	public void unregister(MicroService m) {
-		microServiceQueues.remove(m);
+		// Remove from the routing tables of m's subscriptions first, so new messages are no longer
+		// sent to m. Only the types m subscribed to are visited, not every type on the bus.
+		Set<Class<? extends Message>> subscribed = subscriptions.remove(m);
+		Mailbox subscribedMailbox = microServiceQueues.get(m);
+		if (subscribed != null) {
+			for (Class<? extends Message> type : subscribed) {
+				BroadcastTopic topic = broadcastTopics.get(type);
+				if (topic != null && subscribedMailbox != null) {
+					topic.unsubscribe(subscribedMailbox);
+				}
+				EventRoute route = eventSubscribers.get(type);
+				if (route != null) {
+					route.remove(m); // Copy-on-write, in-flight senders keep using their snapshot
+				}
+				List<BroadcastSubscriber> list = broadcastSubscribers.get(type);
+				if (list != null) {
+					// CopyOnWriteArrayList is inherently thread-safe for iteration and modification
+					list.removeIf(subscriber -> subscriber.service == m);
+				}
+			}
+		}
 
-		// Remove from all event subscription lists
-		for (Queue<MicroService> subscribers : eventSubscribers.values()) {
-			synchronized (subscribers) { // Lock only the specific queue
-				subscribers.remove(m); // Synchronize on shared object explicitly
+		Mailbox mailbox = microServiceQueues.remove(m);
+		if (mailbox != null) {
+			SimulationClock clock = mailbox.getClock();
+			if (clock != null) {
+				clock.unwatch(mailbox); // The clock no longer wakes m
 			}
+			// Senders that still hold the mailbox get their messages back instead of queuing them
+			mailbox.close();
+			// Events left in the queue will never be handled - resolve their Futures with null
+			// so senders waiting on them are released and the mappings don't leak.
+			List<Message> leftovers = new ArrayList<>();
+			mailbox.drainTo(leftovers);
+			discard(leftovers);
+		}
+	}
+
+	/**
+	 * Drops messages that were taken from a mailbox but will never be handled.
+	 * The Futures of dropped events are resolved with null, and pooled messages are released.
+	 */
+	void discard(List<? extends Message> messages) {
+		for (Message message : messages) {
+			discard(message);
 		}
-		for (List<MicroService> list : broadcastSubscribers.values()) {
-			list.remove(m); // CopyOnWriteArrayList is inherently thread-safe for iteration and modification
+	}
+
+	// Drops a single message, if any (see discard(List)), releasing a pooled message's reference
+	private void discard(Message message) {
+		if (message instanceof Event) {
+			resolveUnhandled((Event<?>) message);
 		}
+		PooledMessage.release(message);
+	}
+
+	// Resolves the Future of an event that will never be handled, if it is still pending.
+	private <T> void resolveUnhandled(Event<T> e) {
+		complete(e, null);
 	}
 
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
 		// Get the microservice's queue.
-		BlockingQueue<Message> queue = microServiceQueues.get(m);
-		if (queue == null) {
+		Mailbox mailbox = getMailbox(m);
+		// Retrieves the next message from the MicroService's queue, blocking if no messages are available.
+		return mailbox.take();
+	}
+
+	@Override
+	public int awaitMessages(MicroService m, Collection<? super Message> batch, int maxMessages) throws InterruptedException {
+		if (maxMessages < 1) {
+			throw new IllegalArgumentException("maxMessages must be at least 1.");
+		}
+		// Take the next message (blocking), then drain what is already queued behind it
+		// under the same queue lock instead of one handoff per message.
+		return getMailbox(m).takeBatch(batch, maxMessages);
+	}
+
+	/**
+	 * @return true if {@code m} is registered and waits for messages, with an empty mailbox, no
+	 *         unread topic broadcasts and no unread ticks (see {@link Mailbox#isIdle()}).
+	 */
+	boolean isIdle(MicroService m) {
+		Mailbox mailbox = microServiceQueues.get(m);
+		return mailbox != null && mailbox.isIdle();
+	}
+
+	/**
+	 * Sets how events of type {@code type} are routed when several micro-services are subscribed
+	 * to it. Event types use {@link RoutingStrategy#ROUND_ROBIN} unless set otherwise.
+	 *
+	 * @param type     The event type.
+	 * @param strategy The routing strategy for {@code type}.
+	 */
+	public void setRoutingStrategy(Class<? extends Event<?>> type, RoutingStrategy strategy) {
+		// The routing table may be created before anyone subscribes, so the strategy applies from the first event
+		eventSubscribers.computeIfAbsent(type, k -> new EventRoute()).setStrategy(strategy);
+	}
+
+	/**
+	 * Sets how broadcasts of type {@code type} reach their subscribers. Broadcast types use
+	 * {@link BroadcastMode#FAN_OUT} unless set otherwise.
+	 * Should be called before micro-services subscribe to {@code type}: earlier subscribers
+	 * do not receive the broadcasts sent in the new mode.
+	 *
+	 * @param type The broadcast type.
+	 * @param mode The broadcast mode for {@code type}.
+	 */
+	public void setBroadcastMode(Class<? extends Broadcast> type, BroadcastMode mode) {
+		if (mode == BroadcastMode.TOPIC) {
+			broadcastTopics.computeIfAbsent(type, k -> new BroadcastTopic(broadcastSequence));
+		} else {
+			broadcastTopics.remove(type);
+		}
+	}
+
+	/**
+	 * Sets the priority with which messages of type {@code type} are queued in the mailbox of
+	 * {@code m}, overriding the priority declared on the message class.
+	 * Should be called before subscribing {@code m} to {@code type}.
+	 *
+	 * @param type     The message type.
+	 * @param m        A registered micro-service.
+	 * @param priority The priority of {@code type} in the mailbox of {@code m}.
+	 * @throws IllegalStateException if {@code m} is not registered.
+	 */
+	public void setPriority(Class<? extends Message> type, MicroService m, MessagePriority priority) {
+		getMailbox(m).setPriority(type, priority);
+	}
+
+	/**
+	 * Sets the mailbox configuration of micro-services named {@code serviceName} which register
+	 * from now on. Micro-services without a configuration of their own use the default one.
+	 *
+	 * @param serviceName The name of the micro-service.
+	 * @param config      The capacity and overflow policy of its mailbox.
+	 */
+	public void setMailboxConfig(String serviceName, MailboxConfig config) {
+		mailboxConfigs.put(serviceName, config);
+	}
+
+	/**
+	 * Sets the mailbox configuration of micro-services which register from now on and have no
+	 * configuration of their own. Initially, mailboxes are unbounded.
+	 *
+	 * @param config The default capacity and overflow policy.
+	 */
+	public void setDefaultMailboxConfig(MailboxConfig config) {
+		defaultMailboxConfig = config;
+	}
+
+	/**
+	 * @return the overflow counters of every micro-service that ever registered, by name.
+	 */
+	public Map<String, MailboxCounters> getMailboxCounters() {
+		return Collections.unmodifiableMap(mailboxCounters);
+	}
+
+	/**
+	 * @param m a registered micro-service.
+	 * @return the mailbox allocated to {@code m}.
+	 * @throws IllegalStateException if {@code m} is not registered.
+	 */
+	Mailbox getMailbox(MicroService m) {
+		Mailbox mailbox = microServiceQueues.get(m);
+		if (mailbox == null) {
 			throw new IllegalStateException("MicroService is not registered.");
 		}
-		// Retrieves the next message from the MicroService's queue, blocking if no messages are available.
-		return queue.take();
+		return mailbox;
+	}
+
+	/**
+	 * @return the number of Futures of events which were sent but not resolved yet.
+	 */
+	int getPendingFutureCount() {
+		return eventFutures.size();
 	}
 }
 
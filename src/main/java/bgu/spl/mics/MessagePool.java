@@ -0,0 +1,97 @@
+package bgu.spl.mics;
+
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of reusable messages of one type (see {@link PooledMessage}).
+ * <p>
+ * High-rate message types keep a static pool and hand out messages with a factory method,
+ * such as {@code TickBroadcast.obtain(tick)}, instead of a constructor. A message returns to
+ * its pool once every micro-service it was delivered to has handled it; if the pool is full,
+ * it is left to the garbage collector instead.
+ * <p>
+ * Pooling is disabled by default, and enabled for all pools with {@link #setEnabled(boolean)}.
+ * While disabled, {@link #acquire()} creates a new message which is never recycled.
+ *
+ * @param <M> The type of the pooled messages.
+ */
+public final class MessagePool<M extends PooledMessage> {
+
+    private static volatile boolean enabled;
+
+    private final Supplier<M> factory;
+    // A stack of free messages, guarded by this
+    private final PooledMessage[] free;
+    private int freeCount;
+
+    /**
+     * @param factory  Creates a new message when the pool is empty.
+     * @param capacity The maximal number of free messages kept.
+     */
+    public MessagePool(Supplier<M> factory, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        this.factory = factory;
+        this.free = new PooledMessage[capacity];
+    }
+
+    /**
+     * Enables or disables pooling for all pools. Should be set before messages are sent.
+     */
+    public static void setEnabled(boolean enabled) {
+        MessagePool.enabled = enabled;
+    }
+
+    /**
+     * @return true if messages are recycled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a free message, or creates one if there is none. The caller holds its only
+     * reference, and should set all of its fields before sending it.
+     *
+     * @return a message with the state left by {@link PooledMessage#clear()}, or a new one.
+     */
+    public M acquire() {
+        if (!enabled) {
+            return factory.get();
+        }
+        M message = pop();
+        if (message == null) {
+            message = factory.get();
+        }
+        message.acquiredFrom(this);
+        return message;
+    }
+
+    /**
+     * @return the number of free messages in the pool.
+     */
+    public synchronized int getFreeCount() {
+        return freeCount;
+    }
+
+    // The cast is safe because only messages acquired from this pool are pushed to it
+    @SuppressWarnings("unchecked")
+    private synchronized M pop() {
+        if (freeCount == 0) {
+            return null;
+        }
+        M message = (M) free[--freeCount];
+        free[freeCount] = null;
+        return message;
+    }
+
+    /**
+     * Returns {@code message}, whose last reference was released, to the pool.
+     */
+    synchronized void recycle(PooledMessage message) {
+        if (freeCount < free.length) {
+            free[freeCount++] = message;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package bgu.spl.mics;
+
+/**
+ * The delivery priority of a message type. A mailbox hands out all queued messages of a
+ * higher priority before any message of a lower priority; messages of the same priority
+ * are handed out in the order they were sent.
+ * <p>
+ * The priority of a message type is declared with {@link DeliveryPriority} on the message
+ * class (NORMAL if not declared), and can be overridden by a micro-service when it subscribes.
+ */
+public enum MessagePriority {
+
+    /**
+     * Control messages which should not wait behind data, such as crash notifications.
+     */
+    HIGH,
+
+    /**
+     * The default priority.
+     */
+    NORMAL,
+
+    /**
+     * Bulk data which may wait until everything else was handled.
+     */
+    LOW;
+
+    // Caches the declared priority of each message class, so the annotation is read once per class
+    private static final ClassValue<MessagePriority> DECLARED = new ClassValue<>() {
+        @Override
+        protected MessagePriority computeValue(Class<?> type) {
+            DeliveryPriority declared = type.getAnnotation(DeliveryPriority.class);
+            return declared != null ? declared.value() : NORMAL;
+        }
+    };
+
+    /**
+     * @param type A message class.
+     * @return The priority declared on {@code type} with {@link DeliveryPriority}, or NORMAL.
+     */
+    public static MessagePriority of(Class<? extends Message> type) {
+        return DECLARED.get(type);
+    }
+}
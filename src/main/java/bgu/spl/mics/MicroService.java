@@ -1,6 +1,12 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * The MicroService is an abstract class that any micro-service in the system
@@ -16,19 +22,41 @@ import java.util.HashMap;
  * message-queue (see {@link MessageBus#register(bgu.spl.mics.MicroService)}
  * method). The abstract MicroService stores this callback together with the
  * type of the message is related to.
- * 
- * Only private fields and methods may be added to this class.
  * <p>
+ * Besides those wrappers, derived classes may subscribe with a filter or a {@link MessagePriority},
+ * follow a {@link SimulationClock} ({@link #subscribeTick}), send several messages at once, send
+ * events whose result nobody waits for ({@link #sendOneWay}), and wait until the other
+ * micro-services handled everything sent to them ({@link #awaitQuiescence()}).
+ * <p>
+ * A micro-service runs on its own thread through {@link #run()}, or is driven by a scheduler in
+ * this package through package-private hooks such as {@link #start()}, {@link #dispatch(Message)},
+ * {@link #dispatchBatch(List)} and {@link #stop()}. All other members are private.
  */
 public abstract class MicroService implements Runnable {
 
     private boolean terminated = false;
     private final String name;
     // Added fields
+    // Maximal number of messages taken from the message queue at once
+    private static final int BATCH_SIZE = 64;
+    // Maximal number of subscribed types for which dispatch() scans the types instead of hashing
+    private static final int MAX_SCANNED_TYPES = 8;
     // Singleton instance of MessageBus
-    private final MessageBus messageBus = MessageBusImpl.getInstance();
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
     // Mapping of message types to their callbacks
     private final HashMap<Class<? extends Message>, Callback<? extends Message>> callbacksMap = new HashMap<>();
+    // Subscribed types and their callbacks at the same positions, built from callbacksMap once initialize()
+    // returns. Beyond MAX_SCANNED_TYPES types, an open-addressed hash table instead: a type is at the first
+    // free slot from its identity hash on, and the table is at most half full, so it is longer than
+    // MAX_SCANNED_TYPES.
+    private Class<?>[] dispatchTypes = new Class<?>[0];
+    private Callback<Message>[] dispatchCallbacks;
+    private boolean initialized = false;
+    // Callbacks called on every tick of a simulation clock, and the mailbox counting the ticks handled
+    private TickCallback[] tickCallbacks = new TickCallback[0];
+    private Mailbox tickMailbox;
+    // The lifecycle told when this micro-service initialized and stopped, null if not started by one
+    private ServiceLifecycle lifecycle;
 
     /**
      * @param name the micro-service name (used mainly for debugging purposes -
@@ -64,6 +92,54 @@ public abstract class MicroService implements Runnable {
         messageBus.subscribeEvent(type, this);
         // Store the callback associated with the event type
         callbacksMap.put(type, callback);
+        if (initialized) {
+            buildDispatchTable(); // Subscribed from a callback, after the table was built
+        }
+    }
+
+    /**
+     * Same as {@link #subscribeEvent(Class, Callback)}, but events of type {@code type} are
+     * queued for this micro-service with {@code priority} instead of the priority declared
+     * on the event class (see {@link DeliveryPriority}).
+     * <p>
+     * @param <E>      The type of event to subscribe to.
+     * @param <T>      The type of result expected for the subscribed event.
+     * @param type     The {@link Class} representing the type of event to
+     *                 subscribe to.
+     * @param priority The priority of these events in this micro-service message queue.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <T, E extends Event<T>> void subscribeEvent(Class<E> type, MessagePriority priority, Callback<E> callback) {
+        // Set the priority first, so no event is queued with the declared one
+        messageBus.setPriority(type, this, priority);
+        subscribeEvent(type, callback);
+    }
+
+    /**
+     * Same as {@link #subscribeEvent(Class, Callback)}, but only events accepted by
+     * {@code filter} are sent to this micro-service. The message-bus evaluates the filter
+     * on the sender's thread, before queuing the event, so it must be thread-safe; events
+     * it rejects go to another subscriber which accepts them.
+     * <p>
+     * @param <E>      The type of event to subscribe to.
+     * @param <T>      The type of result expected for the subscribed event.
+     * @param type     The {@link Class} representing the type of event to
+     *                 subscribe to.
+     * @param filter   The events this micro-service should receive.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <T, E extends Event<T>> void subscribeEvent(Class<E> type, Predicate<? super E> filter, Callback<E> callback) {
+        // Register this microservice for the accepted events of the type
+        messageBus.subscribeEvent(type, this, filter);
+        // Store the callback associated with the event type
+        callbacksMap.put(type, callback);
+        if (initialized) {
+            buildDispatchTable(); // Subscribed from a callback, after the table was built
+        }
     }
 
     /**
@@ -91,6 +167,75 @@ public abstract class MicroService implements Runnable {
         messageBus.subscribeBroadcast(type, this);
         // Store the callback associated with the broadcast type
         callbacksMap.put(type, callback);
+        if (initialized) {
+            buildDispatchTable(); // Subscribed from a callback, after the table was built
+        }
+    }
+
+    /**
+     * Same as {@link #subscribeBroadcast(Class, Callback)}, but broadcast messages of type
+     * {@code type} are queued for this micro-service with {@code priority} instead of the
+     * priority declared on the broadcast class (see {@link DeliveryPriority}).
+     * <p>
+     * @param <B>      The type of broadcast message to subscribe to
+     * @param type     The {@link Class} representing the type of broadcast
+     *                 message to subscribe to.
+     * @param priority The priority of these broadcasts in this micro-service message queue.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, MessagePriority priority, Callback<B> callback) {
+        // Set the priority first, so no broadcast is queued with the declared one
+        messageBus.setPriority(type, this, priority);
+        subscribeBroadcast(type, callback);
+    }
+
+    /**
+     * Same as {@link #subscribeBroadcast(Class, Callback)}, but only broadcast messages
+     * accepted by {@code filter} are queued for this micro-service, so it does not wake up
+     * for the others. The message-bus evaluates the filter on the sender's thread, so it
+     * must be thread-safe.
+     * <p>
+     * @param <B>      The type of broadcast message to subscribe to
+     * @param type     The {@link Class} representing the type of broadcast
+     *                 message to subscribe to.
+     * @param filter   The broadcast messages this micro-service should receive.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, Predicate<? super B> filter, Callback<B> callback) {
+        // Register this microservice for the accepted broadcasts of the type
+        messageBus.subscribeBroadcast(type, this, filter);
+        // Store the callback associated with the broadcast type
+        callbacksMap.put(type, callback);
+        if (initialized) {
+            buildDispatchTable(); // Subscribed from a callback, after the table was built
+        }
+    }
+
+    /**
+     * Subscribes to the ticks of {@code clock} with the callback {@code callback}, instead of
+     * subscribing to a tick broadcast. The callback is called with every tick the clock advances
+     * to, in order, on this micro-service's thread, before the messages taken once the clock reached it.
+     * Only the ticks after the subscription are handled.
+     * <p>
+     * @param clock    The clock to follow. A micro-service follows at most one clock.
+     * @param callback The callback that should be called on every tick.
+     * @throws IllegalStateException if this micro-service already follows another clock.
+     */
+    protected final void subscribeTick(SimulationClock clock, TickCallback callback) {
+        Mailbox mailbox = messageBus.getMailbox(this);
+        if (mailbox.getClock() == null) {
+            mailbox.watchClock(clock);
+        } else if (mailbox.getClock() != clock) {
+            throw new IllegalStateException("A micro-service can only follow one clock.");
+        }
+        TickCallback[] callbacks = Arrays.copyOf(tickCallbacks, tickCallbacks.length + 1);
+        callbacks[tickCallbacks.length] = callback;
+        tickCallbacks = callbacks;
+        tickMailbox = mailbox;
     }
 
     /**
@@ -110,6 +255,20 @@ public abstract class MicroService implements Runnable {
         return messageBus.sendEvent(e);
     }
 
+    /**
+     * Sends the event {@code e} using the message-bus without a {@link Future}, for events
+     * whose result the sender does not need. Nothing is allocated or tracked for the result,
+     * and completing the event has no effect. This method must be Non-Blocking.
+     * <p>
+     * @param e         The event to send
+     * @return  		true if the event was sent,
+     * 	       			false in case no micro-service has subscribed to {@code e.getClass()}.
+     */
+    protected final boolean sendOneWay(Event<?> e) {
+        // Send the event, no Future is created
+        return messageBus.sendOneWay(e);
+    }
+
     /**
      * A Micro-Service calls this method in order to send the broadcast message {@code b} using the message-bus
      * to all the services subscribed to it.
@@ -121,6 +280,73 @@ public abstract class MicroService implements Runnable {
         messageBus.sendBroadcast(b);
     }
 
+    /**
+     * Sends all of {@code events} using the message-bus, adding the events bound for the same
+     * micro-service to its queue together. This method must be Non-Blocking.
+     * <p>
+     * @param <T>       The type of the expected result of the events
+     * @param events    The events to send
+     * @return  		The {@link Future} of each event, in the order of {@code events}.
+     * 	       			An element is null in case no micro-service has subscribed to that event's type.
+     */
+    protected final <T> List<Future<T>> sendEvents(Collection<? extends Event<T>> events) {
+        // Send the events and return their associated Futures
+        return messageBus.sendEvents(events);
+    }
+
+    /**
+     * Sends all of {@code events} using the message-bus as by {@link #sendOneWay(Event)},
+     * adding the events bound for the same micro-service to its queue together.
+     * This method must be Non-Blocking.
+     * <p>
+     * @param events    The events to send
+     * @return  		The number of events which were sent.
+     */
+    protected final int sendEventsOneWay(Collection<? extends Event<?>> events) {
+        // Send the events, no Futures are created
+        return messageBus.sendEventsOneWay(events);
+    }
+
+    /**
+     * A Micro-Service calls this method in order to send all of {@code broadcasts} using the
+     * message-bus to all the services subscribed to them.
+     * <p>
+     * @param broadcasts The broadcast messages to send
+     */
+    protected final void sendBroadcasts(Collection<? extends Broadcast> broadcasts) {
+        // Send the broadcast messages
+        messageBus.sendBroadcasts(broadcasts);
+    }
+
+    /**
+     * Waits until every other micro-service handled everything sent to it so far, including the
+     * messages sent while handling it, and waits for more. Meant for a micro-service driving the
+     * others from {@link #initialize()}, such as a timer moving to the next tick once the current
+     * one was fully handled. Only one micro-service at a time may wait.
+     * <p>
+     * The other micro-services are those started by the same {@link ServiceLifecycle}.
+     * <p>
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if this micro-service was not started by a {@link ServiceLifecycle}.
+     */
+    protected final void awaitQuiescence() throws InterruptedException {
+        if (lifecycle == null) {
+            throw new IllegalStateException("Only a micro-service started by a ServiceLifecycle can wait for quiescence.");
+        }
+        lifecycle.awaitQuiescence(this);
+    }
+
+    /**
+     * Checks without waiting whether every other micro-service handled everything sent to it so
+     * far (see {@link #awaitQuiescence()}), for instance whether they keep up with a timer.
+     * <p>
+     * @return true if they did, or if this micro-service was not started by a {@link ServiceLifecycle}
+     *         and so does not know of any other. May be false while they are about to.
+     */
+    protected final boolean isQuiescent() {
+        return lifecycle == null || lifecycle.isQuiescent(this);
+    }
+
     /**
      * Completes the received request {@code e} with the result {@code result}
      * using the message-bus.
@@ -163,31 +389,161 @@ public abstract class MicroService implements Runnable {
      */
     @Override
     public final void run() {
-        messageBus.register(this); // Register this microservice with the message bus
-        initialize(); // Perform initialization such as subscriptions
+        List<Message> batch = new ArrayList<>(BATCH_SIZE);
         try {
+            start(); // Register with the message bus and perform initialization such as subscriptions
             while (!terminated) { // Main message loop
-                // Wait for and retrieve the next message. This is a blocking call that may throw InterruptedException if the thread is interrupted.
-                Message message = messageBus.awaitMessage(this);
-                // Retrieve the appropriate callback
-                // The cast to (Callback<Message>) is safe because:
-                // 1. The callbacksMap ensures that the key (message.getClass()) maps to a callback
-                //    that matches the message type when subscribeEvent or subscribeBroadcast is called.
-                // 2. The message type is determined at runtime and matches the callback type.
-                // The warning is suppressed because Java's type system cannot guarantee this at compile-time.
-                @SuppressWarnings("unchecked")
-                    Callback<Message> callback = (Callback<Message>) callbacksMap.get(message.getClass());
-                    if (callback != null) {
-                        callback.call(message); // Execute the callback
-                }
+                // Wait for the next message and take whatever is queued behind it, up to BATCH_SIZE.
+                // This is a blocking call that may throw InterruptedException if the thread is interrupted.
+                // Also returns once the followed clock advanced, if any, possibly without messages.
+                messageBus.awaitMessages(this, batch, BATCH_SIZE);
+                handleTicks();
+                dispatchBatch(batch);
             }
         } catch (InterruptedException e) {
             // Restore interrupt status to allow higher-level code to detect the interruption.
             Thread.currentThread().interrupt();
         } finally {
             // Ensure the microservice is properly unregistered.
-            messageBus.unregister(this);
+            stop();
+        }
+    }
+
+    /**
+     * Registers this micro-service with the message bus and calls {@link #initialize()}.
+     * Used by {@link #run()} and by schedulers that drive the event loop themselves.
+     */
+    final void start() {
+        try {
+            messageBus.register(this); // Register this microservice with the message bus
+            initialize(); // Perform initialization such as subscriptions
+            buildDispatchTable();
+            initialized = true;
+        } finally {
+            if (lifecycle != null) {
+                lifecycle.initialized(this); // Also when initialize() failed, so startup does not wait forever
+            }
         }
     }
-}
 
+    /**
+     * Calls the callback subscribed to the type of {@code message}, if there is one.
+     */
+    final void dispatch(Message message) {
+        Class<? extends Message> type = message.getClass();
+        Class<?>[] types = dispatchTypes;
+        if (types.length > MAX_SCANNED_TYPES) {
+            dispatchHashed(message, types); // Too many types for a linear scan
+            return;
+        }
+        // Find the callback by comparing the exact message class with each subscribed type.
+        // A service subscribes to a handful of types, so this beats hashing the class.
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == type) {
+                dispatchCallbacks[i].call(message); // Execute the callback
+                return;
+            }
+        }
+    }
+
+    // Probes the hash table of the subscribed types, for services subscribed to many types. The identity
+    // hash of a class is cached in its header, so this is cheaper than a HashMap lookup.
+    private void dispatchHashed(Message message, Class<?>[] types) {
+        Class<? extends Message> type = message.getClass();
+        int mask = types.length - 1;
+        for (int i = System.identityHashCode(type) & mask; types[i] != null; i = (i + 1) & mask) {
+            if (types[i] == type) {
+                dispatchCallbacks[i].call(message); // Execute the callback
+                return;
+            }
+        }
+    }
+
+    // Builds the dispatch table from callbacksMap
+    private void buildDispatchTable() {
+        int size = callbacksMap.size();
+        boolean hashed = size > MAX_SCANNED_TYPES;
+        int length = hashed ? Integer.highestOneBit(size * 4 - 1) : size; // A hash table is at most half full
+        Class<?>[] types = new Class<?>[length];
+        @SuppressWarnings("unchecked") // Generic array creation
+        Callback<Message>[] callbacks = (Callback<Message>[]) new Callback<?>[length];
+        int next = 0;
+        for (Map.Entry<Class<? extends Message>, Callback<? extends Message>> entry : callbacksMap.entrySet()) {
+            // The cast to (Callback<Message>) is safe because each callback is stored next to its exact
+            // message type, and dispatch() only calls it with messages of that type.
+            @SuppressWarnings("unchecked")
+            Callback<Message> callback = (Callback<Message>) entry.getValue();
+            int i = hashed ? System.identityHashCode(entry.getKey()) & (length - 1) : next++;
+            while (types[i] != null) {
+                i = (i + 1) & (length - 1);
+            }
+            types[i] = entry.getKey();
+            callbacks[i] = callback;
+        }
+        // Callbacks first: dispatch() reads dispatchTypes, then indexes into dispatchCallbacks
+        dispatchCallbacks = callbacks;
+        dispatchTypes = types;
+    }
+
+    /**
+     * Calls the tick callbacks with every tick the followed clock advanced to since the last call.
+     * Stops once a callback terminates this micro-service; the remaining ticks are not handled.
+     */
+    final void handleTicks() {
+        if (tickMailbox == null) {
+            return;
+        }
+        int tick;
+        while (!terminated && (tick = tickMailbox.nextUnreadTick()) != 0) {
+            for (TickCallback callback : tickCallbacks) {
+                callback.call(tick);
+                if (terminated) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches the messages of {@code batch} in order and clears it. If a callback
+     * terminates this micro-service, the rest of the batch is discarded, just like the
+     * messages still left in its message queue. A {@link PooledMessage} is released once
+     * its callback returns.
+     */
+    final void dispatchBatch(List<Message> batch) {
+        int handled = 0;
+        while (handled < batch.size() && !terminated) {
+            Message message = batch.get(handled++);
+            dispatch(message);
+            PooledMessage.release(message); // Handled, a pooled message may be recycled
+        }
+        if (handled < batch.size()) {
+            messageBus.discard(batch.subList(handled, batch.size()));
+        }
+        batch.clear();
+    }
+
+    /**
+     * Tells the lifecycle of this micro-service it stopped, and unregisters it from the message bus.
+     */
+    final void stop() {
+        if (lifecycle != null) {
+            lifecycle.stopped(this); // While still registered, so the micro-services are not quiescent meanwhile
+        }
+        messageBus.unregister(this);
+    }
+
+    /**
+     * Sets the lifecycle starting this micro-service, before it is started.
+     */
+    final void setLifecycle(ServiceLifecycle lifecycle) {
+        this.lifecycle = lifecycle;
+    }
+
+    /**
+     * @return true if {@link #terminate()} was called.
+     */
+    final boolean isTerminated() {
+        return terminated;
+    }
+}
@@ -0,0 +1,46 @@
+package bgu.spl.mics;
+
+/**
+ * Determines what a bounded mailbox does with a new message when it is already full.
+ * <p>
+ * The policy is part of a {@link MailboxConfig}. Whenever a policy fires, it is counted in the
+ * {@link MailboxCounters} of the receiving micro-service.
+ * <p>
+ * Messages of an {@link Undroppable} class are never dropped: their senders wait for room instead.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The sender waits until the receiver makes room. Nothing is lost, but a slow receiver
+     * slows down its senders, and services that send to each other can deadlock.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued message is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new message is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The new message replaces the oldest queued message of the same type, which is dropped.
+     * The new message goes to the end of the mailbox, so messages stay in the order they were sent.
+     * If no message of the same type is queued, the oldest message is dropped instead.
+     */
+    COALESCE;
+
+    /**
+     * Parses a configuration value such as "block" or "drop_oldest" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching policy.
+     * @throws IllegalArgumentException if the value does not name a policy.
+     */
+    public static OverflowPolicy fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
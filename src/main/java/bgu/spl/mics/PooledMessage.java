@@ -0,0 +1,110 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A {@link Message} that can be recycled by a {@link MessagePool} once every micro-service it was
+ * delivered to has handled it.
+ * <p>
+ * A message acquired from an enabled pool is reference counted. The sender holds the first
+ * reference and hands it to the message-bus when sending the message; the sender must not touch
+ * the message afterwards. The message-bus takes one reference for every mailbox it adds the
+ * message to, and the reference is released once the callback of that micro-service returns, or
+ * once the message is dropped. When the last reference is released, the message is
+ * {@link #clear() cleared} and returned to its pool.
+ * <p>
+ * A callback that keeps the message for later must {@link #retain()} it, and {@link #release()}
+ * it when done. Messages created with {@code new}, or while pooling is disabled, are not counted:
+ * retaining and releasing them has no effect.
+ * <p>
+ * Broadcasts sent in {@link BroadcastMode#TOPIC} mode are shared by the cursors of their topic,
+ * so they are never recycled.
+ */
+public abstract class PooledMessage implements Message {
+
+    private static final AtomicIntegerFieldUpdater<PooledMessage> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(PooledMessage.class, "references");
+
+    // The pool this message returns to, null if it is not counted
+    private MessagePool<?> pool;
+    private volatile int references;
+
+    /**
+     * Takes another reference to this message, so it is not recycled before a matching
+     * {@link #release()}.
+     */
+    public final void retain() {
+        if (pool != null) {
+            REFERENCES.incrementAndGet(this);
+        }
+    }
+
+    /**
+     * Releases a reference to this message. The last release clears the message and returns it
+     * to its pool.
+     *
+     * @throws IllegalStateException if the message was released more often than it was referenced.
+     */
+    public final void release() {
+        MessagePool<?> owner = pool;
+        if (owner == null) {
+            return;
+        }
+        int remaining = REFERENCES.decrementAndGet(this);
+        if (remaining == 0) {
+            clear();
+            owner.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Message was released more often than it was referenced.");
+        }
+    }
+
+    /**
+     * Drops the references this message holds, before it returns to its pool, so a recycled
+     * message does not keep data alive. Called once the last reference is released.
+     */
+    protected void clear() {
+    }
+
+    /**
+     * Called by {@code pool} when handing this message out, with the sender's reference.
+     */
+    final void acquiredFrom(MessagePool<?> pool) {
+        this.pool = pool;
+        references = 1;
+    }
+
+    /**
+     * Stops counting references to this message, so it is left to the garbage collector.
+     */
+    final void detach() {
+        pool = null;
+    }
+
+    /**
+     * Retains {@code message} if it is pooled.
+     */
+    static void retain(Message message) {
+        if (message instanceof PooledMessage) {
+            ((PooledMessage) message).retain();
+        }
+    }
+
+    /**
+     * Releases {@code message} if it is pooled.
+     */
+    static void release(Message message) {
+        if (message instanceof PooledMessage) {
+            ((PooledMessage) message).release();
+        }
+    }
+
+    /**
+     * Detaches {@code message} from its pool if it is pooled.
+     */
+    static void detach(Message message) {
+        if (message instanceof PooledMessage) {
+            ((PooledMessage) message).detach();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package bgu.spl.mics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Mailbox} backed by preallocated ring buffers (see {@link MailboxType#RING_BUFFER}).
+ * <p>
+ * Many senders add to a mailbox, but only its micro-service takes from it, so each priority lane
+ * is a multi-producer, single-consumer ring. A sender first reserves room in the mailbox, then
+ * claims the next slot of its lane and publishes the message there; neither step takes a lock or
+ * allocates. Every lane can hold the full capacity, so a sender that reserved room always finds a
+ * free slot.
+ * <p>
+ * Senders cannot remove queued messages, so only the {@link OverflowPolicy#BLOCK} and
+ * {@link OverflowPolicy#DROP_NEWEST} policies are supported. Waiting threads follow the
+ * configured {@link WaitStrategy}.
+ * <p>
+ * Topic broadcasts are read under a lock, taken only while some are unread. A sender advances a cursor
+ * only after publishing its broadcast, so other senders keep seeing it unread, wait for the lock and
+ * publish their messages after it.
+ */
+final class RingBufferMailbox extends Mailbox {
+
+    // How many times a waiting thread spins before it yields or parks. On a single core, spinning
+    // only delays the thread it waits for, so it yields or parks right away.
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+    // How long a sender waiting for room parks before checking again; the receiver does not wake senders
+    private static final long SENDER_PARK_NANOS = 50_000;
+    // Set in state once the mailbox is closed; the count never gets this high
+    private static final int CLOSED = 1 << 30;
+
+    // A single lane: a ring of slots, empty (null) until a message is published
+    private static final class Ring {
+        private final AtomicReferenceArray<Message> slots;
+        private final int mask;
+        // Next slot to claim, shared by the senders
+        private final AtomicLong tail = new AtomicLong();
+        // Next slot to take, only used by the receiver
+        private long head;
+
+        Ring(int length) {
+            slots = new AtomicReferenceArray<>(length);
+            mask = length - 1;
+        }
+
+        // A volatile write, so a receiver about to park either sees the message or is seen parking
+        void publish(Message message) {
+            slots.set((int) (tail.getAndIncrement() & mask), message);
+        }
+
+        // Returns the message at the head, or null if it was not published yet
+        Message poll() {
+            int index = (int) (head & mask);
+            Message message = slots.get(index);
+            if (message != null) {
+                slots.lazySet(index, null);
+                head++;
+            }
+            return message;
+        }
+
+        boolean hasPublished() {
+            return slots.get((int) (head & mask)) != null;
+        }
+    }
+
+    // One ring per priority, indexed by MessagePriority.ordinal()
+    private final Ring[] lanes;
+    // Number of reserved slots - queued messages and messages being published - with the CLOSED bit once closed
+    private final AtomicInteger state = new AtomicInteger();
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final WaitStrategy waitStrategy;
+    private final MailboxCounters counters;
+    // Largest size reported to the counters. Racy, it only saves calls to the counters.
+    private int peakSize;
+
+    // The receiver while it is parked in take(), otherwise null
+    private volatile Thread waiter;
+
+    // Guards the topic cursors
+    private final ReentrantLock topicLock = new ReentrantLock();
+
+    /**
+     * @param config   The capacity, overflow policy and wait strategy of the mailbox.
+     * @param counters The counters to update whenever the overflow policy fires.
+     */
+    RingBufferMailbox(MailboxConfig config, MailboxCounters counters) {
+        this.capacity = config.getCapacity();
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.waitStrategy = config.getWaitStrategy();
+        this.counters = counters;
+        // Ring indices wrap with a mask, so the length is rounded up to a power of two
+        int length = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        lanes = new Ring[MessagePriority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Ring(length);
+        }
+    }
+
+    @Override
+    Message add(Message message) {
+        readBroadcasts();
+        Message dropped = enqueue(message);
+        wakeReceiver();
+        notifyListener();
+        return dropped;
+    }
+
+    // Wakes the receiver and notifies the listener once for all the messages
+    @Override
+    void addAll(List<? extends Message> messages, Collection<? super Message> dropped) {
+        readBroadcasts();
+        for (Message message : messages) {
+            Message droppedMessage = enqueue(message);
+            if (droppedMessage != null) {
+                dropped.add(droppedMessage);
+            }
+        }
+        wakeReceiver();
+        notifyListener();
+    }
+
+    // Reserves room and publishes message to its lane. Returns message itself if it was dropped instead.
+    private Message enqueue(Message message) {
+        if (!reserve(isDroppable(message))) {
+            return message;
+        }
+        lanes[priorityOf(message).ordinal()].publish(message);
+        return null;
+    }
+
+    // Publishes the unread topic broadcasts ahead of a sender's message, applying the overflow policy to them
+    private void readBroadcasts() {
+        if (!hasUnreadBroadcasts()) {
+            return;
+        }
+        topicLock.lock();
+        try {
+            BroadcastTopic.Cursor cursor;
+            while ((cursor = nextUnreadCursor()) != null) {
+                enqueue(cursor.peek());
+                cursor.advance();
+            }
+        } finally {
+            topicLock.unlock();
+        }
+    }
+
+    // Publishes unread topic broadcasts while there is room, for the receiver, which cannot wait for room.
+    // Skipped while a sender reads them. Returns true if any broadcast was published.
+    private boolean readBroadcastsAsReceiver() {
+        if (!hasUnreadBroadcasts() || !topicLock.tryLock()) {
+            return false;
+        }
+        try {
+            boolean published = false;
+            BroadcastTopic.Cursor cursor;
+            while ((cursor = nextUnreadCursor()) != null && tryReserve()) {
+                Broadcast broadcast = cursor.peek();
+                lanes[priorityOf(broadcast).ordinal()].publish(broadcast);
+                cursor.advance();
+                published = true;
+            }
+            return published;
+        } finally {
+            topicLock.unlock();
+        }
+    }
+
+    // Only while nobody reads the topics
+    @Override
+    boolean skipRejectedBroadcasts() {
+        if (!topicLock.tryLock()) {
+            return true;
+        }
+        try {
+            return skipRejectedCursors();
+        } finally {
+            topicLock.unlock();
+        }
+    }
+
+    // Reserves room for one message if the mailbox has room and is open, without applying the overflow policy
+    private boolean tryReserve() {
+        int current;
+        while ((current = state.get()) < capacity) {
+            if (state.compareAndSet(current, current + 1)) {
+                if (current + 1 > peakSize) {
+                    peakSize = current + 1;
+                    counters.updateHighWaterMark(current + 1);
+                }
+                return true;
+            }
+        }
+        return false; // Full, or closed
+    }
+
+    // Reserves room for one message, applying the overflow policy while the mailbox is full, or waiting for
+    // room if the message is not droppable. Returns false if the message must be dropped.
+    private boolean reserve(boolean droppable) {
+        boolean blocked = false;
+        int round = 0;
+        while (true) {
+            int current = state.get();
+            if ((current & CLOSED) != 0) {
+                return false; // The service was unregistered, nobody will take the message
+            }
+            if (current < capacity) {
+                if (state.compareAndSet(current, current + 1)) {
+                    if (current + 1 > peakSize) {
+                        peakSize = current + 1;
+                        counters.updateHighWaterMark(current + 1);
+                    }
+                    return true;
+                }
+                continue; // Another sender reserved first
+            }
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST && droppable) {
+                counters.incrementDroppedNewest();
+                return false;
+            }
+            // BLOCK: wait for the receiver to make room
+            if (!blocked) {
+                // Messages published earlier in the same addAll were not announced yet - the receiver must see them to make room
+                wakeReceiver();
+                notifyListener();
+                checkMayWaitForRoom();
+                blocked = true;
+                counters.incrementBlockedSends();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                counters.incrementDroppedNewest();
+                return false;
+            }
+            idleSender(round++);
+        }
+    }
+
+    private void idleSender(int round) {
+        if (round < SPINS || waitStrategy == WaitStrategy.BUSY_SPIN) {
+            Thread.onSpinWait();
+        } else if (waitStrategy == WaitStrategy.SPIN_THEN_YIELD) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(this, SENDER_PARK_NANOS);
+        }
+    }
+
+    @Override
+    void wakeTaker() {
+        wakeReceiver();
+    }
+
+    private void wakeReceiver() {
+        Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+    }
+
+    // Removes the next published message in priority order, or returns null if there is none. Receiver only.
+    private Message pollNext() {
+        for (Ring lane : lanes) {
+            Message message = lane.poll();
+            if (message != null) {
+                // After the slot was cleared, so a sender reserving this room finds the slot free
+                state.decrementAndGet();
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPublished() {
+        for (Ring lane : lanes) {
+            if (lane.hasPublished()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    Message take() throws InterruptedException {
+        return awaitNext(false);
+    }
+
+    // Takes the next message, waiting until one is available. Returns null instead once a tick is
+    // unread, if ticks is set.
+    private Message awaitNext(boolean ticks) throws InterruptedException {
+        Message message;
+        while ((message = pollNext()) == null) {
+            if (ticks && hasUnreadTicks()) {
+                return null;
+            }
+            if (!readBroadcastsAsReceiver()) {
+                awaitPublished(ticks);
+            }
+        }
+        return message;
+    }
+
+    // Waits, idle, until a message or a broadcast is published, or, if ticks is set, a tick is unread.
+    // Leaves the idle state before returning, so nothing is taken while idle.
+    private void awaitPublished(boolean ticks) throws InterruptedException {
+        enterIdle();
+        try {
+            int round = 0;
+            while (!hasPublished() && !hasUnreadBroadcasts() && !(ticks && hasUnreadTicks())) {
+                idleReceiver(round++, ticks);
+            }
+        } finally {
+            leaveIdle();
+        }
+    }
+
+    private void idleReceiver(int round, boolean ticks) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (round < SPINS || waitStrategy == WaitStrategy.BUSY_SPIN) {
+            Thread.onSpinWait();
+        } else if (waitStrategy == WaitStrategy.SPIN_THEN_YIELD) {
+            Thread.yield();
+        } else {
+            // Announce the park before checking once more: a sender, topic or clock publishing in between
+            // either has its message seen here, or sees the waiter and unparks it
+            waiter = Thread.currentThread();
+            if (!hasPublished() && !hasUnreadBroadcasts() && !(ticks && hasUnreadTicks())) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+        }
+    }
+
+    @Override
+    Message poll() {
+        readBroadcastsAsReceiver();
+        return pollNext();
+    }
+
+    // Includes messages that are still being published
+    @Override
+    int size() {
+        return state.get() & ~CLOSED;
+    }
+
+    @Override
+    int takeBatch(Collection<? super Message> target, int maxMessages) throws InterruptedException {
+        Message message = awaitNext(true);
+        if (message == null) {
+            return drainTo(target, maxMessages); // A tick is unread
+        }
+        target.add(message);
+        return 1 + drainTo(target, maxMessages - 1);
+    }
+
+    @Override
+    int drainTo(Collection<? super Message> target, int maxMessages) {
+        readBroadcastsAsReceiver();
+        int moved = 0;
+        while (moved < maxMessages) {
+            Message message = pollNext();
+            if (message == null) {
+                int current = state.get();
+                // Once closed, wait for the messages still being published, so none is left behind
+                if ((current & CLOSED) == 0 || (current & ~CLOSED) == 0) {
+                    break;
+                }
+                Thread.onSpinWait();
+                continue;
+            }
+            target.add(message);
+            moved++;
+        }
+        takeTicks();
+        return moved;
+    }
+
+    @Override
+    void close() {
+        state.getAndUpdate(current -> current | CLOSED);
+        wakeReceiver();
+    }
+}
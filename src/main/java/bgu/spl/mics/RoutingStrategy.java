@@ -0,0 +1,46 @@
+package bgu.spl.mics;
+
+/**
+ * Determines which subscriber receives an event when several micro-services are
+ * subscribed to its type.
+ * <p>
+ * The strategy is chosen per event type with
+ * {@link MessageBusImpl#setRoutingStrategy(Class, RoutingStrategy)}.
+ */
+public enum RoutingStrategy {
+
+    /**
+     * Subscribers take turns, regardless of how busy they are. This is the default.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The subscriber with the fewest queued messages. Ties are broken in round-robin order.
+     * Reads the queue depth of every subscriber for each event.
+     */
+    LEAST_QUEUE_DEPTH,
+
+    /**
+     * The less busy of two randomly chosen subscribers. Almost as balanced as
+     * {@link #LEAST_QUEUE_DEPTH}, but reads only two queue depths for each event.
+     */
+    POWER_OF_TWO_CHOICES,
+
+    /**
+     * Events with the same {@link KeyedEvent#getRoutingKey() routing key} always go to the same
+     * subscriber. Keys are spread with consistent hashing, so when a subscriber joins or leaves
+     * only the keys it gains or loses move. Events without a key are routed round-robin.
+     */
+    KEY_AFFINITY;
+
+    /**
+     * Parses a configuration value such as "round_robin" or "least_queue_depth" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching strategy.
+     * @throws IllegalArgumentException if the value does not name a strategy.
+     */
+    public static RoutingStrategy fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
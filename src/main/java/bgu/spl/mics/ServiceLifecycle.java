@@ -0,0 +1,289 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts micro-services and follows them until they stop.
+ * <p>
+ * Startup: the services started with {@link #start(MicroService)} register and subscribe
+ * concurrently, and {@link #awaitStartup()} returns the moment the last of them returned from
+ * {@link MicroService#initialize()}. A service driving the others, such as a timer, is started
+ * with {@link #startDriver(MicroService)} behind this barrier, so none of the messages it sends
+ * is lost to a subscription that is not in place yet.
+ * <p>
+ * Shutdown: {@link #whenStopped(Collection, Runnable)} counts a group of services down as each
+ * of them stops, and runs an action once the last one did, instead of every service
+ * notifying the others with a broadcast.
+ * <p>
+ * In between, a driver may wait with {@link #awaitQuiescence(MicroService)} until the other
+ * services handled everything it sent them, and everything they sent each other in turn.
+ */
+public class ServiceLifecycle {
+
+    // How long a service waiting for quiescence parks before scanning the services again
+    private static final long QUIESCENCE_PARK_NANOS = 1_000_000;
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+    private final ExecutionMode executionMode;
+    private final ActorScheduler scheduler; // Null when every service runs on its own thread
+    private final DeterministicScheduler deterministicScheduler; // Null unless every service runs on one thread
+    // The threads started, guarded by this
+    private final List<Thread> threads = new ArrayList<>();
+    // The services started which did not return from initialize() yet, guarded by this
+    private final Set<MicroService> initializing = new HashSet<>();
+    // The countdowns each service takes part in, guarded by this
+    private final Map<MicroService, List<Countdown>> countdowns = new HashMap<>();
+    // The services started which did not stop yet
+    private final Set<MicroService> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A lifecycle running every service on its own thread of {@code executionMode}.
+     *
+     * @param executionMode The kind of thread the services run on.
+     */
+    public ServiceLifecycle(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+        this.scheduler = null;
+        this.deterministicScheduler = null;
+    }
+
+    /**
+     * A lifecycle running the services as actors of {@code scheduler}. Drivers still run on
+     * their own platform thread.
+     *
+     * @param scheduler The scheduler running the services.
+     */
+    public ServiceLifecycle(ActorScheduler scheduler) {
+        this.executionMode = ExecutionMode.ACTOR;
+        this.scheduler = scheduler;
+        this.deterministicScheduler = null;
+    }
+
+    /**
+     * A lifecycle running the services, drivers included, as actors of {@code scheduler}, on the
+     * thread that created it. Nothing runs until this thread waits for the services: in
+     * {@link #awaitStartup()}, {@link #awaitTermination()}, or while a driver waits in
+     * {@link #awaitQuiescence(MicroService)}.
+     *
+     * @param scheduler The scheduler running the services.
+     */
+    public ServiceLifecycle(DeterministicScheduler scheduler) {
+        this.executionMode = ExecutionMode.DETERMINISTIC;
+        this.scheduler = null;
+        this.deterministicScheduler = scheduler;
+    }
+
+    /**
+     * Starts {@code service}, which registers and subscribes on its own thread (or on the
+     * actor pool). {@link #awaitStartup()} waits until it returned from
+     * {@link MicroService#initialize()}.
+     *
+     * @param service The micro-service to start.
+     */
+    public void start(MicroService service) {
+        synchronized (this) {
+            initializing.add(service);
+        }
+        running.add(service);
+        service.setLifecycle(this);
+        if (deterministicScheduler != null) {
+            deterministicScheduler.spawn(service);
+        } else if (scheduler != null) {
+            scheduler.spawn(service);
+        } else {
+            startThread(service);
+        }
+    }
+
+    /**
+     * Waits until every service started so far has registered and returned from
+     * {@link MicroService#initialize()}, or failed to. With a deterministic scheduler, runs them.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitStartup() throws InterruptedException {
+        if (deterministicScheduler != null) {
+            deterministicScheduler.runUntilIdle();
+        }
+        synchronized (this) {
+            while (!initializing.isEmpty()) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Starts {@code service} on its own thread once every service started before it has
+     * subscribed (see {@link #awaitStartup()}). Meant for a service that drives the others from
+     * {@link MicroService#initialize()} rather than reacting to messages, such as a timer.
+     * With a deterministic scheduler, the service is spawned instead, and runs first in
+     * {@link #awaitTermination()}.
+     *
+     * @param service The micro-service to start.
+     * @throws InterruptedException if interrupted while waiting for the other services.
+     */
+    public void startDriver(MicroService service) throws InterruptedException {
+        awaitStartup();
+        running.add(service);
+        service.setLifecycle(this);
+        if (deterministicScheduler != null) {
+            deterministicScheduler.spawn(service);
+        } else {
+            startThread(service);
+        }
+    }
+
+    /**
+     * Runs {@code action} once every one of {@code services} has stopped, on the thread of the
+     * last one to stop, just before it unregisters. The messages these services sent are all
+     * queued by then, so a message sent by the action is queued behind them. If {@code services}
+     * is empty, the action runs at once.
+     * <p>
+     * Must be called before any of {@code services} is started.
+     *
+     * @param services The services to count down.
+     * @param action   The action to run once they all stopped.
+     */
+    public void whenStopped(Collection<? extends MicroService> services, Runnable action) {
+        if (services.isEmpty()) {
+            action.run();
+            return;
+        }
+        Countdown countdown = new Countdown(services.size(), action);
+        synchronized (this) {
+            for (MicroService service : services) {
+                countdowns.computeIfAbsent(service, s -> new ArrayList<>()).add(countdown);
+            }
+        }
+    }
+
+    /**
+     * Waits until the services are quiescent: every service started and not stopped yet, other
+     * than {@code caller}, waits for messages with none left to take, no unread topic broadcasts
+     * and no unread ticks. By then, everything sent to them so far was handled, including the
+     * messages they sent each other while handling it. One service at a time may wait.
+     * <p>
+     * With a deterministic scheduler, runs the other services until they are quiescent.
+     *
+     * @param caller The waiting service, which is not waited for.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitQuiescence(MicroService caller) throws InterruptedException {
+        if (deterministicScheduler != null) {
+            deterministicScheduler.runUntilIdle();
+            return;
+        }
+        Mailbox.setQuiescenceWaiter(Thread.currentThread());
+        try {
+            while (!isQuiescent(caller)) {
+                // Woken by the next mailbox going idle, with a timeout in case the wakeup raced the scan
+                LockSupport.parkNanos(this, QUIESCENCE_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            Mailbox.setQuiescenceWaiter(null);
+        }
+    }
+
+    /**
+     * Waits until every started service has stopped, then shuts the actor pool down, if any.
+     * With a deterministic scheduler, runs the services until they all stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if, with a deterministic scheduler, some services wait for
+     *                               messages no one is left to send.
+     */
+    public void awaitTermination() throws InterruptedException {
+        if (deterministicScheduler != null) {
+            deterministicScheduler.awaitTermination();
+            return;
+        }
+        List<Thread> started;
+        synchronized (this) {
+            started = new ArrayList<>(threads);
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (scheduler != null) {
+            scheduler.awaitTermination();
+        }
+    }
+
+    /**
+     * Called by {@code service} once it returned from {@link MicroService#initialize()}, or
+     * failed to.
+     */
+    synchronized void initialized(MicroService service) {
+        if (initializing.remove(service) && initializing.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Called by {@code service} once it stopped, before it unregisters. Runs the actions of the
+     * countdowns it completed.
+     */
+    void stopped(MicroService service) {
+        List<Countdown> counted;
+        synchronized (this) {
+            counted = countdowns.remove(service); // A service is only counted once
+        }
+        if (counted != null) {
+            for (Countdown countdown : counted) {
+                if (countdown.remaining.decrementAndGet() == 0) {
+                    countdown.action.run();
+                }
+            }
+        }
+        // Only once the actions ran, so the services are not quiescent while they run
+        if (running.remove(service)) {
+            Mailbox.wakeQuiescenceWaiter();
+        }
+    }
+
+    /**
+     * Scans the running services other than {@code caller} once: quiescent if all were idle, and no
+     * mailbox went idle or left it meanwhile, since a service only gets messages from a service
+     * that is not idle. Errs towards false.
+     */
+    boolean isQuiescent(MicroService caller) {
+        long transitions = Mailbox.idleTransitions();
+        for (MicroService service : running) {
+            if (service != caller && !messageBus.isIdle(service)) {
+                return false;
+            }
+        }
+        return Mailbox.idleTransitions() == transitions;
+    }
+
+    private void startThread(MicroService service) {
+        Thread thread = executionMode.newThread(service, service.getName());
+        synchronized (this) {
+            threads.add(thread);
+        }
+        thread.start();
+    }
+
+    // A group of services still running, and the action to run once none is
+    private static final class Countdown {
+        private final AtomicInteger remaining;
+        private final Runnable action;
+
+        private Countdown(int services, Runnable action) {
+            this.remaining = new AtomicInteger(services);
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package bgu.spl.mics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A simulation clock shared by the micro-services, as an alternative to broadcasting every tick.
+ * <p>
+ * A single micro-service, the timer, advances the clock. Advancing it is one volatile write;
+ * then only the mailboxes of micro-services with tick callbacks (see
+ * {@link MicroService#subscribeTick(SimulationClock, TickCallback)}) are woken, and only
+ * threads blocked in {@link #awaitTick(int)} are signalled. Nothing is queued or allocated
+ * per tick.
+ * <p>
+ * A micro-service with tick callbacks calls them on its own thread, once for every tick, in
+ * order. A tick is handled after the messages taken before the clock reached it, and before
+ * the messages taken after.
+ * <p>
+ * The clock starts at tick 0, before the first tick.
+ */
+public final class SimulationClock {
+
+    // Written only by the timer
+    private volatile int currentTick;
+
+    // The mailboxes of the micro-services with tick callbacks, woken on every tick
+    private final List<Mailbox> watchers = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    // Number of threads blocked in awaitTick(), written under lock, so the timer only locks to signal them
+    private volatile int waiting;
+
+    /**
+     * @return the current tick. A single volatile read.
+     */
+    public int currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Advances the clock by one tick and wakes the micro-services and threads waiting for it.
+     * Must only be called by one thread, the timer.
+     *
+     * @return the new current tick.
+     */
+    public int advance() {
+        int tick = currentTick + 1;
+        currentTick = tick;
+        for (Mailbox watcher : watchers) {
+            watcher.tickAdvanced();
+        }
+        if (waiting > 0) {
+            lock.lock();
+            try {
+                advanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return tick;
+    }
+
+    /**
+     * Waits until the clock reaches {@code tick}. Returns at once if it already did.
+     *
+     * @param tick The tick to wait for.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitTick(int tick) throws InterruptedException {
+        if (currentTick >= tick) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            // Counted before checking the tick: the timer either advanced before the check,
+            // or sees this thread waiting and signals it
+            waiting++;
+            try {
+                while (currentTick < tick) {
+                    advanced.await();
+                }
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts waking {@code mailbox} on every tick.
+     */
+    void watch(Mailbox mailbox) {
+        watchers.add(mailbox);
+    }
+
+    /**
+     * Stops waking {@code mailbox}.
+     */
+    void unwatch(Mailbox mailbox) {
+        watchers.remove(mailbox);
+    }
+}
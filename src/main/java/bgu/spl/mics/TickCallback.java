@@ -0,0 +1,10 @@
+package bgu.spl.mics;
+
+/**
+ * a tick callback is a function designed to be called on every tick of a {@link SimulationClock}.
+ */
+public interface TickCallback {
+
+    public void call(int tick);
+
+}
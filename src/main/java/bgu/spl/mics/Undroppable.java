@@ -0,0 +1,17 @@
+package bgu.spl.mics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a message class whose messages no {@link OverflowPolicy} drops, such as the broadcasts
+ * services stop on. A full mailbox never drops or coalesces a queued message of such a class
+ * to make room, and a sender adding one to a full mailbox waits for room, as under
+ * {@link OverflowPolicy#BLOCK}, unless it is interrupted.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Undroppable {
+}
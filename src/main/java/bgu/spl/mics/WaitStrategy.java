@@ -0,0 +1,38 @@
+package bgu.spl.mics;
+
+/**
+ * Determines how a thread waits on a {@link MailboxType#RING_BUFFER} mailbox: the receiver
+ * while the mailbox is empty, and senders while it is full under {@link OverflowPolicy#BLOCK}.
+ * <p>
+ * Every strategy first spins briefly. The strategies trade CPU time for wake-up latency.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Keeps spinning. The lowest latency, but the waiting thread occupies a core the whole time,
+     * so there should be a free core for every busy-spinning service.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spins, then yields the processor between checks. Low latency while other threads
+     * have little to do.
+     */
+    SPIN_THEN_YIELD,
+
+    /**
+     * Spins, then parks until a sender wakes the receiver. Uses no CPU while idle. This is the default.
+     */
+    PARK;
+
+    /**
+     * Parses a configuration value such as "busy_spin" or "park" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching strategy.
+     * @throws IllegalArgumentException if the value does not name a strategy.
+     */
+    public static WaitStrategy fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
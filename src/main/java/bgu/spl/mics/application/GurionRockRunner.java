@@ -1,5 +1,30 @@
 package bgu.spl.mics.application;
 
+import bgu.spl.mics.ActorScheduler;
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.BroadcastMode;
+import bgu.spl.mics.DeterministicScheduler;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MailboxConfig;
+import bgu.spl.mics.MailboxCounters;
+import bgu.spl.mics.MailboxType;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessagePool;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.OverflowPolicy;
+import bgu.spl.mics.RoutingStrategy;
+import bgu.spl.mics.ServiceLifecycle;
+import bgu.spl.mics.SimulationClock;
+import bgu.spl.mics.WaitStrategy;
+import bgu.spl.mics.application.messages.broadcasts.CamerasTerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.CrashedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.SensorsTerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
+import bgu.spl.mics.application.messages.events.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.events.PoseEvent;
+import bgu.spl.mics.application.messages.events.TrackedObjectsEvent;
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.services.*;
 import com.google.gson.Gson;
@@ -13,6 +38,8 @@ import java.nio.file.FileSystems;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main entry point for the GurionRock Pro Max Ultra Over 9000 simulation.
@@ -47,8 +74,15 @@ public class GurionRockRunner {
             Gson gson = new Gson();
             JsonObject config = gson.fromJson(reader, JsonObject.class);
 
+            // Share a simulation clock instead of broadcasting ticks, if configured (broadcast by default)
+            SimulationClock clock = config.has("SimulationClock") && config.get("SimulationClock").getAsBoolean()
+                    ? new SimulationClock()
+                    : null;
+            System.out.println("Tick Delivery: " + (clock != null ? "simulation clock" : "broadcast"));
+
             // Initialize Cameras
             List<CameraService> cameraServices = new ArrayList<>();
+            List<Camera> cameras = new ArrayList<>();
             JsonObject camerasConfig = config.getAsJsonObject("Cameras");
 
             // Get the path to the camera data file and adjust it to be relative to the config directory
@@ -90,12 +124,14 @@ public class GurionRockRunner {
 
                     // Create Camera object and corresponding CameraService
                     Camera camera = new Camera(id, frequency, detectedObjectsList);
-                    cameraServices.add(new CameraService(camera));
+                    cameras.add(camera);
+                    cameraServices.add(new CameraService(camera, clock));
                 }
             }
 
             // Initialize LiDARs
             List<LiDarService> lidarServices = new ArrayList<>();
+            List<LiDarWorkerTracker> lidarWorkers = new ArrayList<>();
             JsonObject lidarConfig = config.getAsJsonObject("LiDarWorkers");
 
             // Get the path to the LiDAR data file and adjust it to be relative to the config directory
@@ -113,13 +149,15 @@ public class GurionRockRunner {
                 int id = lidarJson.getAsJsonObject().get("id").getAsInt();
                 int frequency = lidarJson.getAsJsonObject().get("frequency").getAsInt();
                 LiDarWorkerTracker lidarWorker = new LiDarWorkerTracker(id, frequency, lidarDataPath);
-                lidarServices.add(new LiDarService(lidarWorker));
+                lidarWorkers.add(lidarWorker);
+                lidarServices.add(new LiDarService(lidarWorker, clock));
             }
 
             // Initialize PoseService
             String poseFilePath = config.get("poseJsonFile").getAsString();
             poseFilePath = Paths.get(configDirectory, poseFilePath).toString(); // Adjust path
             PoseService poseService;
+            GPSIMU gpsimu;
 
             // Parse pose data from the JSON file
             try (FileReader poseReader = new FileReader(poseFilePath)) {
@@ -127,8 +165,8 @@ public class GurionRockRunner {
                 List<Pose> poseList = gson.fromJson(poseReader, poseListType);
 
                 // Create GPSIMU and initialize PoseService
-                GPSIMU gpsimu = new GPSIMU(poseList);
-                poseService = new PoseService(gpsimu);
+                gpsimu = new GPSIMU(poseList);
+                poseService = new PoseService(gpsimu, clock);
             }
 
             // Initialize FusionSlamService
@@ -149,39 +187,125 @@ public class GurionRockRunner {
             System.out.println("Active Sensors: " + numActiveSensors);
 
             // Initialize simulation parameters
-            int tickTime = config.get("TickTime").getAsInt();
+            long tickTime = config.get("TickTime").getAsLong();
             int duration = config.get("Duration").getAsInt();
-            TimeService timeService = new TimeService(tickTime, duration);
+            // TickTime is in seconds unless a finer unit is configured
+            TimeUnit tickTimeUnit = config.has("TickTimeUnit")
+                    ? TimeUnit.valueOf(config.get("TickTimeUnit").getAsString().trim().toUpperCase())
+                    : TimeUnit.SECONDS;
+            // Choose the kind of thread each service runs on (platform threads by default)
+            ExecutionMode executionMode = config.has("ExecutionMode")
+                    ? ExecutionMode.fromConfig(config.get("ExecutionMode").getAsString())
+                    : ExecutionMode.PLATFORM;
+            if (!executionMode.isSupported()) {
+                System.err.println("Warning: " + executionMode + " execution mode is not supported by this JVM. Using platform threads.");
+            }
+            System.out.println("Execution Mode: " + executionMode);
+
+            // Move to the next tick after TickTime, or as soon as the services handled the current one
+            TickPacing tickPacing = config.has("TickPacing")
+                    ? TickPacing.fromConfig(config.get("TickPacing").getAsString())
+                    : TickPacing.PACED;
+            if (executionMode == ExecutionMode.DETERMINISTIC && tickPacing != TickPacing.AS_FAST_AS_POSSIBLE) {
+                // The services only run while TimeService waits for them, on the same thread
+                if (config.has("TickPacing")) {
+                    System.err.println("Warning: deterministic execution cannot pace the ticks. Sending them as fast as possible.");
+                }
+                tickPacing = TickPacing.AS_FAST_AS_POSSIBLE;
+            }
+            System.out.println("Tick Pacing: " + tickPacing);
+            // Skip the ticks at which no sensor is due, if configured (every tick is sent by default)
+            SensorSchedule sensorSchedule = null;
+            if (config.has("SparseTicks") && config.get("SparseTicks").getAsBoolean()) {
+                if (clock != null) {
+                    System.err.println("Warning: sparse ticks need broadcast ticks, the services following a simulation clock handle every tick. Sending every tick.");
+                } else {
+                    sensorSchedule = new SensorSchedule(cameras, lidarWorkers, gpsimu, LiDarDataBase.getInstance());
+                }
+            }
+            System.out.println("Sparse Ticks: " + (sensorSchedule != null));
+            TimeService timeService = new TimeService(tickTime, tickTimeUnit, duration, clock, tickPacing, sensorSchedule);
+            // Replay the paced ticks faster or slower than TickTime, if configured (TickTime by default)
+            if (config.has("ReplaySpeed")) {
+                timeService.setReplaySpeed(config.get("ReplaySpeed").getAsDouble());
+                System.out.println("Replay Speed: " + timeService.getReplaySpeed() + "x");
+            }
 
-            // Create threads for all services
-            List<Thread> threads = new ArrayList<>();
-            for (CameraService cameraService : cameraServices) {
-                threads.add(new Thread(cameraService));
+            // Bound the mailboxes of the services, if configured (unbounded by default)
+            if (config.has("Mailboxes")) {
+                configureMailboxes(config.getAsJsonObject("Mailboxes"), executionMode);
             }
-            for (LiDarService lidarService : lidarServices) {
-                threads.add(new Thread(lidarService));
+
+            // Choose how each event type is routed between its subscribers (round-robin by default)
+            if (config.has("EventRouting")) {
+                configureEventRouting(config.getAsJsonObject("EventRouting"));
             }
-            threads.add(new Thread(poseService));
-            threads.add(new Thread(fusionSlamService));
 
-            // TimeService runs separately
-            Thread timeServiceThread = new Thread(timeService);
-            threads.add(timeServiceThread);
+            // Choose how each broadcast type reaches its subscribers (fan-out by default)
+            if (config.has("BroadcastModes")) {
+                configureBroadcastModes(config.getAsJsonObject("BroadcastModes"));
+            }
 
-            // Start all threads except TimeService
-            for (Thread thread : threads) {
-                if (thread != timeServiceThread) {
-                    thread.start();
-                }
+            // Recycle the high-rate messages once handled, if configured (disabled by default)
+            if (config.has("MessagePooling")) {
+                MessagePool.setEnabled(config.get("MessagePooling").getAsBoolean());
+                System.out.println("Message Pooling: " + MessagePool.isEnabled());
             }
 
-            // Allow other services to initialize before starting TimeService
-            Thread.sleep(100);
-            timeServiceThread.start();
+            // Collect all services except TimeService, which runs separately
+            List<MicroService> services = new ArrayList<>();
+            services.addAll(cameraServices);
+            services.addAll(lidarServices);
+            services.add(poseService);
+            services.add(fusionSlamService);
+
+            // Run the services on their own threads, as actors on a fixed number of worker threads, or all on this thread
+            ServiceLifecycle lifecycle;
+            if (executionMode == ExecutionMode.DETERMINISTIC) {
+                lifecycle = new ServiceLifecycle(new DeterministicScheduler());
+            } else if (executionMode == ExecutionMode.ACTOR) {
+                int workers = config.has("ActorWorkers")
+                        ? config.get("ActorWorkers").getAsInt()
+                        : Runtime.getRuntime().availableProcessors();
+                System.out.println("Actor Workers: " + workers);
+                lifecycle = new ServiceLifecycle(new ActorScheduler(workers));
+            } else {
+                lifecycle = new ServiceLifecycle(executionMode);
+            }
 
-            // Wait for all threads to complete
-            for (Thread thread : threads) {
-                thread.join();
+            // Count the services down as they stop, instead of each one broadcasting its termination
+            List<MicroService> sensorServices = new ArrayList<>();
+            sensorServices.addAll(cameraServices);
+            sensorServices.addAll(lidarServices);
+            List<MicroService> producerServices = new ArrayList<>(sensorServices);
+            producerServices.add(poseService); // Tracked objects wait in FusionSLAM for the pose of their time
+            producerServices.add(timeService);
+            // LiDARs stop from the tick after the last camera stopped, once they received and sent the detections
+            lifecycle.whenStopped(cameraServices, () -> {
+                fusionSlam.setCamerasStopped(cameraServices.stream().mapToInt(CameraService::getLastTick).max().orElse(0));
+                MessageBusImpl.getInstance().sendBroadcast(new CamerasTerminatedBroadcast());
+            });
+            // No sensor is left: stop the ticks
+            lifecycle.whenStopped(sensorServices, () -> {
+                fusionSlam.setActiveSensors(0);
+                fusionSlam.setTerminated(true);
+            });
+            // Queued behind everything the sensors and the PoseService sent, so FusionSLAM writes the output last
+            lifecycle.whenStopped(producerServices, () -> MessageBusImpl.getInstance().sendBroadcast(new SensorsTerminatedBroadcast()));
+
+            for (MicroService service : services) {
+                lifecycle.start(service);
+            }
+
+            // Start TimeService the moment every other service subscribed.
+            // TimeService drives the clock rather than reacting to messages, so it keeps its own thread.
+            lifecycle.startDriver(timeService);
+
+            // Wait for all services to complete
+            lifecycle.awaitTermination();
+            reportMailboxOverflows();
+            if (timeService.getTickTimings().getTicks() > 0) {
+                System.out.println("Tick Timing: " + timeService.getTickTimings());
             }
 
         } catch (IOException | InterruptedException e) {
@@ -190,4 +314,104 @@ public class GurionRockRunner {
             Thread.currentThread().interrupt();
         }
     }
+
+    /**
+     * Sets the mailbox configurations of the services. The "default" entry applies to every
+     * service without an entry of its own; other entries are keyed by service name.
+     * Each entry has a "capacity" and an optional "overflow" policy (block by default), and may
+     * choose a "ring_buffer" "type" with a "wait" strategy (park by default).
+     *
+     * @param mailboxesConfig The "Mailboxes" object of the configuration file.
+     * @param executionMode   The execution mode of the services.
+     * @throws IllegalArgumentException if a deterministic run would block a sender on a full mailbox.
+     */
+    private static void configureMailboxes(JsonObject mailboxesConfig, ExecutionMode executionMode) {
+        MessageBusImpl messageBus = MessageBusImpl.getInstance();
+        for (Map.Entry<String, com.google.gson.JsonElement> entry : mailboxesConfig.entrySet()) {
+            JsonObject mailboxJson = entry.getValue().getAsJsonObject();
+            OverflowPolicy policy = mailboxJson.has("overflow")
+                    ? OverflowPolicy.fromConfig(mailboxJson.get("overflow").getAsString())
+                    : OverflowPolicy.BLOCK;
+            MailboxType type = mailboxJson.has("type")
+                    ? MailboxType.fromConfig(mailboxJson.get("type").getAsString())
+                    : MailboxType.LOCKING;
+            WaitStrategy waitStrategy = mailboxJson.has("wait")
+                    ? WaitStrategy.fromConfig(mailboxJson.get("wait").getAsString())
+                    : WaitStrategy.PARK;
+            MailboxConfig mailboxConfig = new MailboxConfig(mailboxJson.get("capacity").getAsInt(), policy, type, waitStrategy);
+            if (executionMode == ExecutionMode.DETERMINISTIC && policy == OverflowPolicy.BLOCK && !mailboxConfig.isUnbounded()) {
+                // The sender runs on the only thread, which would never get to take a message and make room
+                throw new IllegalArgumentException("Mailbox " + entry.getKey()
+                        + ": deterministic execution cannot block a sender on a full mailbox. Choose another overflow policy.");
+            }
+            if ("default".equals(entry.getKey())) {
+                messageBus.setDefaultMailboxConfig(mailboxConfig);
+            } else {
+                messageBus.setMailboxConfig(entry.getKey(), mailboxConfig);
+            }
+            System.out.println("Mailbox " + entry.getKey() + ": " + mailboxConfig);
+        }
+    }
+
+    /**
+     * Sets the routing strategies of event types. Keys are event class names, such as
+     * "DetectObjectsEvent"; values are strategies, such as "least_queue_depth".
+     *
+     * @param routingConfig The "EventRouting" object of the configuration file.
+     */
+    private static void configureEventRouting(JsonObject routingConfig) {
+        List<Class<? extends Event<?>>> eventTypes = List.of(DetectObjectsEvent.class, TrackedObjectsEvent.class, PoseEvent.class);
+        for (Map.Entry<String, com.google.gson.JsonElement> entry : routingConfig.entrySet()) {
+            RoutingStrategy strategy = RoutingStrategy.fromConfig(entry.getValue().getAsString());
+            Class<? extends Event<?>> eventType = null;
+            for (Class<? extends Event<?>> type : eventTypes) {
+                if (type.getSimpleName().equals(entry.getKey())) {
+                    eventType = type;
+                }
+            }
+            if (eventType == null) {
+                System.err.println("Warning: Unknown event type in EventRouting: " + entry.getKey());
+                continue;
+            }
+            MessageBusImpl.getInstance().setRoutingStrategy(eventType, strategy);
+            System.out.println("Event Routing " + entry.getKey() + ": " + strategy);
+        }
+    }
+
+    /**
+     * Sets the modes of broadcast types. Keys are broadcast class names, such as
+     * "TickBroadcast"; values are modes, such as "topic".
+     *
+     * @param modesConfig The "BroadcastModes" object of the configuration file.
+     */
+    private static void configureBroadcastModes(JsonObject modesConfig) {
+        List<Class<? extends Broadcast>> broadcastTypes = List.of(TickBroadcast.class, TerminatedBroadcast.class, CrashedBroadcast.class,
+                CamerasTerminatedBroadcast.class, SensorsTerminatedBroadcast.class);
+        for (Map.Entry<String, com.google.gson.JsonElement> entry : modesConfig.entrySet()) {
+            BroadcastMode mode = BroadcastMode.fromConfig(entry.getValue().getAsString());
+            Class<? extends Broadcast> broadcastType = null;
+            for (Class<? extends Broadcast> type : broadcastTypes) {
+                if (type.getSimpleName().equals(entry.getKey())) {
+                    broadcastType = type;
+                }
+            }
+            if (broadcastType == null) {
+                System.err.println("Warning: Unknown broadcast type in BroadcastModes: " + entry.getKey());
+                continue;
+            }
+            MessageBusImpl.getInstance().setBroadcastMode(broadcastType, mode);
+            System.out.println("Broadcast Mode " + entry.getKey() + ": " + mode);
+        }
+    }
+
+    /**
+     * Prints the overflow counters of every service whose mailbox overflowed during the run.
+     */
+    private static void reportMailboxOverflows() {
+        for (Map.Entry<String, MailboxCounters> entry : MessageBusImpl.getInstance().getMailboxCounters().entrySet()) {
+            if (!entry.getValue().isIdle()) {
+                System.out.println("Mailbox overflow in " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+    }
 }
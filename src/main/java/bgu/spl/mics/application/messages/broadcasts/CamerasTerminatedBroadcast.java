@@ -0,0 +1,13 @@
+package bgu.spl.mics.application.messages.broadcasts;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Undroppable;
+
+/**
+ * CamerasTerminatedBroadcast is sent once every camera has terminated, whether normally or after a crash.
+ * It is queued behind all the detections the cameras sent, so a LiDAR worker receiving it
+ * has received every detection it will ever get.
+ */
+@Undroppable // The LiDAR workers stop on it
+public class CamerasTerminatedBroadcast implements Broadcast {
+}
@@ -1,11 +1,16 @@
 package bgu.spl.mics.application.messages.broadcasts;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.DeliveryPriority;
+import bgu.spl.mics.MessagePriority;
+import bgu.spl.mics.Undroppable;
 
 /**
  * CrashedBroadcast is sent by a service to notify the system of its critical failure.
  * It is received by all subscribers who have registered for this type of broadcast.
  */
+@DeliveryPriority(MessagePriority.HIGH) // Delivered ahead of queued ticks and sensor data
+@Undroppable // Every service stops on it
 public class CrashedBroadcast implements Broadcast {
 
     // Fields
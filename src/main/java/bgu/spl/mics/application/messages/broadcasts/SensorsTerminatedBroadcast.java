@@ -0,0 +1,13 @@
+package bgu.spl.mics.application.messages.broadcasts;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Undroppable;
+
+/**
+ * SensorsTerminatedBroadcast is sent once every camera, every LiDAR worker, the PoseService and
+ * the TimeService have terminated, whether normally or after a crash.
+ * It is queued behind all the data and poses they sent, so FusionSLAM can write the output on it.
+ */
+@Undroppable // FusionSLAM writes the output on it
+public class SensorsTerminatedBroadcast implements Broadcast {
+}
@@ -1,11 +1,15 @@
 package bgu.spl.mics.application.messages.broadcasts;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Undroppable;
+
+import java.util.function.Predicate;
 
 /**
  * TerminatedBroadcast is sent by a service to notify the system that it has terminated gracefully.
  * It is received by all subscribers who have registered for this type of broadcast.
  */
+@Undroppable // Services stop on the TimeService's
 public class TerminatedBroadcast implements Broadcast {
 
     // Fields
@@ -28,4 +32,14 @@ public class TerminatedBroadcast implements Broadcast {
     public String getSenderId() {
         return senderId;
     }
+
+    /**
+     * Creates a subscription filter accepting only the TerminatedBroadcasts of one sender.
+     *
+     * @param senderId The ID of the service whose termination matters.
+     * @return A filter to pass when subscribing to TerminatedBroadcast.
+     */
+    public static Predicate<TerminatedBroadcast> from(String senderId) {
+        return broadcast -> senderId.equals(broadcast.getSenderId());
+    }
 }
\ No newline at end of file
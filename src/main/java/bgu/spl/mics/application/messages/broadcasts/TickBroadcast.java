@@ -1,15 +1,23 @@
 package bgu.spl.mics.application.messages.broadcasts;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.MessagePool;
+import bgu.spl.mics.PooledMessage;
+
+import java.util.function.Predicate;
 
 /**
  * TickBroadcast is sent by the TimeService to notify all subscribed microservices
  * of the current simulation tick.
+ * Sent at every tick, so it can be recycled (see {@link #obtain(int)}).
  */
-public class TickBroadcast implements Broadcast {
+public class TickBroadcast extends PooledMessage implements Broadcast {
+
+    // Free ticks; more than a few are only in flight while subscribers fall behind
+    private static final MessagePool<TickBroadcast> POOL = new MessagePool<>(() -> new TickBroadcast(0), 64);
 
     // Fields
-    private final int currentTick; // The current simulation tick.
+    private int currentTick; // The current simulation tick.
 
     /**
      * Constructor for TickBroadcast.
@@ -20,6 +28,18 @@ public class TickBroadcast implements Broadcast {
         this.currentTick = currentTick;
     }
 
+    /**
+     * Gets a TickBroadcast from the pool, or a new one if pooling is disabled.
+     *
+     * @param currentTick The current simulation tick.
+     * @return A TickBroadcast for {@code currentTick}, owned by the caller until sent.
+     */
+    public static TickBroadcast obtain(int currentTick) {
+        TickBroadcast tick = POOL.acquire();
+        tick.currentTick = currentTick;
+        return tick;
+    }
+
     /**
      * Gets the current simulation tick.
      *
@@ -28,4 +48,18 @@ public class TickBroadcast implements Broadcast {
     public int getCurrentTick() {
         return currentTick;
     }
+
+    /**
+     * Creates a subscription filter accepting every {@code period}-th tick,
+     * that is, the ticks divisible by {@code period}.
+     *
+     * @param period The number of ticks between accepted ticks (at least 1).
+     * @return A filter to pass when subscribing to TickBroadcast.
+     */
+    public static Predicate<TickBroadcast> every(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("Period must be at least 1.");
+        }
+        return tick -> tick.getCurrentTick() % period == 0;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package bgu.spl.mics.application.messages.events;
 
-import bgu.spl.mics.Event;
+import bgu.spl.mics.KeyedEvent;
+import bgu.spl.mics.MessagePool;
+import bgu.spl.mics.PooledMessage;
 import bgu.spl.mics.application.objects.DetectedObject;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
 
@@ -9,10 +11,14 @@ import java.util.List;
 /**
  * DetectObjectsEvent is sent by a CameraService to request LiDAR workers
  * to process and track detected objects.
+ * It can be recycled (see {@link #obtain(StampedDetectedObjects)}); a LiDAR worker queuing it
+ * for a later tick retains it until then.
  */
-public class DetectObjectsEvent implements Event<Boolean> {
+public class DetectObjectsEvent extends PooledMessage implements KeyedEvent<Boolean> {
 
-    private final StampedDetectedObjects stampedDetectedObjects;
+    private static final MessagePool<DetectObjectsEvent> POOL = new MessagePool<>(() -> new DetectObjectsEvent(null), 64);
+
+    private StampedDetectedObjects stampedDetectedObjects;
 
     /**
      * Constructor for DetectObjectsEvent.
@@ -21,6 +27,18 @@ public class DetectObjectsEvent implements Event<Boolean> {
         this.stampedDetectedObjects = stampedDetectedObjects;
     }
 
+    /**
+     * Gets a DetectObjectsEvent from the pool, or a new one if pooling is disabled.
+     *
+     * @param stampedDetectedObjects The detected objects and their detection time.
+     * @return A DetectObjectsEvent for {@code stampedDetectedObjects}, owned by the caller until sent.
+     */
+    public static DetectObjectsEvent obtain(StampedDetectedObjects stampedDetectedObjects) {
+        DetectObjectsEvent event = POOL.acquire();
+        event.stampedDetectedObjects = stampedDetectedObjects;
+        return event;
+    }
+
     /**
      * Gets the time at which the objects were detected.
      *
@@ -38,4 +56,23 @@ public class DetectObjectsEvent implements Event<Boolean> {
     public List<DetectedObject> getDetectedObjects() {
         return stampedDetectedObjects.getDetectedObjects();
     }
+
+    /**
+     * Gets the routing key of this event: the id of the first detected object, so with key
+     * affinity routing the same object keeps going to the same LiDAR worker.
+     * The other objects of the event go with it, so an object detected together with others
+     * only keeps its LiDAR worker while it is detected first.
+     *
+     * @return The id of the first detected object, or null if no objects were detected.
+     */
+    @Override
+    public Object getRoutingKey() {
+        List<DetectedObject> detectedObjects = getDetectedObjects();
+        return detectedObjects.isEmpty() ? null : detectedObjects.get(0).getId();
+    }
+
+    @Override
+    protected void clear() {
+        stampedDetectedObjects = null;
+    }
 }
\ No newline at end of file
@@ -1,14 +1,22 @@
 package bgu.spl.mics.application.messages.events;
 
 import bgu.spl.mics.Event;
+import bgu.spl.mics.DeliveryPriority;
+import bgu.spl.mics.MessagePool;
+import bgu.spl.mics.MessagePriority;
+import bgu.spl.mics.PooledMessage;
 import bgu.spl.mics.application.objects.Pose;
 
 /**
  * PoseEvent is sent by the PoseService to provide the robot's current pose to the FusionSLAM service.
+ * Sent at every tick, so it can be recycled (see {@link #obtain(Pose)}).
  */
-public class PoseEvent implements Event<Void> {
+@DeliveryPriority(MessagePriority.HIGH) // Poses are needed before the tracked objects they transform
+public class PoseEvent extends PooledMessage implements Event<Void> {
 
-    private final Pose pose; // The robot's pose.
+    private static final MessagePool<PoseEvent> POOL = new MessagePool<>(() -> new PoseEvent(null), 64);
+
+    private Pose pose; // The robot's pose.
 
     /**
      * Constructor for PoseEvent.
@@ -19,6 +27,18 @@ public class PoseEvent implements Event<Void> {
         this.pose = pose;
     }
 
+    /**
+     * Gets a PoseEvent from the pool, or a new one if pooling is disabled.
+     *
+     * @param pose The robot's pose.
+     * @return A PoseEvent for {@code pose}, owned by the caller until sent.
+     */
+    public static PoseEvent obtain(Pose pose) {
+        PoseEvent event = POOL.acquire();
+        event.pose = pose;
+        return event;
+    }
+
     /**
      * Gets the robot's pose.
      *
@@ -27,4 +47,9 @@ public class PoseEvent implements Event<Void> {
     public Pose getPose() {
         return pose;
     }
+
+    @Override
+    protected void clear() {
+        pose = null;
+    }
 }
\ No newline at end of file
@@ -1,14 +1,24 @@
 package bgu.spl.mics.application.messages.events;
 
-import bgu.spl.mics.Event;
+import bgu.spl.mics.DeliveryPriority;
+import bgu.spl.mics.KeyedEvent;
+import bgu.spl.mics.MessagePool;
+import bgu.spl.mics.MessagePriority;
+import bgu.spl.mics.PooledMessage;
 import bgu.spl.mics.application.objects.TrackedObject;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * TrackedObjectsEvent is sent by a LiDAR worker to the FusionSLAM service.
  * It contains a list of tracked objects with their positional data.
+ * It can be recycled together with its list (see {@link #obtain()}).
  */
-public class TrackedObjectsEvent implements Event<Void> {
+@DeliveryPriority(MessagePriority.LOW) // Bulk sensor data
+public class TrackedObjectsEvent extends PooledMessage implements KeyedEvent<Void> {
+
+    private static final MessagePool<TrackedObjectsEvent> POOL =
+            new MessagePool<>(() -> new TrackedObjectsEvent(new ArrayList<>()), 64);
 
     private final List<TrackedObject> trackedObjects; // List of tracked objects.
     /**
@@ -20,6 +30,16 @@ public class TrackedObjectsEvent implements Event<Void> {
         this.trackedObjects = trackedObjects;
     }
 
+    /**
+     * Gets a TrackedObjectsEvent from the pool, or a new one if pooling is disabled.
+     * Its list of tracked objects is empty, for the caller to fill before sending it.
+     *
+     * @return An empty TrackedObjectsEvent, owned by the caller until sent.
+     */
+    public static TrackedObjectsEvent obtain() {
+        return POOL.acquire();
+    }
+
     /**
      * Gets the list of tracked objects.
      *
@@ -28,4 +48,23 @@ public class TrackedObjectsEvent implements Event<Void> {
     public List<TrackedObject> getTrackedObjects() {
         return trackedObjects;
     }
+
+    /**
+     * Gets the routing key of this event: the id of the first tracked object, so with key
+     * affinity routing the landmark updates of the same object go to the same subscriber.
+     * The other objects of the event go with it, so an object tracked together with others
+     * only keeps its subscriber while it is tracked first.
+     *
+     * @return The id of the first tracked object, or null if there are none.
+     */
+    @Override
+    public Object getRoutingKey() {
+        return trackedObjects.isEmpty() ? null : trackedObjects.get(0).getId();
+    }
+
+    // Only called on pooled events, which own their list
+    @Override
+    protected void clear() {
+        trackedObjects.clear();
+    }
 }
\ No newline at end of file
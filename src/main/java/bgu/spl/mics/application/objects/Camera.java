@@ -1,7 +1,9 @@
 package bgu.spl.mics.application.objects;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a camera sensor on the robot.
@@ -11,8 +13,10 @@ public class Camera {
     // Fields
     private final int id; // Unique identifier for the camera
     private final int frequency; // Time interval at which the camera sends new events
-    private STATUS status; // Enum representing the camera's current status (Up, Down, Error)
+    private volatile STATUS status; // Enum representing the camera's current status (Up, Down, Error), also read by the TimeService
     private final List<StampedDetectedObjects> detectedObjectsList; // Time-stamped list of detected objects
+    private final Set<Integer> detectionTimes; // Times of the detections, for isDueAt
+    private final int lastDetectionTime; // Time of the latest detection, or 0 if there are none
 
 
     // Constructor
@@ -23,6 +27,14 @@ public class Camera {
         this.detectedObjectsList = detectedObjectsList != null
                 ? Collections.unmodifiableList(detectedObjectsList)
                 : Collections.emptyList(); // Ensure immutability of preloaded data
+        Set<Integer> times = new HashSet<>();
+        int lastTime = 0;
+        for (StampedDetectedObjects stampedObjects : this.detectedObjectsList) {
+            times.add(stampedObjects.getTime());
+            lastTime = Math.max(lastTime, stampedObjects.getTime());
+        }
+        this.detectionTimes = times;
+        this.lastDetectionTime = lastTime;
     }
 
     // Gets the id of the camera
@@ -72,4 +84,50 @@ public class Camera {
         }
         return true; // No future detections
     }
+
+    /**
+     * Checks whether the camera has anything to do at a tick: detections are taken then, or
+     * detections taken {@code frequency} ticks earlier are due to be sent, or every detection
+     * was already sent and the camera stops. Reads only the preloaded data, so it is thread-safe.
+     *
+     * @param tick The simulation tick.
+     * @return true if the camera acts at {@code tick}.
+     */
+    public boolean isDueAt(int tick) {
+        return detectionTimes.contains(tick)
+                || detectionTimes.contains(tick - frequency)
+                || detectionTimes.isEmpty()
+                || tick >= lastDetectionTime + frequency;
+    }
+
+    /**
+     * Finds the first tick after {@code tick} at which the camera is due (see {@link #isDueAt(int)}).
+     * Reads only the preloaded data, so it is thread-safe.
+     *
+     * @param tick The simulation tick.
+     * @return the first tick after {@code tick} at which the camera acts.
+     */
+    public int nextDueTick(int tick) {
+        if (detectionTimes.isEmpty() || tick + 1 >= lastDetectionTime + frequency) {
+            return tick + 1; // The camera stops at the next tick
+        }
+        // Some detection is still to be sent, so both exist
+        return Math.min(nextDetectionTime(tick), nextDetectionTime(tick - frequency) + frequency);
+    }
+
+    /**
+     * Finds the first detection taken after {@code tick}. Reads only the preloaded data, so it is thread-safe.
+     *
+     * @param tick The simulation tick.
+     * @return the time of the first detection after {@code tick}, or Integer.MAX_VALUE if there is none.
+     */
+    public int nextDetectionTime(int tick) {
+        int next = Integer.MAX_VALUE;
+        for (int time : detectionTimes) {
+            if (time > tick && time < next) {
+                next = time;
+            }
+        }
+        return next;
+    }
 }
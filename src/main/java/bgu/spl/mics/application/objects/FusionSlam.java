@@ -15,6 +15,7 @@ public class FusionSlam {
     private final List<LandMark> landmarks; // Represents the map of the environment
     private final List<Pose> poses; // List of previous poses needed for calculations
     private final AtomicInteger activeCameras; // Number of currently active camera sensors
+    private volatile int camerasStoppedTick; // The last tick handled by the cameras, once they all stopped
     private int activeSensors; // Total number of currently active sensors (both cameras and LiDARs)
     private boolean terminated;
     private boolean crashed;
@@ -71,6 +72,28 @@ public class FusionSlam {
         return activeCameras.get();
     }
 
+    /**
+     * Records that every camera stopped, the last one after handling {@code tick}.
+     *
+     * @param tick The last tick handled by the cameras, 0 if none was.
+     */
+    public void setCamerasStopped(int tick) {
+        camerasStoppedTick = tick; // Before the count, so a reader seeing no camera also sees the tick
+        activeCameras.set(0);
+    }
+
+    /**
+     * Tells whether the cameras had all stopped before {@code tick}. A camera stopping while
+     * handling {@code tick} only counts from the next tick, so the answer does not depend on
+     * whether the camera or the caller handled {@code tick} first.
+     *
+     * @param tick The tick being handled.
+     * @return true if every camera stopped after handling an earlier tick.
+     */
+    public boolean camerasStoppedBefore(int tick) {
+        return activeCameras.get() == 0 && camerasStoppedTick < tick;
+    }
+
     // Getter for total active sensors
     public int getActiveSensors() {
         return activeSensors;
@@ -215,6 +238,7 @@ public class FusionSlam {
         landmarks.clear();
         poses.clear();
         activeCameras.set(0);
+        camerasStoppedTick = 0;
         activeSensors = 0;
         terminated = false;
         crashed = false;
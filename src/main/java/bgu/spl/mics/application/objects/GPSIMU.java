@@ -8,7 +8,7 @@ import java.util.List;
 public class GPSIMU {
     // Fields
     private int currentTick; // Current time in ticks
-    private STATUS status; // Enum representing the GPS/IMU status (Up, Down, Error)
+    private volatile STATUS status; // Enum representing the GPS/IMU status (Up, Down, Error), also read by the TimeService
     private final List<Pose> poseList; // List of time-stamped poses
 
     public GPSIMU(List<Pose> poseList) {
@@ -55,6 +55,22 @@ public class LiDarDataBase {
         return matchingCloudPoints;
     }
 
+    /**
+     * Finds the first error in the cloud points after {@code time}, at which the LiDAR workers crash.
+     *
+     * @param time The simulation tick.
+     * @return the time of the first error after {@code time}, or Integer.MAX_VALUE if there is none.
+     */
+    public int nextErrorTime(int time) {
+        int next = Integer.MAX_VALUE;
+        for (StampedCloudPoints cloud : cloudPoints) {
+            if (cloud.getId().equals("ERROR") && cloud.getTime() > time && cloud.getTime() < next) {
+                next = cloud.getTime();
+            }
+        }
+        return next;
+    }
+
     /**
      * Retrieves the most recent StampedCloudPoints for a given object ID and time.
      *
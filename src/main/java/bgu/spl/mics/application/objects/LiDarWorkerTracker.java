@@ -12,7 +12,7 @@ public class LiDarWorkerTracker {
     // Fields
     private final int id; // Unique identifier for the LiDAR worker
     private final int frequency; // Time interval at which the LiDAR worker sends new events
-    private STATUS status; // Enum representing the LiDAR's current status (Up, Down, Error)
+    private volatile STATUS status; // Enum representing the LiDAR's current status (Up, Down, Error), also read by the TimeService
     private final List<TrackedObject> lastTrackedObjects; // List of last objects tracked by the LiDAR
 
     // Constructor
@@ -0,0 +1,76 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * Finds the next tick at which any sensor has something to do, so the TimeService can skip the
+ * ticks at which nothing happens (the optional "SparseTicks" configuration key).
+ * <p>
+ * A tick is due if a camera takes, sends or runs out of detections then, a LiDAR worker may
+ * have a detection to send or an error to report, or a sensor stops. The PoseService sends a
+ * pose at every tick and stops at the first tick without one, so every tick is due while it runs.
+ * <p>
+ * Reads the preloaded data and the statuses of the sensors, which the services update as they
+ * handle the ticks. The result only holds once they handled every tick sent so far: before,
+ * it may miss a tick at which a sensor is still due, so a caller that cannot tell must not skip.
+ */
+public class SensorSchedule {
+
+    // Fields
+    private final List<Camera> cameras;
+    private final List<LiDarWorkerTracker> lidarWorkers;
+    private final GPSIMU gpsimu;
+    private final LiDarDataBase lidarDataBase;
+
+    /**
+     * Constructor for SensorSchedule.
+     *
+     * @param cameras       The cameras of the simulation.
+     * @param lidarWorkers  The LiDAR workers of the simulation.
+     * @param gpsimu        The GPS/IMU read by the PoseService.
+     * @param lidarDataBase The cloud points read by the LiDAR workers.
+     */
+    public SensorSchedule(List<Camera> cameras, List<LiDarWorkerTracker> lidarWorkers, GPSIMU gpsimu, LiDarDataBase lidarDataBase) {
+        this.cameras = cameras;
+        this.lidarWorkers = lidarWorkers;
+        this.gpsimu = gpsimu;
+        this.lidarDataBase = lidarDataBase;
+    }
+
+    /**
+     * Finds the first tick after {@code tick} at which a sensor still running is due.
+     *
+     * @param tick The current tick.
+     * @return the next due tick, or Integer.MAX_VALUE if no sensor is due anymore.
+     */
+    public int nextDueTick(int tick) {
+        if (gpsimu.getStatus() == STATUS.UP) {
+            return tick + 1;
+        }
+        int next = Integer.MAX_VALUE;
+        for (Camera camera : cameras) {
+            if (camera.getStatus() == STATUS.UP) {
+                next = Math.min(next, camera.nextDueTick(tick));
+            }
+        }
+        for (LiDarWorkerTracker lidarWorker : lidarWorkers) {
+            if (lidarWorker.getStatus() != STATUS.UP) {
+                continue;
+            }
+            // Once the cameras stopped, the worker stops at its next tick
+            if (FusionSlam.getInstance().getActiveCameras() == 0) {
+                return tick + 1;
+            }
+            next = Math.min(next, lidarDataBase.nextErrorTime(tick));
+            // A detection taken at time t is sent by the worker at t + frequency at the earliest
+            int frequency = lidarWorker.getFrequency();
+            for (Camera camera : cameras) {
+                int detectionTime = camera.nextDetectionTime(tick - frequency);
+                if (detectionTime != Integer.MAX_VALUE) {
+                    next = Math.min(next, detectionTime + frequency);
+                }
+            }
+        }
+        return next;
+    }
+}
@@ -45,6 +45,10 @@ public class StatisticalFolder {
         systemRuntime.incrementAndGet();
     }
 
+    public void incrementSystemRuntime(int ticks) {
+        systemRuntime.addAndGet(ticks);
+    }
+
     public void incrementDetectedObjects(int count) {
         numDetectedObjects.addAndGet(count);
     }
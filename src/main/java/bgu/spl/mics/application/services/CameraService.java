@@ -1,6 +1,7 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.SimulationClock;
 
 // Import relevant broadcasts
 import bgu.spl.mics.application.messages.broadcasts.CrashedBroadcast;
@@ -29,111 +30,153 @@ public class CameraService extends MicroService {
     private final Camera camera;
     // Queue to track detections awaiting dispatch according to camera frequency
     private final Queue<StampedDetectedObjects> detections;
+    private final SimulationClock clock; // Null when ticks are broadcast
+    private volatile int lastTick; // The last tick handled
     /**
      * Constructor for CameraService.
      *
      * @param camera The Camera object that this service will use to detect objects.
      */
     public CameraService(Camera camera) {
+        this(camera, null);
+    }
+
+    /**
+     * Constructor for CameraService following a simulation clock instead of TickBroadcast.
+     *
+     * @param camera The Camera object that this service will use to detect objects.
+     * @param clock  The clock advanced by the TimeService, or null to subscribe to TickBroadcast.
+     */
+    public CameraService(Camera camera, SimulationClock clock) {
         super("Camera " + camera.getID());
         this.camera = camera;
+        this.clock = clock;
         detections = new LinkedList<>();
     }
 
     /**
      * Initializes the CameraService.
-     * Registers the service to handle TickBroadcasts and sets up callbacks for sending
+     * Registers the service to handle ticks and sets up callbacks for sending
      * DetectObjectsEvents.
      */
     @Override
     protected void initialize() {
-        // Subscribe to TickBroadcast
-        subscribeBroadcast(TickBroadcast.class, tick -> {
-            // Check camera status before processing
-            if (camera.getStatus() != STATUS.UP) {
-                return;
-            }
-
-            int currentTick = tick.getCurrentTick();
-
-            // Check for new detections to queue
-            StampedDetectedObjects newDetections = camera.getStampedDetectedObjectsAtTime(currentTick);
-            if (newDetections != null) {
-                DetectedObject errorObject = null;
-
-                // Find if exists a DetectedObject with ID "ERROR"
-                for (DetectedObject detectedObject : newDetections.getDetectedObjects()) {
-                    if ("ERROR".equals(detectedObject.getId())) {
-                        errorObject = detectedObject;
-                        break;
-                    }
-                }
-                // If an error is found, process it
-                if (errorObject != null) {
-                    String errorDescription = errorObject.getDescription();
-
-                    System.out.println(getName() + " detected an error in tick " + currentTick + ": " + errorDescription);
-
-                    // Update CrashOutputManager
-                    CrashOutputManager.getInstance().setFaultySensor(getName());
-                    CrashOutputManager.getInstance().setErrorDescription(errorDescription);
-
-                    // Broadcast crash and terminate
-                    camera.setStatus(STATUS.ERROR);
-                    sendBroadcast(new CrashedBroadcast(getName()));
-                    terminate();
-                    return;
+        // Handle the ticks at which the camera takes, sends or runs out of detections, of the
+        // simulation clock if there is one, otherwise of TickBroadcast
+        if (clock != null) {
+            subscribeTick(clock, tick -> {
+                if (camera.isDueAt(tick)) {
+                    onTick(tick);
                 }
-
-                // Add valid detections to the queue
-                detections.add(newDetections);
-                // Update the map in CrashOutputManager atomically
-                CrashOutputManager.getInstance().getLastFramesOfCameras().compute(getName(), (key, existingValue) -> newDetections);
-                // Update number of detected objects  in StatisticalFolder
-                StatisticalFolder.getInstance().incrementDetectedObjects(newDetections.getDetectedObjects().size());
-                System.out.println(getName() + " queued " + newDetections.getDetectedObjects().size() +
-                        " objects at tick " + currentTick);
-            }
-
-            // Check if the camera has no more detections
-            if (detections.isEmpty() && camera.hasNoMoreDetections(currentTick)) {
-                System.out.println(getName() + " has no more detections. Moving to DOWN status.");
-                camera.setStatus(STATUS.DOWN); // Move to DOWN status
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
-            }
-
-            // Process pending detections to send events according to frequency
-            while (!detections.isEmpty() && detections.peek().getTime() + camera.getFrequency() == currentTick) {
-                StampedDetectedObjects detectionToSend = detections.poll();
-                sendEvent(new DetectObjectsEvent(detectionToSend));
-                System.out.println(getName() + " sent DetectObjectsEvent with " + detectionToSend.getDetectedObjects().size() +
-                        " objects at tick " + currentTick);
-            }
-        });
+            });
+        } else {
+            subscribeBroadcast(TickBroadcast.class, tick -> camera.isDueAt(tick.getCurrentTick()),
+                    tick -> onTick(tick.getCurrentTick()));
+        }
 
         // Subscribe to CrashedBroadcast
         subscribeBroadcast(CrashedBroadcast.class, broadcast -> {
             System.out.println(getName() + " received CrashedBroadcast from " + broadcast.getSenderId() + ". Terminating.");
             camera.setStatus(STATUS.DOWN); // Update camera status to DOWN
-            sendBroadcast(new TerminatedBroadcast(getName()));
             terminate();
         });
 
-        // Subscribe to TerminatedBroadcast
-        subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
+        // Subscribe to the TerminatedBroadcast of TimeService, the only one the camera terminates on
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> {
             System.out.println(getName() + " received TerminatedBroadcast from " + broadcast.getSenderId() + ".");
-
-            // Conditional termination: Only terminate if the sender is "TimeService"
-            if ("TimeService".equals(broadcast.getSenderId())) {
-                System.out.println(getName() + " terminating as TimeService has ended.");
-                camera.setStatus(STATUS.DOWN); // Update camera status to DOWN
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
-            }
+            System.out.println(getName() + " terminating as TimeService has ended.");
+            camera.setStatus(STATUS.DOWN); // Update camera status to DOWN
+            terminate();
         });
 
         // Log when initialization finished
         System.out.println(getName() + " initialized.");
     }
+
+    /**
+     * Handles a tick at which the camera is due: queues the detections taken at this tick,
+     * sends the ones due by now, and terminates on an error or once there are no more detections.
+     *
+     * @param tick The current tick.
+     */
+    private void onTick(int tick) {
+        lastTick = tick;
+
+        // Check camera status before processing
+        if (camera.getStatus() != STATUS.UP) {
+            return;
+        }
+
+        // Check for new detections to queue
+        StampedDetectedObjects newDetections = camera.getStampedDetectedObjectsAtTime(tick);
+        if (newDetections != null) {
+            DetectedObject errorObject = null;
+
+            // Find if exists a DetectedObject with ID "ERROR"
+            for (DetectedObject detectedObject : newDetections.getDetectedObjects()) {
+                if ("ERROR".equals(detectedObject.getId())) {
+                    errorObject = detectedObject;
+                    break;
+                }
+            }
+            // If an error is found, process it
+            if (errorObject != null) {
+                String errorDescription = errorObject.getDescription();
+
+                System.out.println(getName() + " detected an error in tick " + tick + ": " + errorDescription);
+
+                // Update CrashOutputManager
+                CrashOutputManager.getInstance().setFaultySensor(getName());
+                CrashOutputManager.getInstance().setErrorDescription(errorDescription);
+
+                // Broadcast crash and terminate
+                camera.setStatus(STATUS.ERROR);
+                sendBroadcast(new CrashedBroadcast(getName()));
+                terminate();
+                return;
+            }
+
+            // Add valid detections to the queue
+            detections.add(newDetections);
+            // Update the map in CrashOutputManager atomically
+            CrashOutputManager.getInstance().getLastFramesOfCameras().compute(getName(), (key, existingValue) -> newDetections);
+            // Update number of detected objects  in StatisticalFolder
+            StatisticalFolder.getInstance().incrementDetectedObjects(newDetections.getDetectedObjects().size());
+            System.out.println(getName() + " queued " + newDetections.getDetectedObjects().size() +
+                    " objects at tick " + tick);
+        }
+
+        // Check if the camera has no more detections
+        if (detections.isEmpty() && camera.hasNoMoreDetections(tick)) {
+            System.out.println(getName() + " has no more detections. Moving to DOWN status.");
+            camera.setStatus(STATUS.DOWN); // Move to DOWN status
+            terminate();
+        }
+
+        // Process pending detections to send events according to frequency
+        List<StampedDetectedObjects> detectionsToSend = new ArrayList<>();
+        while (!detections.isEmpty() && detections.peek().getTime() + camera.getFrequency() == tick) {
+            detectionsToSend.add(detections.poll());
+        }
+        // Send all events due at this tick together
+        if (!detectionsToSend.isEmpty()) {
+            List<DetectObjectsEvent> eventsToSend = new ArrayList<>(detectionsToSend.size());
+            for (StampedDetectedObjects detectionToSend : detectionsToSend) {
+                eventsToSend.add(DetectObjectsEvent.obtain(detectionToSend));
+            }
+            sendEventsOneWay(eventsToSend);
+            // The events may already be handled and released, so the counts are read from the detections
+            for (StampedDetectedObjects detectionToSend : detectionsToSend) {
+                System.out.println(getName() + " sent DetectObjectsEvent with " + detectionToSend.getDetectedObjects().size() +
+                        " objects at tick " + tick);
+            }
+        }
+    }
+
+    /**
+     * @return the last tick this service handled, 0 before the first one.
+     */
+    public int getLastTick() {
+        return lastTick;
+    }
 }
\ No newline at end of file
@@ -1,11 +1,11 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.MessagePriority;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.broadcasts.CrashedBroadcast;
 import bgu.spl.mics.application.messages.events.PoseEvent;
 import bgu.spl.mics.application.messages.events.TrackedObjectsEvent;
-import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
-import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.SensorsTerminatedBroadcast;
 import bgu.spl.mics.application.objects.*;
 
 import com.google.gson.Gson;
@@ -85,64 +85,25 @@ public class FusionSlamService extends MicroService {
             }
         });
 
-        // Subscribe to TerminatedBroadcast
-        subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
-            if ("TimeService".equals(broadcast.getSenderId())) {
-                System.out.println("FusionSlamService received TerminatedBroadcast from TimeService. Terminating.");
-                // Mark fusion slam as terminated (optional as only time service checks this field)
-                fusionSlam.setTerminated(true);
-                // Signal to fusion slam that time service terminated
-                fusionSlam.setTimeTerminated(true);
-                // Wait for all services to send terminated broadcast before generating output
-                if (fusionSlam.getActiveSensors() == 0) {
-                    if (fusionSlam.isCrashed()) {
-                        CrashOutputManager.getInstance().generateCrashOutput();
-                    } else {
-                        generateOutput();
-                    }
-                    terminate();
-                }
+        // Subscribe to SensorsTerminatedBroadcast, sent once the sensors and TimeService all stopped
+        // Queued behind the tracked objects (LOW), so the sensors' data is processed before the output is written
+        subscribeBroadcast(SensorsTerminatedBroadcast.class, MessagePriority.LOW, broadcast -> {
+            System.out.println("FusionSlamService received SensorsTerminatedBroadcast. Terminating.");
+            fusionSlam.setTerminated(true);
+            if (fusionSlam.isCrashed()) {
+                CrashOutputManager.getInstance().generateCrashOutput();
             } else {
-                String sensorType = broadcast.getSenderId().split(" ")[0];
-                if ("Camera".equals(sensorType)) {
-                    fusionSlam.setActiveCameras(fusionSlam.getActiveCameras() - 1);
-                    fusionSlam.setActiveSensors(fusionSlam.getActiveSensors() - 1);
-                } else if ("LiDar".equals(sensorType)) {
-                    fusionSlam.setActiveSensors(fusionSlam.getActiveSensors() - 1);
-                }
-            }
-
-            // Check if no sensors are active
-            if (fusionSlam.getActiveSensors() == 0) {
-                // If time service didn't terminate yet, signal it to terminate and produce the output after it sent terminated broadcast.
-                if (!fusionSlam.isTimeTerminated()) {
-                    fusionSlam.setTerminated(true);
-                } else {
-                    // Time service already terminated; finalize process
-                    System.out.println("FusionSlamService received TerminatedBroadcast from all sensors. Terminating.");
-                    if (fusionSlam.isCrashed()) {
-                        CrashOutputManager.getInstance().generateCrashOutput();
-                    } else {
-                        generateOutput();
-                    }
-                    terminate();
-                }
+                generateOutput();
             }
+            terminate();
         });
 
         // Subscribe to CrashedBroadcast
         subscribeBroadcast(CrashedBroadcast.class, broadcast -> {
             System.out.println("FusionSlamService received CrashBroadcast from " + broadcast.getSenderId() +  ". Terminating.");
-            // Decrement sensor count because sensor that crashed doesn't send termination
-            String sensorType = broadcast.getSenderId().split("_")[0];
-            if ("Camera".equals(sensorType)) {
-                fusionSlam.setActiveCameras(fusionSlam.getActiveCameras() - 1);
-            }
-            fusionSlam.setActiveSensors(fusionSlam.getActiveSensors() - 1);
-
             fusionSlam.setTerminated(true);
             fusionSlam.setCrashed(true);
-            // Generate error output when received terminated broadcast from all services
+            // Generate error output once the sensors all stopped
         });
     }
 
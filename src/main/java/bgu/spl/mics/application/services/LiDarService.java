@@ -1,6 +1,9 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.MessagePriority;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.SimulationClock;
+import bgu.spl.mics.application.messages.broadcasts.CamerasTerminatedBroadcast;
 import bgu.spl.mics.application.messages.broadcasts.CrashedBroadcast;
 import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
@@ -23,6 +26,10 @@ public class LiDarService extends MicroService {
     private final LiDarWorkerTracker lidarWorker;
     private final PriorityQueue<DetectObjectsEvent> eventQueue;
     private int currentTick;
+    private final SimulationClock clock; // Null when ticks are broadcast
+    // Set once every detection of the cameras was received, and once TimeService ended
+    private boolean camerasTerminated;
+    private boolean timeTerminated;
 
     /**
      * Constructor for LiDarService.
@@ -30,7 +37,18 @@ public class LiDarService extends MicroService {
      * @param LiDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
      */
     public LiDarService(LiDarWorkerTracker LiDarWorkerTracker) {
+        this(LiDarWorkerTracker, null);
+    }
+
+    /**
+     * Constructor for LiDarService following a simulation clock instead of TickBroadcast.
+     *
+     * @param LiDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
+     * @param clock              The clock advanced by the TimeService, or null to subscribe to TickBroadcast.
+     */
+    public LiDarService(LiDarWorkerTracker LiDarWorkerTracker, SimulationClock clock) {
         super("LiDar " + LiDarWorkerTracker.getId());
+        this.clock = clock;
         this.lidarWorker = LiDarWorkerTracker;
         this.eventQueue = new PriorityQueue<>(Comparator.comparingInt(DetectObjectsEvent::getTime));
         this.currentTick = 0;
@@ -39,7 +57,7 @@ public class LiDarService extends MicroService {
 
     /**
      * Initializes the LiDarService.
-     * Registers the service to handle DetectObjectsEvents and TickBroadcasts,
+     * Registers the service to handle DetectObjectsEvents and ticks,
      * and sets up the necessary callbacks for processing data.
      */
     @Override
@@ -52,7 +70,9 @@ public class LiDarService extends MicroService {
             // If possible (frequency of lidar is smaller or equal to the frequency of the camera that sent the event), send tracked object immediately
             if (event.getTime() + lidarWorker.getFrequency() <= currentTick) {
 
-                List<TrackedObject> trackedObjects = new ArrayList<>();
+                // The event owns the list, and both may be recycled once FusionSLAM handled them
+                TrackedObjectsEvent trackedObjectsEvent = TrackedObjectsEvent.obtain();
+                List<TrackedObject> trackedObjects = trackedObjectsEvent.getTrackedObjects();
 
                 for (DetectedObject detectedObject : event.getDetectedObjects()) {
                     // Retrieve cloud points for the detected object from the LiDAR database
@@ -69,127 +89,164 @@ public class LiDarService extends MicroService {
                 }
 
                 if (!trackedObjects.isEmpty()){
-                    // Create and send TrackedObjectsEvent to FusionSLAM
-                    sendEvent(new TrackedObjectsEvent(trackedObjects));
-                    System.out.println(getName() + " sent TrackedObjectsEvent at tick " + currentTick);
                     // Update the list of last tracked objects in the LiDAR worker
                     lidarWorker.updateLastTrackedObjects(trackedObjects);
                     // Update the StatisticalFolder
                     StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
+                    // Send TrackedObjectsEvent to FusionSLAM, last: the list is not ours once sent
+                    sendOneWay(trackedObjectsEvent);
+                    System.out.println(getName() + " sent TrackedObjectsEvent at tick " + currentTick);
+                } else {
+                    trackedObjectsEvent.release(); // Not sent
                 }
 
                 // Signal to camera the detected object event was received and processed
                 complete(event, true);
             } else {
-                // Log and queue the received event for future processing according to frequency
+                // Log and queue the received event for future processing according to frequency.
+                // Retained, so it is not recycled once this callback returns.
+                event.retain();
                 eventQueue.add(event);
                 System.out.println(getName() + " queued DetectObjectsEvent with time " + event.getTime() + " for future processing.");
             }
         });
 
-        // Subscribe to TickBroadcast
-        subscribeBroadcast(TickBroadcast.class, tick -> {
-            // Update Current tick
-            currentTick = tick.getCurrentTick();
+        // Follow the simulation clock if there is one, otherwise subscribe to TickBroadcast
+        if (clock != null) {
+            subscribeTick(clock, this::onTick);
+        } else {
+            subscribeBroadcast(TickBroadcast.class, tick -> onTick(tick.getCurrentTick()));
+        }
 
-            // Check LiDar status before processing
-            if (lidarWorker.getStatus() != STATUS.UP) {
-                return;
-            }
+        // Without cameras, no detection will come. Cameras only stop on ticks, which start once every service initialized.
+        camerasTerminated = FusionSlam.getInstance().getActiveCameras() == 0;
 
-            // Check for errors in the cloud points data at current tick
-            List<StampedCloudPoints> stampedCloudPointsAtCurrentTick = LiDarDataBase.getInstance().getListOfCloudPointsAtTime(currentTick);
-            for (StampedCloudPoints stampedCloudPoints : stampedCloudPointsAtCurrentTick) {
-                if (stampedCloudPoints != null && stampedCloudPoints.getId().equals("ERROR")) {
+        // Subscribe to the TerminatedBroadcast of TimeService. With no more ticks, the LiDar terminates once the
+        // detections the cameras already sent were received, since they may still be queued behind it.
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> {
+            System.out.println(getName() + " received TerminatedBroadcast from " + broadcast.getSenderId() + ".");
+            timeTerminated = true;
+            terminateIfDone();
+        });
 
-                    String errorDescription = getName() + " disconnected";
+        // Subscribe to CamerasTerminatedBroadcast, queued behind the last detections, at low priority to stay behind them
+        subscribeBroadcast(CamerasTerminatedBroadcast.class, MessagePriority.LOW, broadcast -> {
+            System.out.println(getName() + " received CamerasTerminatedBroadcast.");
+            camerasTerminated = true;
+            terminateIfDone();
+        });
 
-                    System.out.println(errorDescription + " on tick " + currentTick + ".");
+        // Subscribe to CrashedBroadcast
+        subscribeBroadcast(CrashedBroadcast.class, broadcast -> {
+            System.out.println(getName() + " received CrashedBroadcast from " + broadcast.getSenderId() + ". Terminating.");
+            lidarWorker.setStatus(STATUS.DOWN);
+            terminate();
+        });
 
-                    // Update CrashOutputManager
-                    CrashOutputManager.getInstance().setFaultySensor(getName());
-                    CrashOutputManager.getInstance().setErrorDescription(errorDescription);
+        // Log when initialization finished
+        System.out.println(getName() + " initialized.");
+    }
 
-                    lidarWorker.setStatus(STATUS.ERROR);
-                    sendBroadcast(new CrashedBroadcast(getName()));
-                    terminate();
-                    return;
-                }
-            }
+    /**
+     * Handles a tick: checks the LiDAR data for errors, sends the tracked objects due by now,
+     * and terminates once there is nothing left to track.
+     *
+     * @param tick The current tick.
+     */
+    private void onTick(int tick) {
+        // Update Current tick
+        currentTick = tick;
 
-            // Continue processing detected object events if there is no error
+        // Check LiDar status before processing
+        if (lidarWorker.getStatus() != STATUS.UP) {
+            return;
+        }
 
-            // Get the frequency
-            int frequency = lidarWorker.getFrequency();
+        // Check for errors in the cloud points data at current tick
+        List<StampedCloudPoints> stampedCloudPointsAtCurrentTick = LiDarDataBase.getInstance().getListOfCloudPointsAtTime(currentTick);
+        for (StampedCloudPoints stampedCloudPoints : stampedCloudPointsAtCurrentTick) {
+            if (stampedCloudPoints != null && stampedCloudPoints.getId().equals("ERROR")) {
 
-            // Initialize an empty list to store tracked objects
-            List<TrackedObject> trackedObjects = new ArrayList<>();
+                String errorDescription = getName() + " disconnected";
 
-            // Process events in the queue based on detection time and lidar frequency
-            while (!eventQueue.isEmpty() && eventQueue.peek().getTime() + frequency <= currentTick) {
+                System.out.println(errorDescription + " on tick " + currentTick + ".");
 
-                // Poll the earliest event from the priority queue
-                DetectObjectsEvent eventToProcess = eventQueue.poll();
+                // Update CrashOutputManager
+                CrashOutputManager.getInstance().setFaultySensor(getName());
+                CrashOutputManager.getInstance().setErrorDescription(errorDescription);
 
-                for (DetectedObject detectedObject : eventToProcess.getDetectedObjects()) {
-                    // Retrieve cloud points for the detected object from the LiDAR database
-                    StampedCloudPoints StampedCloudPoints = LiDarDataBase.getInstance().getCloudPoints(detectedObject.getId(), eventToProcess.getTime());
+                lidarWorker.setStatus(STATUS.ERROR);
+                sendBroadcast(new CrashedBroadcast(getName()));
+                terminate();
+                return;
+            }
+        }
 
-                    // Create a TrackedObject with the retrieved cloud points and event data
-                    TrackedObject trackedObject = new TrackedObject(
-                            StampedCloudPoints.getId(),
-                            StampedCloudPoints.getTime(),
-                            detectedObject.getDescription(),
-                            StampedCloudPoints.getCoordinates()
-                    );
-                    trackedObjects.add(trackedObject);
-                }
+        // Continue processing detected object events if there is no error
 
-                // Signal to camera the detected object event was received and processed
-                complete(eventToProcess, true);
-            }
+        // Get the frequency
+        int frequency = lidarWorker.getFrequency();
 
-            // If tracked objects were created, sent tracked objects event
-            if (!trackedObjects.isEmpty()){
-                // Create and send TrackedObjectsEvent to FusionSLAM
-                sendEvent(new TrackedObjectsEvent(trackedObjects));
-                System.out.println(getName() + " sent TrackedObjectsEvent at tick " + currentTick);
-                // Update the list of last tracked objects in the LiDAR worker
-                lidarWorker.updateLastTrackedObjects(trackedObjects);
-                // Update the StatisticalFolder
-                StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
-            }
+        // Initialize an empty list to store tracked objects, owned by the event that will carry them
+        TrackedObjectsEvent trackedObjectsEvent = TrackedObjectsEvent.obtain();
+        List<TrackedObject> trackedObjects = trackedObjectsEvent.getTrackedObjects();
 
-            // LiDar can terminate if all cameras are down and has no more DetectObjectsEvents to process
-            if (eventQueue.isEmpty() && FusionSlam.getInstance().getActiveCameras() == 0) {
-                System.out.println(getName() + " has no more events. Moving to DOWN status.");
-                lidarWorker.setStatus(STATUS.DOWN);
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
-            }
-        });
+        // Process events in the queue based on detection time and lidar frequency
+        while (!eventQueue.isEmpty() && eventQueue.peek().getTime() + frequency <= currentTick) {
 
-        // Subscribe to TerminatedBroadcast
-        subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
-            System.out.println(getName() + " received TerminatedBroadcast from " + broadcast.getSenderId() + ".");
+            // Poll the earliest event from the priority queue
+            DetectObjectsEvent eventToProcess = eventQueue.poll();
 
-            if ("TimeService".equals(broadcast.getSenderId())) {
-                System.out.println(getName() + " terminating as TimeService has ended.");
-                lidarWorker.setStatus(STATUS.DOWN);
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
+            for (DetectedObject detectedObject : eventToProcess.getDetectedObjects()) {
+                // Retrieve cloud points for the detected object from the LiDAR database
+                StampedCloudPoints StampedCloudPoints = LiDarDataBase.getInstance().getCloudPoints(detectedObject.getId(), eventToProcess.getTime());
+
+                // Create a TrackedObject with the retrieved cloud points and event data
+                TrackedObject trackedObject = new TrackedObject(
+                        StampedCloudPoints.getId(),
+                        StampedCloudPoints.getTime(),
+                        detectedObject.getDescription(),
+                        StampedCloudPoints.getCoordinates()
+                );
+                trackedObjects.add(trackedObject);
             }
-        });
 
-        // Subscribe to CrashedBroadcast
-        subscribeBroadcast(CrashedBroadcast.class, broadcast -> {
-            System.out.println(getName() + " received CrashedBroadcast from " + broadcast.getSenderId() + ". Terminating.");
+            // Signal to camera the detected object event was received and processed
+            complete(eventToProcess, true);
+            eventToProcess.release(); // Retained when it was queued
+        }
+
+        // If tracked objects were created, sent tracked objects event
+        if (!trackedObjects.isEmpty()){
+            // Update the list of last tracked objects in the LiDAR worker
+            lidarWorker.updateLastTrackedObjects(trackedObjects);
+            // Update the StatisticalFolder
+            StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
+            // Send TrackedObjectsEvent to FusionSLAM, last: the list is not ours once sent
+            sendOneWay(trackedObjectsEvent);
+            System.out.println(getName() + " sent TrackedObjectsEvent at tick " + currentTick);
+        } else {
+            trackedObjectsEvent.release(); // Not sent
+        }
+
+        // LiDar can terminate if all cameras were down before this tick, all their DetectObjectsEvents were
+        // received, and it has no more DetectObjectsEvents to process
+        if (eventQueue.isEmpty() && camerasTerminated && FusionSlam.getInstance().camerasStoppedBefore(currentTick)) {
+            System.out.println(getName() + " has no more events. Moving to DOWN status.");
             lidarWorker.setStatus(STATUS.DOWN);
-            sendBroadcast(new TerminatedBroadcast(getName()));
             terminate();
-        });
+        }
+    }
 
-        // Log when initialization finished
-        System.out.println(getName() + " initialized.");
+    /**
+     * Terminates once TimeService ended and every detection of the cameras was received. The
+     * detections still queued are never due, since no tick comes anymore.
+     */
+    private void terminateIfDone() {
+        if (timeTerminated && camerasTerminated) {
+            System.out.println(getName() + " terminating as TimeService has ended.");
+            lidarWorker.setStatus(STATUS.DOWN);
+            terminate();
+        }
     }
 }
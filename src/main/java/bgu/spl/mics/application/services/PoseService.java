@@ -1,6 +1,7 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.SimulationClock;
 import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.events.PoseEvent;
 import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
@@ -16,6 +17,7 @@ import bgu.spl.mics.application.objects.STATUS;
 public class PoseService extends MicroService {
 
     private final GPSIMU gpsimu;
+    private final SimulationClock clock; // Null when ticks are broadcast
 
     /**
      * Constructor for PoseService.
@@ -23,64 +25,77 @@ public class PoseService extends MicroService {
      * @param gpsimu The GPSIMU object that provides the robot's pose data.
      */
     public PoseService(GPSIMU gpsimu) {
+        this(gpsimu, null);
+    }
+
+    /**
+     * Constructor for PoseService following a simulation clock instead of TickBroadcast.
+     *
+     * @param gpsimu The GPSIMU object that provides the robot's pose data.
+     * @param clock  The clock advanced by the TimeService, or null to subscribe to TickBroadcast.
+     */
+    public PoseService(GPSIMU gpsimu, SimulationClock clock) {
         super("PoseService");
         this.gpsimu = gpsimu;
+        this.clock = clock;
     }
 
     /**
      * Initializes the PoseService.
-     * Subscribes to TickBroadcast and sends PoseEvents at every tick based on the current pose.
+     * Follows the ticks and sends PoseEvents at every tick based on the current pose.
      */
     @Override
     protected void initialize() {
-        // Subscribe to TickBroadcast to send PoseEvent at every tick
-        subscribeBroadcast(TickBroadcast.class, tick -> {
-
-            // Check GPSIMU status before processing
-            if (gpsimu.getStatus() != STATUS.UP) {
-                return;
-            }
-
-            gpsimu.updateTick(tick.getCurrentTick());
-
-            // Fetch the current pose
-            Pose currentPose = gpsimu.getCurrentPose();
-            if (currentPose != null) {
-                // Create and send a PoseEvent
-                PoseEvent poseEvent = new PoseEvent(currentPose);
-                sendEvent(poseEvent);
-                System.out.println("PoseService sent PoseEvent: " + currentPose +
-                                   ", at tick " + tick.getCurrentTick() + ".");
-            } else {
-                System.out.println("PoseService: No more poses available. Terminating.");
-                gpsimu.setStatus(STATUS.DOWN);
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
-            }
-        });
+        // Send a PoseEvent at every tick, of the simulation clock if there is one, otherwise of TickBroadcast
+        if (clock != null) {
+            subscribeTick(clock, this::onTick);
+        } else {
+            subscribeBroadcast(TickBroadcast.class, tick -> onTick(tick.getCurrentTick()));
+        }
 
         // Subscribe to CrashedBroadcast to handle system crashes
         subscribeBroadcast(CrashedBroadcast.class, broadcast -> {
             System.out.println("PoseService received CrashedBroadcast. Terminating.");
             gpsimu.setStatus(STATUS.DOWN);
-            sendBroadcast(new TerminatedBroadcast(getName()));
             terminate();
         });
 
-        // Subscribe to TerminatedBroadcast to handle termination signals
-        subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
-            String senderId = broadcast.getSenderId();
-
-            // Check if the sender is TimeService and terminate if so
-            if ("TimeService".equals(senderId)) {
-                System.out.println("PoseService received TerminatedBroadcast from " + senderId + ". Terminating.");
-                gpsimu.setStatus(STATUS.DOWN);
-                sendBroadcast(new TerminatedBroadcast(getName()));
-                terminate();
-            }
+        // Subscribe to the TerminatedBroadcast of TimeService to handle termination signals
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> {
+            System.out.println("PoseService received TerminatedBroadcast from " + broadcast.getSenderId() + ". Terminating.");
+            gpsimu.setStatus(STATUS.DOWN);
+            terminate();
         });
 
         // Log when initialization finished
         System.out.println("PoseService initialized.");
     }
+
+    /**
+     * Handles a tick: sends the pose at this tick, or terminates once there are no more poses.
+     *
+     * @param tick The current tick.
+     */
+    private void onTick(int tick) {
+        // Check GPSIMU status before processing
+        if (gpsimu.getStatus() != STATUS.UP) {
+            return;
+        }
+
+        gpsimu.updateTick(tick);
+
+        // Fetch the current pose
+        Pose currentPose = gpsimu.getCurrentPose();
+        if (currentPose != null) {
+            // Create and send a PoseEvent
+            PoseEvent poseEvent = PoseEvent.obtain(currentPose); // Recycled once handled, if pooling is enabled
+            sendOneWay(poseEvent); // The result is not needed
+            System.out.println("PoseService sent PoseEvent: " + currentPose +
+                               ", at tick " + tick + ".");
+        } else {
+            System.out.println("PoseService: No more poses available. Terminating.");
+            gpsimu.setStatus(STATUS.DOWN);
+            terminate();
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package bgu.spl.mics.application.services;
+
+/**
+ * Determines when the {@link TimeService} moves to the next tick.
+ * <p>
+ * The pacing is chosen in the configuration file (the optional "TickPacing" key).
+ */
+public enum TickPacing {
+
+    /**
+     * The next tick comes {@code TickTime} after the current one. This is the default.
+     */
+    PACED,
+
+    /**
+     * The next tick comes as soon as every service handled the current one, along with everything
+     * it caused the services to send each other. The results are those of a paced run whose ticks
+     * are long enough for the services to keep up, in a fraction of the time.
+     */
+    AS_FAST_AS_POSSIBLE;
+
+    /**
+     * Parses a configuration value such as "paced" or "as_fast_as_possible" (case-insensitive).
+     *
+     * @param value The configured value.
+     * @return The matching pacing.
+     * @throws IllegalArgumentException if the value does not name a pacing.
+     */
+    public static TickPacing fromConfig(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
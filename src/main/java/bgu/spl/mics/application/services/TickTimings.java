@@ -0,0 +1,84 @@
+package bgu.spl.mics.application.services;
+
+/**
+ * How closely a paced {@link TimeService} kept to its schedule.
+ * <p>
+ * Tick n is due (n - 1) * TickTime after the first one, at replay speed 1. The jitter of a tick is how late it was sent,
+ * and a tick overran when the next one was already due by the time it was sent, so the next
+ * one was sent at once. Late ticks do not push the schedule back: the ticks after them catch up.
+ * A tick lagged when the other services were still handling the ticks before it once it was due.
+ * <p>
+ * Written only by the TimeService, and meant to be read once it stopped.
+ */
+public final class TickTimings {
+
+    private long ticks;
+    private long overruns;
+    private long totalJitterNanos;
+    private long maxJitterNanos;
+    private long laggingTicks;
+
+    /**
+     * @return the number of ticks timed.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the number of ticks sent after the next one was already due.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the average time the ticks were sent after they were due, in nanoseconds.
+     */
+    public long getMeanJitterNanos() {
+        return ticks == 0 ? 0 : totalJitterNanos / ticks;
+    }
+
+    /**
+     * @return the longest time a tick was sent after it was due, in nanoseconds.
+     */
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    /**
+     * @return the number of ticks due while the services were still handling the ticks before them.
+     */
+    public long getLaggingTicks() {
+        return laggingTicks;
+    }
+
+    /**
+     * Records a tick sent {@code jitterNanos} after it was due.
+     *
+     * @param jitterNanos How late the tick was sent.
+     * @param overrun     True if the next tick was due by the time it was sent.
+     */
+    void record(long jitterNanos, boolean overrun) {
+        ticks++;
+        if (overrun) {
+            overruns++;
+        }
+        totalJitterNanos += jitterNanos;
+        maxJitterNanos = Math.max(maxJitterNanos, jitterNanos);
+    }
+
+    /**
+     * Records a tick due while the services were still handling the ticks before it.
+     */
+    void recordLagging() {
+        laggingTicks++;
+    }
+
+    @Override
+    public String toString() {
+        return "ticks=" + getTicks() + ", overruns=" + getOverruns() + ", lagging=" + getLaggingTicks()
+                + ", meanJitter=" + getMeanJitterNanos() / 1_000 + "us"
+                + ", maxJitter=" + getMaxJitterNanos() / 1_000 + "us";
+    }
+}
@@ -3,29 +3,120 @@ package bgu.spl.mics.application.services;
 import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
 import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
 import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.SensorSchedule;
 import bgu.spl.mics.application.objects.StatisticalFolder;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.SimulationClock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TimeService acts as the global timer for the system, broadcasting TickBroadcast messages
- * at regular intervals and controlling the simulation's duration.
+ * (or advancing a shared SimulationClock) at regular intervals and controlling the simulation's duration.
+ * <p>
+ * Paced ticks are due at fixed times from the first one (start + n * TickTime), rather than
+ * TickTime after the previous one was sent, so the time spent sending them does not add up.
+ * <p>
+ * Given a {@link SensorSchedule}, the service skips the ticks at which no sensor is due: they
+ * are not sent, but still count in the system runtime, and paced ticks keep their times. Ticks
+ * are only skipped once the services handled the ones sent, since the schedule reads their state.
+ * <p>
+ * Paced ticks can be replayed faster or slower than TickTime (see {@link #setReplaySpeed(double)}).
+ * Before sending a paced tick, the service checks whether the other services are still handling
+ * the ticks before it, and warns when they fall behind and when they caught up.
  */
 public class TimeService extends MicroService {
 
+    // How long before a deadline the service stops parking and spins, since parking may overshoot
+    private static final long SPIN_NANOS = 50_000;
+
     // Fields
-    private final int tickTime; // Time for each tick in seconds
+    private final long tickNanos; // Time for each tick in nanoseconds
     private final int duration; // Total number of ticks
+    private final SimulationClock clock; // Advanced instead of broadcasting ticks, null to broadcast
+    private final TickPacing pacing; // When to move to the next tick
+    private final TickTimings timings = new TickTimings(); // How late the paced ticks were sent
+    private final SensorSchedule schedule; // Finds the next tick a sensor is due at, null to send every tick
+    private volatile double replaySpeed = 1.0; // How many times faster than TickTime paced ticks come, set by any thread
+
+    // The paced schedule: anchorTick was due at anchorTime, and the ticks after it come every
+    // TickTime / anchorSpeed. Re-anchored when the replay speed changes. Only touched by the service.
+    private long anchorTime;
+    private int anchorTick;
+    private double anchorSpeed;
+    private int lagStartTick; // The tick the services fell behind at, or 0 while they keep up
 
     /**
      * Constructor for TimeService.
      *
-     * @param TickTime The duration of each tick in milliseconds.
+     * @param TickTime The duration of each tick in seconds.
      * @param Duration The total number of ticks before the service terminates.
      */
     public TimeService(int TickTime, int Duration) {
+        this(TickTime, Duration, null);
+    }
+
+    /**
+     * Constructor for TimeService advancing a simulation clock instead of broadcasting ticks.
+     *
+     * @param TickTime The duration of each tick in seconds.
+     * @param Duration The total number of ticks before the service terminates.
+     * @param clock    The clock followed by the services, or null to broadcast TickBroadcast messages.
+     */
+    public TimeService(int TickTime, int Duration, SimulationClock clock) {
+        this(TickTime, Duration, clock, TickPacing.PACED);
+    }
+
+    /**
+     * Constructor for TimeService with a choice of pacing.
+     *
+     * @param TickTime The duration of each tick in seconds, ignored unless the pacing is PACED.
+     * @param Duration The total number of ticks before the service terminates.
+     * @param clock    The clock followed by the services, or null to broadcast TickBroadcast messages.
+     * @param pacing   When to move to the next tick.
+     */
+    public TimeService(int TickTime, int Duration, SimulationClock clock, TickPacing pacing) {
+        this(TickTime, TimeUnit.SECONDS, Duration, clock, pacing);
+    }
+
+    /**
+     * Constructor for TimeService with ticks shorter than a second.
+     *
+     * @param TickTime The duration of each tick in {@code unit}, ignored unless the pacing is PACED.
+     *                 Zero sends the ticks back to back.
+     * @param unit     The unit of TickTime.
+     * @param Duration The total number of ticks before the service terminates.
+     * @param clock    The clock followed by the services, or null to broadcast TickBroadcast messages.
+     * @param pacing   When to move to the next tick.
+     */
+    public TimeService(long TickTime, TimeUnit unit, int Duration, SimulationClock clock, TickPacing pacing) {
+        this(TickTime, unit, Duration, clock, pacing, null);
+    }
+
+    /**
+     * Constructor for TimeService skipping the ticks at which no sensor is due.
+     *
+     * @param TickTime The duration of each tick in {@code unit}, ignored unless the pacing is PACED.
+     *                 Zero sends the ticks back to back.
+     * @param unit     The unit of TickTime.
+     * @param Duration The total number of ticks before the service terminates.
+     * @param clock    The clock followed by the services, or null to broadcast TickBroadcast messages.
+     * @param pacing   When to move to the next tick.
+     * @param schedule Finds the next tick a sensor is due at, or null to send every tick.
+     * @throws IllegalArgumentException if both a clock and a schedule are given: the services
+     *                                  following a clock handle every tick it passes.
+     */
+    public TimeService(long TickTime, TimeUnit unit, int Duration, SimulationClock clock, TickPacing pacing, SensorSchedule schedule) {
         super("TimeService");
-        this.tickTime = TickTime;
+        if (clock != null && schedule != null) {
+            throw new IllegalArgumentException("Ticks can only be skipped when they are broadcast.");
+        }
+        this.schedule = schedule;
+        this.tickNanos = unit.toNanos(TickTime);
         this.duration = Duration;
+        this.clock = clock;
+        this.pacing = pacing;
     }
 
     /**
@@ -36,16 +127,38 @@ public class TimeService extends MicroService {
     protected void initialize() {
         System.out.println("TimeService initialized.");
         try {
-            for (int currentTick = 1; currentTick <= duration && !FusionSlam.getInstance().isTerminated(); currentTick++) {
-                // Broadcast the current tick
-                sendBroadcast(new TickBroadcast(currentTick));
-                System.out.println("TimeService broadcasted Tick: " + currentTick);
+            anchorTime = System.nanoTime();
+            anchorTick = 1;
+            anchorSpeed = replaySpeed;
+            for (int currentTick = 1; currentTick <= duration && !FusionSlam.getInstance().isTerminated();
+                 currentTick = nextTick(currentTick)) {
+                applyReplaySpeed(currentTick);
+                long due = dueTime(currentTick);
+                if (pacing == TickPacing.PACED && tickNanos > 0 && currentTick > 1) {
+                    checkLag(currentTick);
+                }
+                long sent = System.nanoTime();
+                if (clock != null) {
+                    // Advance the clock: one write, and only the services following it are woken
+                    clock.advance();
+                    System.out.println("TimeService advanced the clock to Tick: " + currentTick);
+                } else {
+                    // Broadcast the current tick
+                    sendBroadcast(TickBroadcast.obtain(currentTick));
+                    System.out.println("TimeService broadcasted Tick: " + currentTick);
+                }
 
                 // Update system runtime in StatisticalFolder
                 StatisticalFolder.getInstance().incrementSystemRuntime();
 
-                // Wait for the next tick
-                Thread.sleep(tickTime * 1000L);
+                // Wait for the next tick, or until the services handled this one
+                if (pacing == TickPacing.AS_FAST_AS_POSSIBLE) {
+                    awaitQuiescence();
+                } else if (tickNanos > 0) {
+                    long next = dueTime(currentTick + 1);
+                    timings.record(sent - due, System.nanoTime() >= next);
+                    awaitDeadline(next);
+                }
             }
         } catch (InterruptedException e) {
             System.out.println("TimeService interrupted. Terminating...");
@@ -57,4 +170,104 @@ public class TimeService extends MicroService {
             terminate(); // Signal the service to terminate
         }
     }
+
+    /**
+     * Finds the tick to send after {@code currentTick}. Without a schedule, or while the other
+     * services are still handling the ticks sent, this is the following tick. Otherwise, the ticks
+     * before the next one a sensor is due at are skipped: they are counted in the system runtime,
+     * and a paced service waits until the next tick is due.
+     *
+     * @param currentTick The tick just sent.
+     * @return the tick to send next, or {@code duration + 1} if the ticks left are all skipped.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private int nextTick(int currentTick) throws InterruptedException {
+        // Paced ticks do not wait for the services, whose state the schedule reads
+        if (schedule == null || FusionSlam.getInstance().isTerminated() || !isQuiescent()) {
+            return currentTick + 1;
+        }
+        int nextTick = Math.min(schedule.nextDueTick(currentTick), duration + 1);
+        if (nextTick > currentTick + 1) {
+            System.out.println("TimeService skipped Ticks: " + (currentTick + 1) + " to " + (nextTick - 1));
+            StatisticalFolder.getInstance().incrementSystemRuntime(nextTick - currentTick - 1);
+            if (pacing == TickPacing.PACED && tickNanos > 0) {
+                awaitDeadline(dueTime(nextTick));
+            }
+        }
+        return nextTick;
+    }
+
+    /**
+     * Sets how many times faster than TickTime the paced ticks are sent: 2 sends them twice as
+     * fast, 0.5 half as fast. May be called by any thread, before or while the service runs, and
+     * applies from the next tick on. The ticks after it keep to the new speed without drifting.
+     *
+     * @param speed The replay speed, 1 for TickTime.
+     * @throws IllegalArgumentException if the speed is not positive.
+     */
+    public void setReplaySpeed(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Replay speed must be positive, got " + speed + ".");
+        }
+        replaySpeed = speed;
+    }
+
+    /**
+     * @return how many times faster than TickTime the paced ticks are sent.
+     */
+    public double getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    // Re-anchors the schedule at tick if the replay speed changed, so the ticks before it keep their times
+    private void applyReplaySpeed(int tick) {
+        double speed = replaySpeed;
+        if (speed != anchorSpeed) {
+            anchorTime = dueTime(tick);
+            anchorTick = tick;
+            anchorSpeed = speed;
+            System.out.println("TimeService replay speed: " + speed + "x from Tick: " + tick);
+        }
+    }
+
+    // When tick is due, at the current replay speed
+    private long dueTime(int tick) {
+        return anchorTime + (long) ((tick - anchorTick) * (tickNanos / anchorSpeed));
+    }
+
+    // Warns when the other services are still handling the ticks before tick, and when they caught up
+    private void checkLag(int tick) {
+        if (!isQuiescent()) {
+            timings.recordLagging();
+            if (lagStartTick == 0) {
+                lagStartTick = tick;
+                System.err.println("Warning: the services fell behind at Tick " + tick + " at replay speed " + anchorSpeed + "x.");
+            }
+        } else if (lagStartTick != 0) {
+            System.err.println("Warning: the services caught up at Tick " + tick + ", " + (tick - lagStartTick) + " ticks after falling behind.");
+            lagStartTick = 0;
+        }
+    }
+
+    /**
+     * @return how late the paced ticks were sent. Complete once the service stopped.
+     */
+    public TickTimings getTickTimings() {
+        return timings;
+    }
+
+    // Parks until System.nanoTime() reaches deadline, and spins for the last SPIN_NANOS
+    private static void awaitDeadline(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
 }
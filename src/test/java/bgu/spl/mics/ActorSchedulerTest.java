@@ -0,0 +1,102 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ActorSchedulerTest {
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void testActorsHandleMessagesOneAtATimeInOrder() throws InterruptedException {
+        // Arrange: More actors than workers, each recording the broadcasts it handles
+        class TestBroadcast implements Broadcast {
+            private final int sequence;
+
+            TestBroadcast(int sequence) {
+                this.sequence = sequence;
+            }
+        }
+        class StopBroadcast implements Broadcast {}
+
+        int numActors = 20;
+        int numBroadcasts = 500;
+        ActorScheduler scheduler = new ActorScheduler(2);
+        CountDownLatch subscribed = new CountDownLatch(numActors);
+        AtomicInteger overlaps = new AtomicInteger();
+        List<List<Integer>> received = new ArrayList<>();
+
+        for (int i = 0; i < numActors; i++) {
+            List<Integer> log = new ArrayList<>();
+            received.add(log);
+            scheduler.spawn(new MicroService("Actor" + i) {
+                private final AtomicInteger running = new AtomicInteger();
+
+                @Override
+                protected void initialize() {
+                    subscribeBroadcast(TestBroadcast.class, broadcast -> {
+                        if (running.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet(); // Two callbacks of the same actor at once
+                        }
+                        log.add(broadcast.sequence);
+                        running.decrementAndGet();
+                    });
+                    subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+                    subscribed.countDown();
+                }
+            });
+        }
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS), "All actors should initialize.");
+
+        // Act: Send the broadcasts, then stop all actors
+        for (int i = 0; i < numBroadcasts; i++) {
+            messageBus.sendBroadcast(new TestBroadcast(i));
+        }
+        messageBus.sendBroadcast(new StopBroadcast());
+        scheduler.awaitTermination();
+
+        // Assert: Every actor handled every broadcast, in order, never concurrently
+        assertEquals(0, overlaps.get(), "An actor should never handle two messages at the same time.");
+        for (List<Integer> log : received) {
+            assertEquals(numBroadcasts, log.size(), "Every actor should handle every broadcast.");
+            for (int i = 0; i < numBroadcasts; i++) {
+                assertEquals(i, log.get(i), "Broadcasts should be handled in the order they were sent.");
+            }
+        }
+    }
+
+    @Test
+    void testActorsCanExchangeEvents() throws InterruptedException {
+        // Arrange: An actor that answers events
+        class TestEvent implements Event<String> {}
+        class StopBroadcast implements Broadcast {}
+
+        ActorScheduler scheduler = new ActorScheduler(1);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        scheduler.spawn(new MicroService("Responder") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(TestEvent.class, event -> complete(event, "Handled"));
+                subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+                subscribed.countDown();
+            }
+        });
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS), "The actor should initialize.");
+
+        // Act: Send an event and wait for its result
+        Future<String> future = messageBus.sendEvent(new TestEvent());
+
+        // Assert: The actor handled it
+        assertNotNull(future);
+        assertEquals("Handled", future.get(5, TimeUnit.SECONDS));
+        messageBus.sendBroadcast(new StopBroadcast());
+        scheduler.awaitTermination();
+    }
+}
@@ -0,0 +1,83 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated on the sending thread per event, for
+ * {@link MessageBusImpl#sendEvent(Event)} next to {@link MessageBusImpl#sendOneWay(Event)}.
+ * Events are allocated before the measurement, and the receiver takes and completes
+ * each chunk of events outside of it, so only the cost of sending is counted.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class AllocationBenchmark {
+
+    private static final int EVENTS = 2_000_000;
+    private static final int CHUNK = 1_000;
+    private static final int ROUNDS = 3;
+
+    private static class TestEvent implements Event<Boolean> {}
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+    // The HotSpot extension of ThreadMXBean, which counts the bytes allocated by a thread
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void benchmarkAllocationPerEvent() {
+        MicroService receiver = new MicroService("AllocationReceiver") {
+            @Override
+            protected void initialize() {
+                // Driven directly through the message bus
+            }
+        };
+        messageBus.register(receiver);
+        messageBus.subscribeEvent(TestEvent.class, receiver);
+        List<TestEvent> events = new ArrayList<>(CHUNK);
+        for (int i = 0; i < CHUNK; i++) {
+            events.add(new TestEvent());
+        }
+
+        System.out.println("AllocationBenchmark: " + EVENTS + " events per round");
+        for (int round = 0; round <= ROUNDS; round++) {
+            double withFuture = run(receiver, events, false);
+            double oneWay = run(receiver, events, true);
+            if (round > 0) { // Round 0 warms up the JIT
+                System.out.printf("  round %d  sendEvent: %6.1f bytes/event  sendOneWay: %6.1f bytes/event%n",
+                        round, withFuture, oneWay);
+            }
+        }
+        messageBus.unregister(receiver);
+    }
+
+    // Returns the bytes allocated per event while sending
+    private double run(MicroService receiver, List<TestEvent> events, boolean oneWay) {
+        long threadId = Thread.currentThread().getId();
+        Mailbox mailbox = messageBus.getMailbox(receiver);
+        List<Message> taken = new ArrayList<>(CHUNK);
+        long allocated = 0;
+        for (int sent = 0; sent < EVENTS; sent += CHUNK) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (TestEvent event : events) {
+                if (oneWay) {
+                    messageBus.sendOneWay(event);
+                } else {
+                    messageBus.sendEvent(event);
+                }
+            }
+            allocated += threads.getThreadAllocatedBytes(threadId) - before;
+
+            // Receive and complete the chunk, as the handler would
+            mailbox.drainTo(taken);
+            for (Message message : taken) {
+                messageBus.complete((TestEvent) message, true);
+            }
+            taken.clear();
+        }
+        return (double) allocated / EVENTS;
+    }
+}
@@ -0,0 +1,87 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the two {@link BroadcastMode}s while one sender broadcasts to a growing number of
+ * subscribers, like the TimeService ticking to many sensors. Each subscriber runs its own
+ * message loop. Reports the time the sender spends per broadcast, and the time until every
+ * subscriber received every broadcast.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class BroadcastBenchmark {
+
+    private static final int BROADCASTS = 20_000;
+    private static final int[] SUBSCRIBER_COUNTS = {4, 16, 64, 256};
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void benchmarkBroadcastModes() throws InterruptedException {
+        System.out.println("BroadcastBenchmark: " + BROADCASTS + " broadcasts per round");
+        for (BroadcastMode mode : BroadcastMode.values()) {
+            runRound(mode, 16, true); // Warm up the JIT
+        }
+        for (int subscribers : SUBSCRIBER_COUNTS) {
+            for (BroadcastMode mode : BroadcastMode.values()) {
+                runRound(mode, subscribers, false);
+            }
+        }
+    }
+
+    private void runRound(BroadcastMode mode, int subscribers, boolean warmUp) throws InterruptedException {
+        // A new broadcast type per round, so every round starts without subscribers
+        class TickMessage implements Broadcast {}
+        messageBus.setBroadcastMode(TickMessage.class, mode);
+
+        List<MicroService> services = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            MicroService m = new MicroService("Sensor" + i) {
+                @Override
+                protected void initialize() {
+                    // Driven directly through the message bus
+                }
+            };
+            messageBus.register(m);
+            messageBus.subscribeBroadcast(TickMessage.class, m);
+            services.add(m);
+            consumers.add(new Thread(() -> {
+                List<Message> batch = new ArrayList<>(64);
+                int received = 0;
+                try {
+                    while (received < BROADCASTS) {
+                        received += messageBus.awaitMessages(m, batch, 64);
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        consumers.forEach(Thread::start);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < BROADCASTS; i++) {
+            messageBus.sendBroadcast(new TickMessage());
+        }
+        long sendTime = System.nanoTime() - startTime;
+        for (Thread consumer : consumers) {
+            consumer.join(60_000);
+            assertFalse(consumer.isAlive(), "Every subscriber should receive every broadcast.");
+        }
+        long deliveryTime = System.nanoTime() - startTime;
+        services.forEach(messageBus::unregister);
+
+        if (!warmUp) {
+            System.out.printf("  subscribers=%3d  %-7s  send=%8.2f us/broadcast  all delivered=%8.2f ms%n",
+                    subscribers, mode, sendTime / 1e3 / BROADCASTS, deliveryTime / 1e6);
+        }
+    }
+}
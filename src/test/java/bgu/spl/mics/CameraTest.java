@@ -83,4 +83,45 @@ class CameraTest {
         assertEquals(1, lastResult.getDetectedObjects().size(), "The number of detected objects should match for the last timestamp.");
         assertEquals("obj5", lastResult.getDetectedObjects().get(0).getId(), "The detected object ID for the last timestamp should match.");
     }
+
+    @Test
+    void testIsDueAt() {
+        // Arrange: A camera with frequency 2, detecting at times 2 and 5
+        Camera slowCamera = new Camera(2, 2, Arrays.asList(
+                new StampedDetectedObjects(2, List.of(new DetectedObject("obj1", "description1"))),
+                new StampedDetectedObjects(5, List.of(new DetectedObject("obj2", "description2")))
+        ));
+
+        // Assert: Due when detecting, when sending two ticks later, and from the last send on
+        assertFalse(slowCamera.isDueAt(1), "Nothing happens at tick 1.");
+        assertTrue(slowCamera.isDueAt(2), "Detections are taken at tick 2.");
+        assertFalse(slowCamera.isDueAt(3), "Nothing happens at tick 3.");
+        assertTrue(slowCamera.isDueAt(4), "Detections of tick 2 are sent at tick 4.");
+        assertTrue(slowCamera.isDueAt(5), "Detections are taken at tick 5.");
+        assertFalse(slowCamera.isDueAt(6), "Nothing happens at tick 6.");
+        assertTrue(slowCamera.isDueAt(7), "Detections of tick 5 are sent at tick 7.");
+        assertTrue(slowCamera.isDueAt(8), "The camera stops once everything was sent.");
+        assertTrue(new Camera(3, 2, List.of()).isDueAt(1), "A camera without detections stops right away.");
+    }
+
+    @Test
+    void testNextDueTickMatchesIsDueAt() {
+        // Arrange: A camera with frequency 3, detecting at times 2, 4 and 20
+        Camera sparseCamera = new Camera(4, 3, Arrays.asList(
+                new StampedDetectedObjects(2, List.of(new DetectedObject("obj1", "description1"))),
+                new StampedDetectedObjects(4, List.of(new DetectedObject("obj2", "description2"))),
+                new StampedDetectedObjects(20, List.of(new DetectedObject("obj3", "description3")))
+        ));
+
+        // Assert: The next due tick is the first one after the tick for which isDueAt holds
+        for (int tick = 0; tick < 30; tick++) {
+            int expected = tick + 1;
+            while (!sparseCamera.isDueAt(expected)) {
+                expected++;
+            }
+            assertEquals(expected, sparseCamera.nextDueTick(tick), "Next due tick after tick " + tick + ".");
+        }
+        assertEquals(20, sparseCamera.nextDetectionTime(4), "The next detection after tick 4 is at tick 20.");
+        assertEquals(Integer.MAX_VALUE, sparseCamera.nextDetectionTime(20), "There is no detection after tick 20.");
+    }
 }
\ No newline at end of file
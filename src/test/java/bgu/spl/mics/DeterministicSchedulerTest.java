@@ -0,0 +1,145 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+class DeterministicSchedulerTest {
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void testActorsRunOnTheCallingThreadInMessageOrder() {
+        // Arrange: Actors forwarding every ping they get to the next one, and recording it
+        class PingBroadcast implements Broadcast {}
+        class ForwardEvent implements Event<Boolean> {
+            private final int hop;
+
+            ForwardEvent(int hop) {
+                this.hop = hop;
+            }
+        }
+        class StopBroadcast implements Broadcast {}
+
+        DeterministicScheduler scheduler = new DeterministicScheduler();
+        List<String> log = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scheduler.spawn(new MicroService("Deterministic" + i) {
+                @Override
+                protected void initialize() {
+                    subscribeBroadcast(PingBroadcast.class, broadcast -> {
+                        threads.add(Thread.currentThread());
+                        log.add(getName() + " ping");
+                        sendOneWay(new ForwardEvent(1));
+                    });
+                    subscribeEvent(ForwardEvent.class, event -> {
+                        threads.add(Thread.currentThread());
+                        log.add(getName() + " hop " + event.hop);
+                    });
+                    subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+                }
+            });
+        }
+        scheduler.runUntilIdle();
+
+        // Act: Nothing runs until the queue is run
+        messageBus.sendBroadcast(new PingBroadcast());
+        assertTrue(log.isEmpty(), "The actors should only run in runUntilIdle().");
+        scheduler.runUntilIdle();
+        messageBus.sendBroadcast(new StopBroadcast());
+        scheduler.awaitTermination();
+
+        // Assert: Subscribers ran in the order they subscribed, then the events in the order they were sent
+        assertEquals(List.of(
+                "Deterministic0 ping", "Deterministic1 ping", "Deterministic2 ping",
+                "Deterministic0 hop 1", "Deterministic1 hop 1", "Deterministic2 hop 1"), log);
+        for (Thread thread : threads) {
+            assertSame(Thread.currentThread(), thread, "Every callback should run on the calling thread.");
+        }
+    }
+
+    @Test
+    void testTerminationFailsWhenServicesStillWait() {
+        // Arrange: An actor waiting for a broadcast no one sends
+        class NeverSentBroadcast implements Broadcast {}
+
+        DeterministicScheduler scheduler = new DeterministicScheduler();
+        MicroService waiting = new MicroService("DeterministicWaiting") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(NeverSentBroadcast.class, broadcast -> terminate());
+            }
+        };
+        scheduler.spawn(waiting);
+
+        // Act & Assert
+        IllegalStateException e = assertThrows(IllegalStateException.class, scheduler::awaitTermination);
+        assertTrue(e.getMessage().contains("DeterministicWaiting"));
+        messageBus.unregister(waiting);
+    }
+
+    @Test
+    void testFullMailboxThrowsInsteadOfBlocking() throws InterruptedException {
+        for (MailboxType type : MailboxType.values()) {
+            // Arrange: An actor with room for one message, which would make a second sender wait
+            class QueuedEvent implements Event<Boolean> {}
+
+            String name = "DeterministicFull" + type;
+            messageBus.setMailboxConfig(name, new MailboxConfig(1, OverflowPolicy.BLOCK, type, WaitStrategy.PARK));
+            MicroService full = new MicroService(name) {
+                @Override
+                protected void initialize() {
+                    subscribeEvent(QueuedEvent.class, event -> terminate());
+                }
+            };
+            AtomicReference<Throwable> thrown = new AtomicReference<>();
+
+            // Act: The driver sends both messages before running the queue, so nobody could make room
+            Thread driver = new Thread(() -> {
+                DeterministicScheduler scheduler = new DeterministicScheduler();
+                scheduler.spawn(full);
+                scheduler.runUntilIdle();
+                messageBus.sendEvent(new QueuedEvent());
+                try {
+                    messageBus.sendEvent(new QueuedEvent());
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+                scheduler.runUntilIdle();
+            });
+            driver.setDaemon(true); // A deadlocked driver must not keep the JVM alive
+            driver.start();
+            driver.join(5000);
+
+            // Assert
+            assertFalse(driver.isAlive(), "The sender should not wait for room on the scheduler's thread.");
+            assertInstanceOf(IllegalStateException.class, thrown.get());
+        }
+    }
+
+    @Test
+    void testSchedulerRejectsOtherThreads() throws InterruptedException {
+        // Arrange
+        DeterministicScheduler scheduler = new DeterministicScheduler();
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+
+        // Act
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.runUntilIdle();
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // Assert
+        assertInstanceOf(IllegalStateException.class, thrown.get());
+    }
+}
@@ -0,0 +1,109 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the cost of dispatching a message to its callback in {@link MicroService#dispatch(Message)},
+ * next to the per-message {@code HashMap} lookup and cast it replaced.
+ * A service subscribed to four message types dispatches messages of all four types in turn,
+ * like FusionSlamService handling events and broadcasts, then a service subscribed to twelve.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class DispatchBenchmark {
+
+    private static final int MESSAGES = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    private static class TypeA implements Broadcast {}
+    private static class TypeB implements Broadcast {}
+    private static class TypeC implements Event<Void> {}
+    private static class TypeD implements Event<Void> {}
+    private static class TypeE implements Broadcast {}
+    private static class TypeF implements Broadcast {}
+    private static class TypeG implements Broadcast {}
+    private static class TypeH implements Broadcast {}
+    private static class TypeI implements Broadcast {}
+    private static class TypeJ implements Broadcast {}
+    private static class TypeK implements Broadcast {}
+    private static class TypeL implements Broadcast {}
+
+    private static final Message[] MESSAGE_TYPES = {
+            new TypeA(), new TypeB(), new TypeC(), new TypeD(), new TypeE(), new TypeF(),
+            new TypeG(), new TypeH(), new TypeI(), new TypeJ(), new TypeK(), new TypeL()
+    };
+
+    private long handled; // Written by the callbacks, so the JIT cannot drop the dispatch
+
+    @Test
+    void benchmarkDispatch() {
+        benchmark(4);
+        benchmark(12);
+        System.out.println("  (checksum " + handled + ")");
+    }
+
+    // Dispatches messages of the first typeCount types in turn
+    private void benchmark(int typeCount) {
+        Message[] messages = new Message[typeCount];
+        System.arraycopy(MESSAGE_TYPES, 0, messages, 0, typeCount);
+        MicroService service = new MicroService("DispatchService") {
+            @Override
+            protected void initialize() {
+                for (Message message : messages) {
+                    subscribe(this, message.getClass());
+                }
+            }
+        };
+        service.start();
+
+        // The lookup dispatch() used before the dispatch table
+        Map<Class<? extends Message>, Callback<? extends Message>> callbacksMap = new HashMap<>();
+        for (Message message : messages) {
+            callbacksMap.put(message.getClass(), (Callback<Message>) received -> handled++);
+        }
+
+        System.out.println("DispatchBenchmark: " + MESSAGES + " messages of " + typeCount + " types per round");
+        for (int round = 0; round <= ROUNDS; round++) {
+            long mapTime = runHashMap(callbacksMap, messages);
+            long tableTime = runDispatchTable(service, messages);
+            if (round > 0) { // Round 0 warms up the JIT
+                System.out.printf("  round %d  HashMap lookup: %5.2f ns/message  dispatch table: %5.2f ns/message%n",
+                        round, (double) mapTime / MESSAGES, (double) tableTime / MESSAGES);
+            }
+        }
+        service.stop();
+    }
+
+    @SuppressWarnings("unchecked") // Every message type in the benchmark is a broadcast or a Void event
+    private void subscribe(MicroService service, Class<? extends Message> type) {
+        if (Broadcast.class.isAssignableFrom(type)) {
+            service.subscribeBroadcast((Class<Broadcast>) type, message -> handled++);
+        } else {
+            service.subscribeEvent((Class<Event<Void>>) type, message -> handled++);
+        }
+    }
+
+    private long runDispatchTable(MicroService service, Message[] messages) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            service.dispatch(messages[i % messages.length]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long runHashMap(Map<Class<? extends Message>, Callback<? extends Message>> callbacksMap, Message[] messages) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = messages[i % messages.length];
+            Callback<Message> callback = (Callback<Message>) callbacksMap.get(message.getClass());
+            if (callback != null) {
+                callback.call(message);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
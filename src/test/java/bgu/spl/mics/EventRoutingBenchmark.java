@@ -0,0 +1,187 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures sendEvent throughput while a growing number of sender threads route events
+ * to the same pool of subscribers (like many cameras sending DetectObjectsEvents to
+ * a pool of LiDAR workers).
+ * <p>
+ * Also compares the latency of events under each {@link RoutingStrategy} when one of the
+ * subscribers is much slower than the others.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class EventRoutingBenchmark {
+
+    private static final int SUBSCRIBERS = 8;
+    private static final int EVENTS_PER_SENDER = 200_000;
+    private static final int[] SENDER_COUNTS = {1, 2, 4, 8, 16};
+
+    private static final int LATENCY_EVENTS = 4_000;
+    private static final long SEND_INTERVAL_NANOS = 100_000; // 10,000 events/s
+    private static final long FAST_HANDLING_NANOS = 50_000;
+    private static final long SLOW_HANDLING_NANOS = 2_000_000;
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void benchmarkSendEventContention() throws InterruptedException {
+        System.out.println("EventRoutingBenchmark: " + SUBSCRIBERS + " subscribers, "
+                + EVENTS_PER_SENDER + " events per sender");
+        // Warm up the JIT before measuring
+        runRound(4, true);
+        for (int senders : SENDER_COUNTS) {
+            runRound(senders, false);
+        }
+    }
+
+    @Test
+    void benchmarkRoutingWithSlowSubscriber() throws InterruptedException {
+        System.out.println("EventRoutingBenchmark: 4 subscribers, one 40x slower, "
+                + LATENCY_EVENTS + " events at " + (1_000_000_000 / SEND_INTERVAL_NANOS) + " events/s");
+        for (RoutingStrategy strategy : RoutingStrategy.values()) {
+            runLatencyRound(strategy);
+        }
+    }
+
+    private void runLatencyRound(RoutingStrategy strategy) throws InterruptedException {
+        // A new event type per round, so every round starts with an empty routing table
+        class TimedEvent implements Event<Long> {
+            final long sentAt = System.nanoTime();
+        }
+        messageBus.setRoutingStrategy(TimedEvent.class, strategy);
+
+        List<MicroService> subscribers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            long handlingNanos = i == 0 ? SLOW_HANDLING_NANOS : FAST_HANDLING_NANOS;
+            MicroService m = new MicroService("Worker" + i) {
+                @Override
+                protected void initialize() {
+                    // Driven directly through the message bus
+                }
+            };
+            messageBus.register(m);
+            messageBus.subscribeEvent(TimedEvent.class, m);
+            subscribers.add(m);
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        TimedEvent event = (TimedEvent) messageBus.awaitMessage(m);
+                        LockSupport.parkNanos(handlingNanos); // Simulated work
+                        messageBus.complete(event, System.nanoTime() - event.sentAt);
+                    }
+                } catch (InterruptedException | IllegalStateException e) {
+                    // Interrupted or unregistered at the end of the round
+                }
+            });
+            consumer.start();
+            consumers.add(consumer);
+        }
+
+        List<Future<Long>> futures = new ArrayList<>();
+        long next = System.nanoTime();
+        for (int i = 0; i < LATENCY_EVENTS; i++) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            next += SEND_INTERVAL_NANOS;
+            futures.add(messageBus.sendEvent(new TimedEvent()));
+        }
+        long[] latencies = new long[LATENCY_EVENTS];
+        for (int i = 0; i < LATENCY_EVENTS; i++) {
+            latencies[i] = futures.get(i).get(1, TimeUnit.MINUTES);
+        }
+
+        for (int i = 0; i < consumers.size(); i++) {
+            consumers.get(i).interrupt();
+            consumers.get(i).join();
+            messageBus.unregister(subscribers.get(i));
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("  strategy=%-20s  p50=%8.2f ms  p99=%8.2f ms  max=%8.2f ms%n", strategy,
+                latencies[LATENCY_EVENTS / 2] / 1e6, latencies[LATENCY_EVENTS * 99 / 100] / 1e6,
+                latencies[LATENCY_EVENTS - 1] / 1e6);
+    }
+
+    private void runRound(int senders, boolean warmUp) throws InterruptedException {
+        // A new event type per round, so every round starts with an empty routing table
+        class RoutedEvent implements Event<Boolean> {}
+
+        List<MicroService> subscribers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            MicroService m = new MicroService("Subscriber" + i) {
+                @Override
+                protected void initialize() {
+                    // Driven directly through the message bus
+                }
+            };
+            messageBus.register(m);
+            messageBus.subscribeEvent(RoutedEvent.class, m);
+            subscribers.add(m);
+            // Each subscriber drains its own queue and completes the events it receives
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        @SuppressWarnings("unchecked")
+                        Event<Boolean> event = (Event<Boolean>) messageBus.awaitMessage(m);
+                        messageBus.complete(event, true);
+                    }
+                } catch (InterruptedException | IllegalStateException e) {
+                    // Interrupted or unregistered at the end of the round
+                }
+            });
+            consumer.start();
+            consumers.add(consumer);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> senderThreads = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            Thread sender = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < EVENTS_PER_SENDER; j++) {
+                    assertNotNull(messageBus.sendEvent(new RoutedEvent()));
+                }
+            });
+            sender.start();
+            senderThreads.add(sender);
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread sender : senderThreads) {
+            sender.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            consumers.get(i).interrupt();
+            consumers.get(i).join();
+            messageBus.unregister(subscribers.get(i));
+        }
+
+        if (!warmUp) {
+            long events = (long) senders * EVENTS_PER_SENDER;
+            System.out.printf("  senders=%2d  events=%,10d  time=%6d ms  throughput=%,12.0f events/s%n",
+                    senders, events, elapsed / 1_000_000, events * 1e9 / elapsed);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares platform threads, virtual threads, actors and single-threaded deterministic actors running the event loops of
+ * 10, 100 and 1000 sensor-like services. Every service handles a fixed number of tick broadcasts and
+ * then terminates; the measured time covers start-up, tick delivery and shutdown.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class ExecutionModeBenchmark {
+
+    private static final int[] SENSOR_COUNTS = {10, 100, 1000};
+    private static final int TICKS = 200;
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    // Simulation-like tick broadcast, local to this benchmark
+    private static class BenchmarkTick implements Broadcast {
+        private final int tick;
+
+        BenchmarkTick(int tick) {
+            this.tick = tick;
+        }
+    }
+
+    @Test
+    void benchmarkExecutionModes() throws InterruptedException {
+        System.out.println("ExecutionModeBenchmark: " + TICKS + " ticks per run");
+        // Warm up the JIT before measuring
+        runRound(ExecutionMode.PLATFORM, 100, true);
+        for (int sensors : SENSOR_COUNTS) {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                if (!mode.isSupported()) {
+                    System.out.printf("  sensors=%4d  mode=%-13s  skipped (requires a Java 21+ runtime)%n", sensors, mode);
+                    continue;
+                }
+                runRound(mode, sensors, false);
+            }
+        }
+    }
+
+    private void runRound(ExecutionMode mode, int sensors, boolean warmUp) throws InterruptedException {
+        CountDownLatch subscribed = new CountDownLatch(sensors);
+        CountDownLatch finished = new CountDownLatch(sensors);
+        List<Thread> threads = new ArrayList<>();
+        ActorScheduler scheduler = mode == ExecutionMode.ACTOR
+                ? new ActorScheduler(Runtime.getRuntime().availableProcessors())
+                : null;
+        DeterministicScheduler deterministicScheduler = mode == ExecutionMode.DETERMINISTIC
+                ? new DeterministicScheduler()
+                : null;
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < sensors; i++) {
+            MicroService sensor = new MicroService("Sensor" + i) {
+                private long checksum;
+
+                @Override
+                protected void initialize() {
+                    subscribeBroadcast(BenchmarkTick.class, tick -> {
+                        checksum += tick.tick; // A little work per tick
+                        if (tick.tick == TICKS) {
+                            finished.countDown();
+                            terminate();
+                        }
+                    });
+                    subscribed.countDown();
+                }
+            };
+            if (deterministicScheduler != null) {
+                deterministicScheduler.spawn(sensor);
+            } else if (scheduler != null) {
+                scheduler.spawn(sensor);
+            } else {
+                Thread thread = mode.newThread(sensor, sensor.getName());
+                thread.start();
+                threads.add(thread);
+            }
+        }
+        if (deterministicScheduler != null) {
+            deterministicScheduler.runUntilIdle(); // Subscribes them, on this thread
+        }
+        subscribed.await();
+        for (int tick = 1; tick <= TICKS; tick++) {
+            messageBus.sendBroadcast(new BenchmarkTick(tick));
+        }
+        if (deterministicScheduler != null) {
+            deterministicScheduler.awaitTermination(); // Delivers every tick, on this thread
+        }
+        finished.await();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (scheduler != null) {
+            scheduler.awaitTermination();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        if (!warmUp) {
+            System.out.printf("  sensors=%4d  mode=%-13s  time=%6d ms  delivered=%,12.0f ticks/s%n",
+                    sensors, mode, elapsed / 1_000_000, (double) sensors * TICKS * 1e9 / elapsed);
+        }
+    }
+}
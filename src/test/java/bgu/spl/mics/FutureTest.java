@@ -0,0 +1,176 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+class FutureTest {
+
+    private Future<String> future;
+
+    @BeforeEach
+    void setUp() {
+        future = new Future<>();
+    }
+
+    @Test
+    void testResolveAndGet() {
+        // Act: Resolve the future
+        assertFalse(future.isDone(), "A new Future should not be resolved.");
+        future.resolve("Result");
+
+        // Assert: The result is available without blocking
+        assertTrue(future.isDone(), "Future should be marked as done after resolving.");
+        assertEquals("Result", future.get());
+        assertEquals("Result", future.get(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testResolveOnlyOnce() {
+        // Act: Resolve the future twice
+        future.resolve("First");
+        future.resolve("Second");
+
+        // Assert: The first result is kept
+        assertEquals("First", future.get(), "A Future should only be resolved once.");
+    }
+
+    @Test
+    void testResolveWithNull() {
+        // Act: Resolve the future with a null result
+        future.resolve(null);
+
+        // Assert: A null result is still a resolution
+        assertTrue(future.isDone(), "Resolving with null should mark the Future as done.");
+        assertNull(future.get());
+    }
+
+    @Test
+    void testGetWithTimeoutElapses() {
+        // Act: Wait for a result that never arrives
+        long startTime = System.currentTimeMillis();
+        String result = future.get(100, TimeUnit.MILLISECONDS);
+        long elapsedTime = System.currentTimeMillis() - startTime;
+
+        // Assert: null is returned once the timeout has elapsed
+        assertNull(result, "get with timeout should return null if the Future was not resolved.");
+        assertTrue(elapsedTime >= 100, "get with timeout should wait for the whole timeout.");
+    }
+
+    @Test
+    void testTimedOutGetsDoNotPileUp() {
+        // Arrange: A continuation registered before polling
+        AtomicReference<String> observed = new AtomicReference<>();
+        future.onComplete(observed::set);
+
+        // Act: Poll the future many times
+        for (int i = 0; i < 1000; i++) {
+            assertNull(future.get(1, TimeUnit.MICROSECONDS));
+        }
+
+        // Assert: The waiters were removed once they timed out, and the continuation still runs
+        assertEquals(1, future.pendingContinuations());
+        future.resolve("Result");
+        assertEquals("Result", observed.get());
+    }
+
+    @Test
+    void testGetBlocksUntilResolved() throws InterruptedException {
+        // Arrange: Resolve the future from another thread after a delay
+        Thread resolver = new Thread(() -> {
+            try {
+                Thread.sleep(100); // Simulate a delay
+                future.resolve("Result");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        resolver.start();
+
+        // Act: Block on the future
+        long startTime = System.currentTimeMillis();
+        String result = future.get();
+        long elapsedTime = System.currentTimeMillis() - startTime;
+
+        // Assert: get returned the result only after it was resolved
+        assertEquals("Result", result);
+        assertTrue(elapsedTime >= 100, "get should block until the Future is resolved.");
+        resolver.join();
+    }
+
+    @Test
+    void testOnCompleteRunsInRegistrationOrder() {
+        // Arrange: Register continuations before the future is resolved
+        List<String> calls = new ArrayList<>();
+        future.onComplete(result -> calls.add("first:" + result));
+        future.onComplete(result -> calls.add("second:" + result));
+        assertTrue(calls.isEmpty(), "Continuations should not run before the Future is resolved.");
+
+        // Act: Resolve the future, then register another continuation
+        future.resolve("Result");
+        future.onComplete(result -> calls.add("late:" + result));
+
+        // Assert: All continuations ran once, in order
+        assertEquals(3, calls.size());
+        assertEquals("first:Result", calls.get(0));
+        assertEquals("second:Result", calls.get(1));
+        assertEquals("late:Result", calls.get(2));
+    }
+
+    @Test
+    void testThenApplyPipelinesResults() {
+        // Arrange: Chain transformations on the future
+        Future<Integer> length = future.thenApply(String::length);
+        Future<Boolean> isLong = length.thenApply(n -> n > 3);
+        AtomicReference<Boolean> observed = new AtomicReference<>();
+        isLong.onComplete(observed::set);
+
+        // Act: Resolve the original future
+        future.resolve("Result");
+
+        // Assert: Every stage was resolved without blocking
+        assertTrue(length.isDone());
+        assertEquals(6, length.get());
+        assertEquals(Boolean.TRUE, observed.get());
+    }
+
+    @Test
+    void testThenApplyResolvesWithNullWhenTheFunctionThrows() {
+        // Arrange: A transformation which fails
+        Future<Integer> length = future.thenApply(result -> {
+            throw new IllegalStateException("Test failure");
+        });
+        Future<Boolean> isNull = length.thenApply(n -> n == null);
+
+        // Act: Resolve the original future
+        future.resolve("Result");
+
+        // Assert: The failed stage was resolved with null, and the next stage ran
+        assertTrue(length.isDone(), "A failed transformation should still resolve its Future.");
+        assertNull(length.get());
+        assertEquals(Boolean.TRUE, isNull.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailingContinuationDoesNotBreakOthers() {
+        // Arrange: A failing continuation followed by a working one
+        AtomicReference<String> observed = new AtomicReference<>();
+        future.onComplete(result -> {
+            throw new IllegalStateException("Test failure");
+        });
+        future.onComplete(observed::set);
+
+        // Act: Resolve the future
+        future.resolve("Result");
+
+        // Assert: The second continuation still ran
+        assertEquals("Result", observed.get());
+        assertEquals("Result", future.get());
+    }
+}
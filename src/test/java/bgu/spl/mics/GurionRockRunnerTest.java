@@ -0,0 +1,140 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.GurionRockRunner;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link GurionRockRunner} on example_input, whose output_file.json was written by a paced
+ * run. Each run is a separate JVM, since the simulation's objects are singletons.
+ */
+class GurionRockRunnerTest {
+
+    private static final Path EXAMPLE = Path.of("example_input");
+    // Runs per configuration, since the services may handle a tick in any order
+    private static final int RUNS = 5;
+
+    @Test
+    void testTicksAsFastAsPossibleWriteThePacedOutput() throws IOException, InterruptedException {
+        assertEveryRunWritesThePacedOutput(Map.of("TickPacing", "as_fast_as_possible"));
+    }
+
+    @Test
+    void testTicksBackToBackLoseNoDetection() throws IOException, InterruptedException {
+        // The ticks all end before the sensors stop, so only the runtime differs: the run lasts the whole Duration
+        assertEveryRunWritesThePacedOutput(Map.of("TickTime", 0), "systemRuntime");
+    }
+
+    @Test
+    void testDeterministicRunRejectsBlockingMailboxes() throws IOException, InterruptedException {
+        // Arrange: Full mailboxes would block their senders on the only thread
+        JsonObject mailboxes = JsonParser.parseString("{\"default\":{\"capacity\":1}}").getAsJsonObject();
+        Path directory = copyExample(Map.of("ExecutionMode", "deterministic", "Mailboxes", mailboxes));
+
+        // Act
+        Process process = startRunner(directory);
+        boolean exited = process.waitFor(30, TimeUnit.SECONDS);
+        process.destroyForcibly();
+
+        // Assert
+        assertTrue(exited, "The simulation should fail instead of deadlocking.");
+        assertNotEquals(0, process.exitValue(), "The configuration should be rejected.");
+        assertFalse(Files.exists(directory.resolve("output_file.json")));
+    }
+
+    // Runs example_input with the configuration keys in overrides, and checks every run wrote the paced output,
+    // except for the ignored keys
+    private void assertEveryRunWritesThePacedOutput(Map<String, Object> overrides, String... ignoredKeys)
+            throws IOException, InterruptedException {
+        // Arrange
+        JsonObject paced = JsonParser.parseString(Files.readString(EXAMPLE.resolve("output_file.json"))).getAsJsonObject();
+        for (String key : ignoredKeys) {
+            paced.remove(key);
+        }
+        Path directory = copyExample(overrides);
+
+        for (int run = 1; run <= RUNS; run++) {
+            // Act
+            Files.deleteIfExists(directory.resolve("output_file.json"));
+            Process process = startRunner(directory);
+            assertEquals(0, process.waitFor(), "The simulation should exit normally.");
+
+            // Assert
+            JsonObject output = JsonParser.parseString(Files.readString(directory.resolve("output_file.json"))).getAsJsonObject();
+            for (String key : ignoredKeys) {
+                output.remove(key);
+            }
+            assertJsonEquals(paced, output, "run " + run + ": $");
+        }
+    }
+
+    // Runs the simulation on the configuration file in directory, in a separate JVM
+    private static Process startRunner(Path directory) throws IOException {
+        return new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                GurionRockRunner.class.getName(), directory.resolve("configuration_file.json").toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    // Copies example_input to a temporary directory, with the configuration keys in overrides set
+    private Path copyExample(Map<String, Object> overrides) throws IOException {
+        Path directory = Files.createTempDirectory("runner-test");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(EXAMPLE)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals("output_file.json")) {
+                    Files.copy(file, directory.resolve(file.getFileName()));
+                }
+            }
+        }
+        Path config = directory.resolve("configuration_file.json");
+        JsonObject json = JsonParser.parseString(Files.readString(config)).getAsJsonObject();
+        for (Map.Entry<String, Object> override : overrides.entrySet()) {
+            if (override.getValue() instanceof JsonElement) {
+                json.add(override.getKey(), (JsonElement) override.getValue());
+            } else if (override.getValue() instanceof Number) {
+                json.addProperty(override.getKey(), (Number) override.getValue());
+            } else {
+                json.addProperty(override.getKey(), override.getValue().toString());
+            }
+        }
+        Files.writeString(config, json.toString());
+        return directory;
+    }
+
+    // Compares two JSON trees, numbers up to rounding
+    private static void assertJsonEquals(JsonElement expected, JsonElement actual, String path) {
+        if (expected.isJsonObject() && actual.isJsonObject()) {
+            JsonObject expectedObject = expected.getAsJsonObject();
+            JsonObject actualObject = actual.getAsJsonObject();
+            assertEquals(expectedObject.keySet(), actualObject.keySet(), path);
+            for (String key : expectedObject.keySet()) {
+                assertJsonEquals(expectedObject.get(key), actualObject.get(key), path + "." + key);
+            }
+        } else if (expected.isJsonArray() && actual.isJsonArray()) {
+            assertEquals(expected.getAsJsonArray().size(), actual.getAsJsonArray().size(), path + " size");
+            for (int i = 0; i < expected.getAsJsonArray().size(); i++) {
+                assertJsonEquals(expected.getAsJsonArray().get(i), actual.getAsJsonArray().get(i), path + "[" + i + "]");
+            }
+        } else if (expected.isJsonPrimitive() && expected.getAsJsonPrimitive().isNumber()
+                && actual.isJsonPrimitive() && actual.getAsJsonPrimitive().isNumber()) {
+            assertEquals(expected.getAsDouble(), actual.getAsDouble(), 1e-9, path);
+        } else {
+            assertEquals(expected, actual, path);
+        }
+    }
+}
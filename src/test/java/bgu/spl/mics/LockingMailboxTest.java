@@ -0,0 +1,322 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class LockingMailboxTest {
+
+    // Distinct message types for the coalescing and priority tests
+    private static class TickMessage implements Broadcast {}
+    private static class DataMessage implements Broadcast {}
+    @DeliveryPriority(MessagePriority.HIGH)
+    private static class ControlMessage implements Broadcast {}
+    @DeliveryPriority(MessagePriority.LOW)
+    private static class BulkMessage implements Broadcast {}
+    @DeliveryPriority(MessagePriority.LOW)
+    @Undroppable
+    private static class StopMessage implements Broadcast {}
+
+    @Test
+    void testDropOldestKeepsNewestMessages() {
+        // Arrange: A full mailbox of capacity 2
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(2, OverflowPolicy.DROP_OLDEST), counters);
+        Message first = new TickMessage();
+        Message second = new TickMessage();
+        Message third = new TickMessage();
+        mailbox.add(first);
+        mailbox.add(second);
+
+        // Act
+        Message dropped = mailbox.add(third);
+
+        // Assert: The oldest message made room for the new one
+        assertSame(first, dropped);
+        assertEquals(List.of(second, third), drain(mailbox));
+        assertEquals(1, counters.getDroppedOldest());
+        assertEquals(2, counters.getHighWaterMark());
+    }
+
+    @Test
+    void testDropNewestRejectsNewMessages() {
+        // Arrange: A full mailbox of capacity 2
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(2, OverflowPolicy.DROP_NEWEST), counters);
+        Message first = new TickMessage();
+        Message second = new TickMessage();
+        Message third = new TickMessage();
+        mailbox.add(first);
+        mailbox.add(second);
+
+        // Act
+        Message dropped = mailbox.add(third);
+
+        // Assert: The new message was not queued
+        assertSame(third, dropped);
+        assertEquals(List.of(first, second), drain(mailbox));
+        assertEquals(1, counters.getDroppedNewest());
+    }
+
+    @Test
+    void testCoalesceReplacesQueuedMessageOfSameType() {
+        // Arrange: A full mailbox holding a tick and a data message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(2, OverflowPolicy.COALESCE), counters);
+        Message oldTick = new TickMessage();
+        Message data = new DataMessage();
+        Message newTick = new TickMessage();
+        mailbox.add(oldTick);
+        mailbox.add(data);
+
+        // Act
+        Message dropped = mailbox.add(newTick);
+
+        // Assert: The old tick was replaced, and the new one is queued after the data message
+        assertSame(oldTick, dropped);
+        assertEquals(List.of(data, newTick), drain(mailbox));
+        assertEquals(1, counters.getCoalesced());
+        assertEquals(0, counters.getDroppedOldest());
+    }
+
+    @Test
+    void testBlockWaitsForRoom() throws InterruptedException {
+        // Arrange: A full mailbox of capacity 1, and a sender trying to add another message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(1, OverflowPolicy.BLOCK), counters);
+        Message first = new TickMessage();
+        Message second = new TickMessage();
+        mailbox.add(first);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            mailbox.add(second);
+            added.countDown();
+        });
+        sender.start();
+
+        // Assert: The sender waits while the mailbox is full
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS), "The sender should wait for room.");
+
+        // Act: Make room
+        assertSame(first, mailbox.take());
+
+        // Assert: The sender completed, nothing was lost
+        assertTrue(added.await(5, TimeUnit.SECONDS), "The sender should continue once there is room.");
+        assertSame(second, mailbox.take());
+        assertEquals(1, counters.getBlockedSends());
+        sender.join();
+    }
+
+    @Test
+    void testCloseReleasesBlockedSenders() throws InterruptedException {
+        // Arrange: A sender waiting on a full mailbox
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(1, OverflowPolicy.BLOCK), new MailboxCounters());
+        mailbox.add(new TickMessage());
+        Message second = new TickMessage();
+        List<Message> returned = new ArrayList<>();
+        Thread sender = new Thread(() -> returned.add(mailbox.add(second)));
+        sender.start();
+
+        // Act: Close the mailbox, as unregister does
+        Thread.sleep(50);
+        mailbox.close();
+        sender.join(5000);
+
+        // Assert: The sender got its message back instead of waiting forever
+        assertFalse(sender.isAlive(), "Closing the mailbox should release blocked senders.");
+        assertEquals(List.of(second), returned);
+    }
+
+    @Test
+    void testDropOldestSkipsUndroppableMessages() {
+        // Arrange: A full mailbox holding an undroppable message ahead of bulk data in the lowest lane
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(2, OverflowPolicy.DROP_OLDEST), new MailboxCounters());
+        Message stop = new StopMessage();
+        Message bulk = new BulkMessage();
+        mailbox.add(stop);
+        mailbox.add(bulk);
+
+        // Act
+        Message dropped = mailbox.add(new TickMessage());
+
+        // Assert: The oldest droppable message made room
+        assertSame(bulk, dropped);
+        assertTrue(drain(mailbox).contains(stop));
+    }
+
+    @Test
+    void testCoalesceWaitsForRoomWhenOnlyUndroppableMessagesAreQueued() throws InterruptedException {
+        // Arrange: A mailbox full of undroppable messages, and a sender trying to add another message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(1, OverflowPolicy.COALESCE), counters);
+        Message stop = new StopMessage();
+        Message tick = new TickMessage();
+        mailbox.add(stop);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            assertNull(mailbox.add(tick));
+            added.countDown();
+        });
+        sender.start();
+
+        // Assert: The sender waits instead of dropping the undroppable message
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS), "The sender should wait for room.");
+
+        // Act: Make room
+        assertSame(stop, mailbox.take());
+
+        // Assert: The sender completed, nothing was lost
+        assertTrue(added.await(5, TimeUnit.SECONDS), "The sender should continue once there is room.");
+        assertSame(tick, mailbox.take());
+        assertEquals(0, counters.getDroppedOldest());
+        sender.join();
+    }
+
+    @Test
+    void testDropNewestWaitsForRoomForUndroppableMessages() throws InterruptedException {
+        // Arrange: A full mailbox, and a sender trying to add an undroppable message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(1, OverflowPolicy.DROP_NEWEST), counters);
+        Message tick = new TickMessage();
+        Message stop = new StopMessage();
+        mailbox.add(tick);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            assertNull(mailbox.add(stop));
+            added.countDown();
+        });
+        sender.start();
+
+        // Assert: The sender waits instead of dropping its message
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS), "The sender should wait for room.");
+
+        // Act: Make room
+        assertSame(tick, mailbox.take());
+
+        // Assert: The undroppable message was queued
+        assertTrue(added.await(5, TimeUnit.SECONDS), "The sender should continue once there is room.");
+        assertSame(stop, mailbox.take());
+        assertEquals(0, counters.getDroppedNewest());
+        assertEquals(1, counters.getBlockedSends());
+        sender.join();
+    }
+
+    @Test
+    void testDroppedEventsResolveWithNull() {
+        // Arrange: A service whose mailbox holds a single message and drops new ones
+        class TestEvent implements Event<String> {}
+        MessageBusImpl messageBus = MessageBusImpl.getInstance();
+        messageBus.setMailboxConfig("BoundedService", new MailboxConfig(1, OverflowPolicy.DROP_NEWEST));
+        MicroService service = new MicroService("BoundedService") {
+            @Override
+            protected void initialize() {
+                // Not started, so events stay queued
+            }
+        };
+        messageBus.register(service);
+        messageBus.subscribeEvent(TestEvent.class, service);
+
+        // Act: Send two events, the second does not fit
+        Future<String> queued = messageBus.sendEvent(new TestEvent());
+        Future<String> dropped = messageBus.sendEvent(new TestEvent());
+
+        // Assert: The sender of the dropped event is released with no result
+        assertFalse(queued.isDone());
+        assertTrue(dropped.isDone(), "The Future of a dropped event should be resolved.");
+        assertNull(dropped.get());
+        assertEquals(1, messageBus.getMailboxCounters().get("BoundedService").getDroppedNewest());
+        messageBus.unregister(service);
+        assertTrue(queued.isDone());
+    }
+
+    @Test
+    void testHigherPriorityMessagesAreTakenFirst() throws InterruptedException {
+        // Arrange: Messages of all priorities, sent in mixed order
+        Mailbox mailbox = new LockingMailbox();
+        Message bulk1 = new BulkMessage();
+        Message tick1 = new TickMessage();
+        Message control = new ControlMessage();
+        Message bulk2 = new BulkMessage();
+        Message tick2 = new TickMessage();
+        for (Message message : List.of(bulk1, tick1, control, bulk2, tick2)) {
+            mailbox.add(message);
+        }
+
+        // Act & Assert: By priority, and in sending order within a priority
+        assertSame(control, mailbox.take());
+        assertSame(tick1, mailbox.poll());
+        assertEquals(List.of(tick2, bulk1, bulk2), drain(mailbox));
+    }
+
+    @Test
+    void testSubscriptionPriorityOverridesDeclaredPriority() {
+        // Arrange: Control messages lowered below ticks for this mailbox only
+        Mailbox mailbox = new LockingMailbox();
+        mailbox.setPriority(ControlMessage.class, MessagePriority.LOW);
+        Message control = new ControlMessage();
+        Message tick = new TickMessage();
+
+        // Act
+        mailbox.add(control);
+        mailbox.add(tick);
+
+        // Assert
+        assertEquals(List.of(tick, control), drain(mailbox));
+        assertEquals(MessagePriority.HIGH, MessagePriority.of(ControlMessage.class), "The declared priority is unchanged.");
+    }
+
+    @Test
+    void testDropOldestDropsFromLowestPriority() {
+        // Arrange: A full mailbox holding bulk data behind a tick
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(2, OverflowPolicy.DROP_OLDEST), new MailboxCounters());
+        Message tick = new TickMessage();
+        Message bulk = new BulkMessage();
+        mailbox.add(tick);
+        mailbox.add(bulk);
+
+        // Act
+        Message dropped = mailbox.add(new ControlMessage());
+
+        // Assert: Bulk data made room, the tick is kept
+        assertSame(bulk, dropped);
+    }
+
+    @Test
+    void testAddAllLargerThanCapacityWakesTaker() throws InterruptedException {
+        // Arrange: A taker waiting on an empty mailbox of capacity 1
+        Mailbox mailbox = new LockingMailbox(new MailboxConfig(1, OverflowPolicy.BLOCK), new MailboxCounters());
+        List<Message> taken = new ArrayList<>();
+        Thread taker = new Thread(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    taken.add(mailbox.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        taker.start();
+        List<Message> messages = List.of(new TickMessage(), new TickMessage(), new TickMessage());
+
+        // Act: Add more messages at once than fit
+        List<Message> dropped = new ArrayList<>();
+        mailbox.addAll(messages, dropped);
+        taker.join(5000);
+
+        // Assert: The sender waited for the taker instead of deadlocking, nothing was lost
+        assertFalse(taker.isAlive(), "The taker should be woken while the sender waits for room.");
+        assertEquals(messages, taken);
+        assertTrue(dropped.isEmpty());
+    }
+
+    private static List<Message> drain(Mailbox mailbox) {
+        List<Message> messages = new ArrayList<>();
+        mailbox.drainTo(messages);
+        return messages;
+    }
+}
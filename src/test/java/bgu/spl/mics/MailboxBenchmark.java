@@ -0,0 +1,118 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the locking mailbox with the ring-buffer mailbox under each wait strategy:
+ * <ul>
+ *     <li>Throughput: {@link #SENDERS} threads send to one receiver, which takes batches like
+ *     {@link MicroService#run()}. Also reports the bytes allocated per message on the senders.</li>
+ *     <li>Latency: two threads pass a message back and forth between two mailboxes, like a tick
+ *     reaching an idle service. Reports half the median round trip.</li>
+ * </ul>
+ * Busy-spinning needs a core per spinning thread, so it is skipped on a single core.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class MailboxBenchmark {
+
+    private static final int SENDERS = 4;
+    private static final int MESSAGES_PER_SENDER = 1_000_000;
+    private static final int ROUND_TRIPS = 20_000;
+    private static final int CAPACITY = 1024;
+
+    private static class TickMessage implements Broadcast {}
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void benchmarkMailboxes() throws InterruptedException {
+        List<MailboxConfig> configs = new ArrayList<>();
+        configs.add(new MailboxConfig(CAPACITY, OverflowPolicy.BLOCK));
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            if (waitStrategy == WaitStrategy.BUSY_SPIN && Runtime.getRuntime().availableProcessors() < 2) {
+                System.out.println("MailboxBenchmark: skipping busy_spin on a single core");
+                continue;
+            }
+            configs.add(new MailboxConfig(CAPACITY, OverflowPolicy.BLOCK, MailboxType.RING_BUFFER, waitStrategy));
+        }
+
+        System.out.println("MailboxBenchmark: " + SENDERS + " senders x " + MESSAGES_PER_SENDER
+                + " messages, " + ROUND_TRIPS + " round trips");
+        for (MailboxConfig config : configs) {
+            runThroughput(config, true); // Warm up the JIT
+            double[] throughput = runThroughput(config, false);
+            double latency = runLatency(config);
+            System.out.printf("  %-55s  %6.1f ns/message  %5.1f bytes/message  latency %8.2f us%n",
+                    config, throughput[0], throughput[1], latency / 1e3);
+        }
+    }
+
+    // Returns the time per message and the bytes the senders allocated per message
+    private double[] runThroughput(MailboxConfig config, boolean warmUp) throws InterruptedException {
+        Mailbox mailbox = Mailbox.create(config, new MailboxCounters());
+        int messagesPerSender = warmUp ? MESSAGES_PER_SENDER / 10 : MESSAGES_PER_SENDER;
+        AtomicLong allocated = new AtomicLong();
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < SENDERS; i++) {
+            senders.add(new Thread(() -> {
+                Message message = new TickMessage(); // Reused, so only the mailbox allocates
+                long threadId = Thread.currentThread().getId();
+                long before = threads.getThreadAllocatedBytes(threadId);
+                for (int j = 0; j < messagesPerSender; j++) {
+                    mailbox.add(message);
+                }
+                allocated.addAndGet(threads.getThreadAllocatedBytes(threadId) - before);
+            }));
+        }
+
+        long start = System.nanoTime();
+        senders.forEach(Thread::start);
+        List<Message> batch = new ArrayList<>(ActorScheduler.BATCH_SIZE);
+        long total = (long) SENDERS * messagesPerSender;
+        for (long received = 0; received < total; ) {
+            received += mailbox.takeBatch(batch, ActorScheduler.BATCH_SIZE);
+            batch.clear();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        return new double[]{(double) elapsed / total, (double) allocated.get() / total};
+    }
+
+    // Returns the median one-way latency in nanoseconds
+    private double runLatency(MailboxConfig config) throws InterruptedException {
+        Mailbox ping = Mailbox.create(config, new MailboxCounters());
+        Mailbox pong = Mailbox.create(config, new MailboxCounters());
+        Thread echo = new Thread(() -> {
+            try {
+                for (int i = 0; i < ROUND_TRIPS; i++) {
+                    pong.add(ping.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        echo.start();
+
+        Message message = new TickMessage();
+        long[] roundTrips = new long[ROUND_TRIPS];
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            long start = System.nanoTime();
+            ping.add(message);
+            pong.take();
+            roundTrips[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        Arrays.sort(roundTrips);
+        return roundTrips[ROUND_TRIPS / 2] / 2.0;
+    }
+}
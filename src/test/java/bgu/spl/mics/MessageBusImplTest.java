@@ -5,8 +5,15 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
+
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Predicate;
 
 class MessageBusImplTest {
 
@@ -229,4 +236,561 @@ class MessageBusImplTest {
         eventSender.join();
         broadcastSender.join();
     }
+
+    @Test
+    void testRoundRobinSkipsUnregisteredSubscribers() throws InterruptedException {
+        // Arrange: Subscribe three MicroServices to the same event type
+        class TestEvent implements Event<String> {}
+        MicroService testMicroService3 = new MicroService("TestMicroService3") {
+            @Override
+            protected void initialize() {
+                // No initialization logic for testing
+            }
+        };
+        messageBus.register(testMicroService3);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService3);
+
+        // Act: Unregister the middle subscriber and send four events
+        messageBus.unregister(testMicroService2);
+        TestEvent[] events = {new TestEvent(), new TestEvent(), new TestEvent(), new TestEvent()};
+        for (TestEvent event : events) {
+            assertNotNull(messageBus.sendEvent(event), "Events should still be routed to the remaining subscribers.");
+        }
+
+        // Assert: The remaining subscribers alternate, in subscription order
+        assertEquals(events[0], messageBus.awaitMessage(testMicroService1));
+        assertEquals(events[1], messageBus.awaitMessage(testMicroService3));
+        assertEquals(events[2], messageBus.awaitMessage(testMicroService1));
+        assertEquals(events[3], messageBus.awaitMessage(testMicroService3));
+    }
+
+    @Test
+    void testSubscribeEventRequiresRegistration() {
+        // Arrange: A MicroService that was never registered
+        class TestEvent implements Event<String> {}
+        MicroService unregistered = new MicroService("Unregistered") {
+            @Override
+            protected void initialize() {
+                // No initialization logic for testing
+            }
+        };
+
+        // Assert: Subscribing it to an event type is rejected
+        assertThrows(IllegalStateException.class, () -> messageBus.subscribeEvent(TestEvent.class, unregistered),
+                "subscribeEvent should throw an exception if the MicroService is not registered.");
+    }
+
+    @Test
+    void testCompletedFuturesAreReleased() throws InterruptedException {
+        // Arrange: Subscribe MicroService1 to a custom event
+        class TestEvent implements Event<Integer> {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        int pendingBefore = messageBus.getPendingFutureCount();
+
+        // Act: Run a long synthetic stream of events, each one completed by its handler
+        int numEvents = 1_000_000;
+        long heapBefore = usedHeapAfterGc();
+        for (int i = 0; i < numEvents; i++) {
+            Future<Integer> future = messageBus.sendEvent(new TestEvent());
+            TestEvent received = (TestEvent) messageBus.awaitMessage(testMicroService1);
+            messageBus.complete(received, i);
+            assertEquals(i, future.get(), "Each Future should resolve to its own result.");
+        }
+        long heapGrowth = usedHeapAfterGc() - heapBefore;
+
+        // Assert: No Future is retained after its event was completed, so the heap stays flat
+        assertEquals(pendingBefore, messageBus.getPendingFutureCount(),
+                "Completed events should not be tracked by the MessageBus.");
+        assertTrue(heapGrowth < 32L * 1024 * 1024,
+                "Heap should stay bounded over a long run, but grew by " + heapGrowth + " bytes.");
+    }
+
+    @Test
+    void testUnregisterResolvesUnhandledEvents() {
+        // Arrange: Queue an event for MicroService1 without handling it
+        class TestEvent implements Event<String> {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        int pendingBefore = messageBus.getPendingFutureCount();
+        Future<String> future = messageBus.sendEvent(new TestEvent());
+
+        // Act: Unregister MicroService1 while the event is still in its queue
+        messageBus.unregister(testMicroService1);
+
+        // Assert: The Future is released with no result instead of leaking
+        assertTrue(future.isDone(), "Futures of unhandled events should be resolved on unregister.");
+        assertNull(future.get(), "Unhandled events should resolve to null.");
+        assertEquals(pendingBefore, messageBus.getPendingFutureCount());
+    }
+
+    @Test
+    void testAwaitMessagesTakesQueuedMessagesInBatches() throws InterruptedException {
+        // Arrange: Queue five broadcasts for MicroService1
+        class TestBroadcast implements Broadcast {}
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService1);
+        List<Broadcast> sent = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestBroadcast broadcast = new TestBroadcast();
+            sent.add(broadcast);
+            messageBus.sendBroadcast(broadcast);
+        }
+
+        // Act: Take them in batches of at most three
+        List<Message> firstBatch = new ArrayList<>();
+        List<Message> secondBatch = new ArrayList<>();
+        int firstCount = messageBus.awaitMessages(testMicroService1, firstBatch, 3);
+        int secondCount = messageBus.awaitMessages(testMicroService1, secondBatch, 3);
+
+        // Assert: A full batch, then the rest, in the order they were sent
+        assertEquals(3, firstCount);
+        assertEquals(sent.subList(0, 3), firstBatch);
+        assertEquals(2, secondCount);
+        assertEquals(sent.subList(3, 5), secondBatch);
+    }
+
+    @Test
+    void testTerminatingMidBatchResolvesRemainingEvents() throws InterruptedException {
+        // Arrange: A service that terminates on the first event it handles, with three events queued
+        class TestEvent implements Event<String> {}
+        MicroService service = new MicroService("BatchService") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(TestEvent.class, event -> {
+                    complete(event, "Handled");
+                    terminate();
+                });
+            }
+        };
+        service.start();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(messageBus.sendEvent(new TestEvent()));
+        }
+        List<Message> batch = new ArrayList<>();
+        messageBus.awaitMessages(service, batch, 3);
+
+        // Act: Dispatch the whole batch
+        service.dispatchBatch(batch);
+        service.stop();
+
+        // Assert: The first event was handled, the rest of the batch was resolved with no result
+        assertTrue(service.isTerminated());
+        assertEquals("Handled", futures.get(0).get());
+        for (Future<String> future : futures.subList(1, 3)) {
+            assertTrue(future.isDone(), "Events left in a batch should be resolved when the service stops.");
+            assertNull(future.get());
+        }
+    }
+
+    @Test
+    void testLeastQueueDepthRoutesToShortestQueue() throws InterruptedException {
+        // Arrange: MicroService1 already has two queued broadcasts, MicroService2 has none
+        class TestEvent implements Event<String> {}
+        class TestBroadcast implements Broadcast {}
+        messageBus.setRoutingStrategy(TestEvent.class, RoutingStrategy.LEAST_QUEUE_DEPTH);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService1);
+        messageBus.sendBroadcast(new TestBroadcast());
+        messageBus.sendBroadcast(new TestBroadcast());
+
+        // Act: Send two events
+        TestEvent first = new TestEvent();
+        TestEvent second = new TestEvent();
+        messageBus.sendEvent(first);
+        messageBus.sendEvent(second);
+
+        // Assert: Both went to the idle MicroService2, which is still less busy after the first
+        assertSame(first, messageBus.awaitMessage(testMicroService2));
+        assertSame(second, messageBus.awaitMessage(testMicroService2));
+    }
+
+    @Test
+    void testPowerOfTwoChoicesAvoidsBusySubscriber() throws InterruptedException {
+        // Arrange: With two subscribers both are always sampled, so the idle one must be chosen
+        class TestEvent implements Event<String> {}
+        class TestBroadcast implements Broadcast {}
+        messageBus.setRoutingStrategy(TestEvent.class, RoutingStrategy.POWER_OF_TWO_CHOICES);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService2);
+        messageBus.sendBroadcast(new TestBroadcast());
+
+        // Act
+        TestEvent event = new TestEvent();
+        messageBus.sendEvent(event);
+
+        // Assert
+        assertSame(event, messageBus.awaitMessage(testMicroService1));
+    }
+
+    @Test
+    void testKeyAffinityRoutesEqualKeysToSameSubscriber() throws InterruptedException {
+        // Arrange: Three subscribers, and events keyed by object id
+        class KeyedTestEvent implements KeyedEvent<String> {
+            private final String key;
+
+            KeyedTestEvent(String key) {
+                this.key = key;
+            }
+
+            @Override
+            public Object getRoutingKey() {
+                return key;
+            }
+        }
+        MicroService testMicroService3 = new MicroService("TestMicroService3") {
+            @Override
+            protected void initialize() {
+                // No initialization logic for testing
+            }
+        };
+        messageBus.register(testMicroService3);
+        List<MicroService> subscribers = List.of(testMicroService1, testMicroService2, testMicroService3);
+        messageBus.setRoutingStrategy(KeyedTestEvent.class, RoutingStrategy.KEY_AFFINITY);
+        for (MicroService m : subscribers) {
+            messageBus.subscribeEvent(KeyedTestEvent.class, m);
+        }
+
+        // Act: Send every key twice, and record who received it
+        Map<String, MicroService> owners = new HashMap<>();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 30; i++) {
+                String key = "Object_" + i;
+                messageBus.sendEvent(new KeyedTestEvent(key));
+                MicroService receiver = receiverOf(subscribers);
+                // Assert: The same key always reaches the same subscriber
+                MicroService previous = owners.putIfAbsent(key, receiver);
+                assertTrue(previous == null || previous == receiver, "Key " + key + " moved between subscribers.");
+            }
+        }
+        assertEquals(3, new HashSet<>(owners.values()).size(), "Keys should be spread over all subscribers.");
+
+        // Act: Remove one subscriber, then send every key again
+        messageBus.unregister(testMicroService3);
+        for (int i = 0; i < 30; i++) {
+            String key = "Object_" + i;
+            messageBus.sendEvent(new KeyedTestEvent(key));
+            MicroService receiver = receiverOf(List.of(testMicroService1, testMicroService2));
+
+            // Assert: Only the keys of the removed subscriber moved
+            if (owners.get(key) != testMicroService3) {
+                assertSame(owners.get(key), receiver, "Key " + key + " should stay with its subscriber.");
+            }
+        }
+    }
+
+    @Test
+    void testUnregisterRemovesAllSubscriptionsOfService() {
+        // Arrange: MicroService1 subscribed to an event and a broadcast, MicroService2 only to the event
+        class TestEvent implements Event<String> {}
+        class TestBroadcast implements Broadcast {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+
+        // Act: Unregister MicroService1, then register it again without subscribing
+        messageBus.unregister(testMicroService1);
+        messageBus.register(testMicroService1);
+        for (int i = 0; i < 4; i++) {
+            messageBus.sendEvent(new TestEvent());
+        }
+        messageBus.sendBroadcast(new TestBroadcast());
+
+        // Assert: Its old subscriptions are gone, MicroService2 still gets every event
+        assertTrue(messageBus.getMailbox(testMicroService1).isEmpty(), "Old subscriptions should not survive unregister.");
+        assertEquals(4, messageBus.getMailbox(testMicroService2).size());
+    }
+
+    @Test
+    void testSendEventsReturnsFuturesInOrder() throws InterruptedException {
+        // Arrange: Two subscribers sharing an event type, and an event type nobody subscribed to
+        class TestEvent implements Event<String> {}
+        class UnsubscribedEvent implements Event<String> {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+        List<Event<String>> events = List.of(new TestEvent(), new TestEvent(), new UnsubscribedEvent(),
+                new TestEvent(), new TestEvent());
+
+        // Act
+        List<Future<String>> futures = messageBus.sendEvents(events);
+
+        // Assert: One Future per event, null where there is no subscriber
+        assertEquals(5, futures.size());
+        assertNull(futures.get(2));
+        // Round-robin as with sendEvent, each subscriber receives its events in order
+        assertSame(events.get(0), messageBus.awaitMessage(testMicroService1));
+        assertSame(events.get(3), messageBus.awaitMessage(testMicroService1));
+        assertSame(events.get(1), messageBus.awaitMessage(testMicroService2));
+        assertSame(events.get(4), messageBus.awaitMessage(testMicroService2));
+        // Completing an event resolves the Future at its position
+        messageBus.complete(events.get(3), "Fourth");
+        assertEquals("Fourth", futures.get(3).get());
+        assertFalse(futures.get(0).isDone());
+    }
+
+    @Test
+    void testSendBroadcastsDeliversAllInOrder() throws InterruptedException {
+        // Arrange: MicroService1 subscribed to two broadcast types, MicroService2 to one
+        class FirstBroadcast implements Broadcast {}
+        class SecondBroadcast implements Broadcast {}
+        messageBus.subscribeBroadcast(FirstBroadcast.class, testMicroService1);
+        messageBus.subscribeBroadcast(SecondBroadcast.class, testMicroService1);
+        messageBus.subscribeBroadcast(SecondBroadcast.class, testMicroService2);
+        List<Broadcast> broadcasts = List.of(new FirstBroadcast(), new SecondBroadcast(), new FirstBroadcast());
+
+        // Act
+        messageBus.sendBroadcasts(broadcasts);
+
+        // Assert: Every subscriber received its broadcasts in sending order
+        List<Message> received = new ArrayList<>();
+        messageBus.awaitMessages(testMicroService1, received, 10);
+        assertEquals(broadcasts, received);
+        assertSame(broadcasts.get(1), messageBus.awaitMessage(testMicroService2));
+        assertTrue(messageBus.getMailbox(testMicroService2).isEmpty());
+    }
+
+    @Test
+    void testSendOneWayTracksNoFuture() throws InterruptedException {
+        // Arrange
+        class TestEvent implements Event<String> {}
+        class UnsubscribedEvent implements Event<String> {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        TestEvent event = new TestEvent();
+        int pendingBefore = messageBus.getPendingFutureCount();
+
+        // Act
+        boolean sent = messageBus.sendOneWay(event);
+
+        // Assert: The event is delivered, but no Future is kept for it
+        assertTrue(sent);
+        assertFalse(messageBus.sendOneWay(new UnsubscribedEvent()), "No subscriber, nothing is sent.");
+        assertEquals(pendingBefore, messageBus.getPendingFutureCount());
+        assertSame(event, messageBus.awaitMessage(testMicroService1));
+        // Completing the event has no effect
+        messageBus.complete(event, "Ignored");
+        assertEquals(pendingBefore, messageBus.getPendingFutureCount());
+    }
+
+    @Test
+    void testSendEventsOneWayDeliversInOrder() throws InterruptedException {
+        // Arrange: Two subscribers sharing an event type, and an event type nobody subscribed to
+        class TestEvent implements Event<String> {}
+        class UnsubscribedEvent implements Event<String> {}
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService2);
+        List<Event<String>> events = List.of(new TestEvent(), new TestEvent(), new UnsubscribedEvent(),
+                new TestEvent(), new TestEvent());
+        int pendingBefore = messageBus.getPendingFutureCount();
+
+        // Act
+        int sent = messageBus.sendEventsOneWay(events);
+
+        // Assert: Round-robin as with sendEvents, with no Futures
+        assertEquals(4, sent);
+        assertEquals(pendingBefore, messageBus.getPendingFutureCount());
+        assertSame(events.get(0), messageBus.awaitMessage(testMicroService1));
+        assertSame(events.get(3), messageBus.awaitMessage(testMicroService1));
+        assertSame(events.get(1), messageBus.awaitMessage(testMicroService2));
+        assertSame(events.get(4), messageBus.awaitMessage(testMicroService2));
+    }
+
+    @Test
+    void testTopicBroadcastsKeepOrderWithEvents() throws InterruptedException {
+        // Arrange: Two subscribers of a topic broadcast type, one of them also subscribed to an event type
+        class TopicBroadcast implements Broadcast {}
+        class TestEvent implements Event<String> {}
+        messageBus.setBroadcastMode(TopicBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.subscribeBroadcast(TopicBroadcast.class, testMicroService1);
+        messageBus.subscribeBroadcast(TopicBroadcast.class, testMicroService2);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService1);
+        TestEvent first = new TestEvent();
+        TopicBroadcast broadcast = new TopicBroadcast();
+        TestEvent second = new TestEvent();
+
+        // Act
+        messageBus.sendEvent(first);
+        messageBus.sendBroadcast(broadcast);
+        messageBus.sendEvent(second);
+
+        // Assert: The broadcast was not queued by its sender, yet each subscriber reads it in sending order
+        assertEquals(0, messageBus.getMailbox(testMicroService2).size());
+        assertFalse(messageBus.getMailbox(testMicroService2).isEmpty(), "The unread broadcast should count as a message.");
+        List<Message> received = new ArrayList<>();
+        messageBus.awaitMessages(testMicroService1, received, 10);
+        assertEquals(List.of(first, broadcast, second), received);
+        assertSame(broadcast, messageBus.awaitMessage(testMicroService2));
+        assertTrue(messageBus.getMailbox(testMicroService2).isEmpty());
+    }
+
+    @Test
+    void testTopicBroadcastsOfSeveralTypesKeepSendingOrder() throws InterruptedException {
+        // Arrange: A subscriber of two topic broadcast types
+        class FirstBroadcast implements Broadcast {}
+        class SecondBroadcast implements Broadcast {}
+        messageBus.setBroadcastMode(FirstBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.setBroadcastMode(SecondBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.subscribeBroadcast(FirstBroadcast.class, testMicroService1);
+        messageBus.subscribeBroadcast(SecondBroadcast.class, testMicroService1);
+        // More broadcasts than fit in a single segment of a topic's log
+        List<Broadcast> broadcasts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            broadcasts.add(i % 3 == 0 ? new SecondBroadcast() : new FirstBroadcast());
+        }
+
+        // Act
+        messageBus.sendBroadcasts(broadcasts);
+
+        // Assert
+        List<Message> received = new ArrayList<>();
+        while (received.size() < broadcasts.size()) {
+            messageBus.awaitMessages(testMicroService1, received, 64);
+        }
+        assertEquals(broadcasts, received);
+    }
+
+    @Test
+    void testAwaitMessageWakesUpForTopicBroadcast() throws InterruptedException {
+        // Arrange: A subscriber waiting for a message
+        class TopicBroadcast implements Broadcast {}
+        messageBus.setBroadcastMode(TopicBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.subscribeBroadcast(TopicBroadcast.class, testMicroService1);
+        List<Message> received = new ArrayList<>();
+        Thread receiver = new Thread(() -> {
+            try {
+                received.add(messageBus.awaitMessage(testMicroService1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        receiver.start();
+        Thread.sleep(50);
+
+        // Act
+        TopicBroadcast broadcast = new TopicBroadcast();
+        messageBus.sendBroadcast(broadcast);
+        receiver.join(5000);
+
+        // Assert
+        assertFalse(receiver.isAlive(), "Publishing to the topic should wake the subscriber.");
+        assertEquals(List.of(broadcast), received);
+    }
+
+    @Test
+    void testUnregisterStopsReadingTopics() {
+        // Arrange
+        class TopicBroadcast implements Broadcast {}
+        messageBus.setBroadcastMode(TopicBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.subscribeBroadcast(TopicBroadcast.class, testMicroService1);
+        messageBus.subscribeBroadcast(TopicBroadcast.class, testMicroService2);
+        Mailbox mailbox = messageBus.getMailbox(testMicroService1);
+
+        // Act
+        messageBus.unregister(testMicroService1);
+        messageBus.sendBroadcast(new TopicBroadcast());
+
+        // Assert: Only the remaining subscriber reads the broadcast
+        assertTrue(mailbox.isEmpty());
+        assertFalse(messageBus.getMailbox(testMicroService2).isEmpty());
+    }
+
+    @Test
+    void testFilteredBroadcastSubscriptionsSkipRejectedBroadcasts() throws InterruptedException {
+        // Arrange: MicroService1 accepts only even broadcasts, in both broadcast modes
+        class NumberBroadcast implements Broadcast {
+            final int number;
+
+            NumberBroadcast(int number) {
+                this.number = number;
+            }
+        }
+        class TopicNumberBroadcast extends NumberBroadcast {
+            TopicNumberBroadcast(int number) {
+                super(number);
+            }
+        }
+        messageBus.setBroadcastMode(TopicNumberBroadcast.class, BroadcastMode.TOPIC);
+        messageBus.subscribeBroadcast(NumberBroadcast.class, testMicroService1, b -> b.number % 2 == 0);
+        messageBus.subscribeBroadcast(TopicNumberBroadcast.class, testMicroService1, b -> b.number % 2 == 0);
+        messageBus.subscribeBroadcast(NumberBroadcast.class, testMicroService2);
+        List<Broadcast> broadcasts = List.of(new NumberBroadcast(1), new NumberBroadcast(2),
+                new TopicNumberBroadcast(3), new TopicNumberBroadcast(4));
+
+        // Act
+        for (Broadcast broadcast : broadcasts) {
+            messageBus.sendBroadcast(broadcast);
+        }
+
+        // Assert: Rejected broadcasts were never queued for MicroService1, others still receive them
+        List<Message> received = new ArrayList<>();
+        messageBus.awaitMessages(testMicroService1, received, 10);
+        assertEquals(List.of(broadcasts.get(1), broadcasts.get(3)), received);
+        assertTrue(messageBus.getMailbox(testMicroService1).isEmpty());
+        assertEquals(2, messageBus.getMailbox(testMicroService2).size());
+    }
+
+    @Test
+    void testFilteredEventSubscriptionsRouteToAcceptingSubscriber() throws InterruptedException {
+        // Arrange: MicroService1 accepts only urgent events, MicroService2 only the others
+        class TaskEvent implements Event<String> {
+            final boolean urgent;
+
+            TaskEvent(boolean urgent) {
+                this.urgent = urgent;
+            }
+        }
+        class UrgentOnlyEvent implements Event<String> {}
+        messageBus.subscribeEvent(TaskEvent.class, testMicroService1, e -> e.urgent);
+        messageBus.subscribeEvent(TaskEvent.class, testMicroService2, e -> !e.urgent);
+        messageBus.subscribeEvent(UrgentOnlyEvent.class, testMicroService1, e -> false);
+
+        // Act
+        List<TaskEvent> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            TaskEvent event = new TaskEvent(true);
+            events.add(event);
+            assertNotNull(messageBus.sendEvent(event));
+        }
+        Future<String> rejected = messageBus.sendEvent(new UrgentOnlyEvent());
+
+        // Assert: Every urgent event reached MicroService1 regardless of round-robin order
+        assertNull(rejected, "An event no subscriber accepts is not sent.");
+        assertEquals(4, messageBus.getMailbox(testMicroService1).size());
+        assertTrue(messageBus.getMailbox(testMicroService2).isEmpty());
+        for (TaskEvent event : events) {
+            assertSame(event, messageBus.awaitMessage(testMicroService1));
+        }
+    }
+
+    @Test
+    void testDeclarativeBroadcastFilters() {
+        Predicate<TerminatedBroadcast> fromTimeService = TerminatedBroadcast.from("TimeService");
+        assertTrue(fromTimeService.test(new TerminatedBroadcast("TimeService")));
+        assertFalse(fromTimeService.test(new TerminatedBroadcast("Camera 1")));
+
+        Predicate<TickBroadcast> everyThird = TickBroadcast.every(3);
+        assertFalse(everyThird.test(new TickBroadcast(1)));
+        assertTrue(everyThird.test(new TickBroadcast(3)));
+        assertTrue(everyThird.test(new TickBroadcast(6)));
+        assertThrows(IllegalArgumentException.class, () -> TickBroadcast.every(0));
+    }
+
+    // Returns the single subscriber among candidates that has a queued message, after taking it
+    private MicroService receiverOf(List<MicroService> candidates) throws InterruptedException {
+        for (MicroService m : candidates) {
+            if (!messageBus.getMailbox(m).isEmpty()) {
+                messageBus.awaitMessage(m);
+                return m;
+            }
+        }
+        fail("The event was not delivered.");
+        return null;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
 }
@@ -0,0 +1,165 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+class MessagePoolTest {
+
+    private static class PooledBroadcast extends PooledMessage implements Broadcast {
+        String payload;
+
+        @Override
+        protected void clear() {
+            payload = null;
+        }
+    }
+
+    private static class PooledEvent extends PooledMessage implements Event<Boolean> {}
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+    private final List<MicroService> services = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MessagePool.setEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MessagePool.setEnabled(false);
+        services.forEach(MicroService::stop);
+    }
+
+    // Starts a service with the given subscriptions, driven directly through its mailbox
+    private MicroService startService(String name, Consumer<MicroService> subscriptions) {
+        MicroService service = new MicroService(name) {
+            @Override
+            protected void initialize() {
+                // Subscribed through the message bus below
+            }
+        };
+        service.start();
+        subscriptions.accept(service);
+        services.add(service);
+        return service;
+    }
+
+    // Takes and handles everything queued for service, as its event loop would
+    private void handleQueued(MicroService service) {
+        List<Message> batch = new ArrayList<>();
+        messageBus.getMailbox(service).drainTo(batch);
+        service.dispatchBatch(batch);
+    }
+
+    @Test
+    void testBroadcastIsRecycledOnceEverySubscriberHandledIt() {
+        // Arrange
+        MessagePool<PooledBroadcast> pool = new MessagePool<>(PooledBroadcast::new, 4);
+        MicroService first = startService("PoolFirst", m -> messageBus.subscribeBroadcast(PooledBroadcast.class, m));
+        MicroService second = startService("PoolSecond", m -> messageBus.subscribeBroadcast(PooledBroadcast.class, m));
+        PooledBroadcast broadcast = pool.acquire();
+        broadcast.payload = "tick";
+
+        // Act & Assert: Still referenced by the second subscriber after the first handled it
+        messageBus.sendBroadcast(broadcast);
+        handleQueued(first);
+        assertEquals(0, pool.getFreeCount());
+        assertEquals("tick", broadcast.payload);
+        handleQueued(second);
+        assertEquals(1, pool.getFreeCount());
+        assertNull(broadcast.payload, "A recycled message should be cleared.");
+
+        // The next acquire reuses it
+        assertSame(broadcast, pool.acquire());
+        assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    void testRetainedEventIsRecycledOnRelease() {
+        // Arrange: A handler keeping the event for later
+        MessagePool<PooledEvent> pool = new MessagePool<>(PooledEvent::new, 4);
+        List<PooledEvent> kept = new ArrayList<>();
+        MicroService handler = new MicroService("PoolHandler") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(PooledEvent.class, e -> {
+                    e.retain();
+                    kept.add(e);
+                });
+            }
+        };
+        handler.start();
+        services.add(handler);
+        PooledEvent event = pool.acquire();
+
+        // Act
+        messageBus.sendOneWay(event);
+        handleQueued(handler);
+
+        // Assert: Only recycled once the handler released it
+        assertEquals(0, pool.getFreeCount());
+        kept.remove(0).release();
+        assertEquals(1, pool.getFreeCount());
+        assertThrows(IllegalStateException.class, event::release, "Releasing too often should fail.");
+    }
+
+    @Test
+    void testUndeliveredAndDroppedMessagesAreRecycled() {
+        // Arrange: No subscribers for the event, and a full mailbox dropping new broadcasts
+        MessagePool<PooledEvent> eventPool = new MessagePool<>(PooledEvent::new, 4);
+        MessagePool<PooledBroadcast> broadcastPool = new MessagePool<>(PooledBroadcast::new, 4);
+        messageBus.setMailboxConfig("PoolFull", new MailboxConfig(1, OverflowPolicy.DROP_NEWEST));
+        MicroService full = startService("PoolFull", m -> messageBus.subscribeBroadcast(PooledBroadcast.class, m));
+
+        // Act
+        assertFalse(messageBus.sendOneWay(eventPool.acquire()));
+        messageBus.sendBroadcast(broadcastPool.acquire());
+        messageBus.sendBroadcast(broadcastPool.acquire()); // Dropped
+
+        // Assert
+        assertEquals(1, eventPool.getFreeCount(), "An event nobody subscribed to should be recycled.");
+        assertEquals(1, broadcastPool.getFreeCount(), "A dropped broadcast should be recycled.");
+        handleQueued(full);
+        assertEquals(2, broadcastPool.getFreeCount());
+    }
+
+    @Test
+    void testTopicBroadcastsAreNotRecycled() {
+        // Arrange
+        class TopicBroadcast extends PooledMessage implements Broadcast {}
+        MessagePool<TopicBroadcast> pool = new MessagePool<>(TopicBroadcast::new, 4);
+        messageBus.setBroadcastMode(TopicBroadcast.class, BroadcastMode.TOPIC);
+        MicroService reader = startService("PoolTopicReader", m -> messageBus.subscribeBroadcast(TopicBroadcast.class, m));
+
+        // Act
+        messageBus.sendBroadcast(pool.acquire());
+        handleQueued(reader);
+
+        // Assert
+        assertEquals(0, pool.getFreeCount(), "The topic's log still references the broadcast.");
+    }
+
+    @Test
+    void testDisabledPoolAlwaysCreatesMessages() {
+        // Arrange
+        MessagePool.setEnabled(false);
+        MessagePool<PooledBroadcast> pool = new MessagePool<>(PooledBroadcast::new, 4);
+        MicroService subscriber = startService("PoolDisabled", m -> messageBus.subscribeBroadcast(PooledBroadcast.class, m));
+        PooledBroadcast broadcast = pool.acquire();
+
+        // Act
+        messageBus.sendBroadcast(broadcast);
+        handleQueued(subscriber);
+
+        // Assert
+        assertEquals(0, pool.getFreeCount());
+        assertNotSame(broadcast, pool.acquire());
+    }
+}
@@ -0,0 +1,176 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.GurionRockRunner;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the bytes allocated by a full {@link GurionRockRunner} run, with and without the
+ * "MessagePooling" configuration key. The scenario is generated: two cameras detecting objects at
+ * every tick, two LiDAR workers tracking them and a pose for every tick, with ticks sent as fast
+ * as possible.
+ * <p>
+ * Each run is a separate JVM, since the simulation's objects are singletons. It counts the bytes
+ * allocated by all of its threads, and by the service threads alone - without parsing the input
+ * and writing the output on the main thread. Both include the console output of the services,
+ * which is the same in both runs.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class MessagePoolingBenchmark {
+
+    private static final int TICKS = 2_000;
+    private static final int ROUNDS = 3;
+    private static final String RESULT_PREFIX = "MessagePoolingBenchmark result: ";
+
+    @Test
+    void benchmarkMessagePooling() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("pooling-benchmark");
+        writeScenario(directory);
+
+        System.out.println("MessagePoolingBenchmark: " + TICKS + " ticks per run");
+        run(directory, false); // Warm up the file cache
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (boolean pooling : new boolean[] {false, true}) {
+                String[] result = run(directory, pooling);
+                long allocated = Long.parseLong(result[0]);
+                long byServices = Long.parseLong(result[1]);
+                System.out.printf("  round %d  pooling=%-5s  allocated=%6.1f MB  by services=%6.1f MB (%6.1f KB/tick)  young GCs=%s%n",
+                        round, pooling, allocated / 1e6, byServices / 1e6, byServices / 1e3 / TICKS, result[2]);
+            }
+        }
+    }
+
+    // Runs the scenario in a new JVM and returns the bytes allocated by all threads and by the
+    // service threads, and the young collection count
+    private String[] run(Path directory, boolean pooling) throws IOException, InterruptedException {
+        Path config = directory.resolve(pooling ? "pooled_configuration.json" : "configuration.json");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Scenario.class.getName(), config.toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String result = null;
+        try (BufferedReader errors = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = errors.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line.substring(RESULT_PREFIX.length());
+                }
+            }
+        }
+        assertEquals(0, process.waitFor(), "The simulation should exit normally.");
+        assertNotNull(result, "The simulation should report its allocations.");
+        return result.split(" ");
+    }
+
+    // Writes the configuration files and the camera, LiDAR and pose data of the scenario
+    private void writeScenario(Path directory) throws IOException {
+        StringBuilder cameras = new StringBuilder("{");
+        StringBuilder lidar = new StringBuilder("[");
+        for (int camera = 1; camera <= 2; camera++) {
+            cameras.append(camera > 1 ? "," : "").append("\"camera").append(camera).append("\":[");
+            for (int tick = 1; tick < TICKS - 10; tick++) {
+                String id = "Object_" + camera + "_" + (tick % 50);
+                cameras.append(tick > 1 ? "," : "")
+                        .append("{\"time\":").append(tick)
+                        .append(",\"detectedObjects\":[{\"id\":\"").append(id).append("\",\"description\":\"Object\"}]}");
+                lidar.append(lidar.length() > 1 ? "," : "")
+                        .append("{\"time\":").append(tick).append(",\"id\":\"").append(id)
+                        .append("\",\"cloudPoints\":[[").append(tick % 7).append(".5,1.0,0.1],[2.0,").append(tick % 5).append(".5,0.1]]}");
+            }
+            cameras.append("]");
+        }
+        cameras.append("}");
+        lidar.append("]");
+
+        StringBuilder poses = new StringBuilder("[");
+        for (int tick = 1; tick <= TICKS; tick++) {
+            poses.append(tick > 1 ? "," : "")
+                    .append("{\"time\":").append(tick).append(",\"x\":").append(tick % 10)
+                    .append(".0,\"y\":1.0,\"yaw\":").append(tick % 360).append(".0}");
+        }
+        poses.append("]");
+
+        Files.writeString(directory.resolve("camera_data.json"), cameras);
+        Files.writeString(directory.resolve("lidar_data.json"), lidar);
+        Files.writeString(directory.resolve("pose_data.json"), poses);
+        for (boolean pooling : new boolean[] {false, true}) {
+            String config = "{\"Cameras\":{\"CamerasConfigurations\":["
+                    + "{\"id\":1,\"frequency\":0,\"camera_key\":\"camera1\"},"
+                    + "{\"id\":2,\"frequency\":1,\"camera_key\":\"camera2\"}],"
+                    + "\"camera_datas_path\":\"./camera_data.json\"},"
+                    + "\"LiDarWorkers\":{\"LidarConfigurations\":[{\"id\":1,\"frequency\":0},{\"id\":2,\"frequency\":1}],"
+                    + "\"lidars_data_path\":\"./lidar_data.json\"},"
+                    + "\"poseJsonFile\":\"./pose_data.json\","
+                    + "\"TickTime\":0,\"Duration\":" + TICKS + ","
+                    + "\"MessagePooling\":" + pooling + "}";
+            Files.writeString(directory.resolve(pooling ? "pooled_configuration.json" : "configuration.json"), config);
+        }
+    }
+
+    /**
+     * Runs {@link GurionRockRunner} on the configuration file given as the first argument, and
+     * reports the bytes allocated by all threads and by the other threads than the main thread,
+     * and the number of young collections on stderr.
+     */
+    static class Scenario {
+
+        public static void main(String[] args) throws InterruptedException {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            // Threads end during the run, so their counts are sampled while they live
+            Map<Long, Long> allocatedByThread = new HashMap<>();
+            Thread sampler = new Thread(() -> {
+                long self = Thread.currentThread().getId();
+                while (!Thread.currentThread().isInterrupted()) {
+                    sample(threads, allocatedByThread, self);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                sample(threads, allocatedByThread, self);
+            });
+            sampler.start();
+            GurionRockRunner.main(args);
+            sampler.interrupt();
+            sampler.join();
+
+            long allocated = allocatedByThread.values().stream().mapToLong(Long::longValue).sum();
+            long byServices = allocated - allocatedByThread.getOrDefault(Thread.currentThread().getId(), 0L);
+            long youngCollections = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector.getName().contains("Young") || collector.getName().contains("Scavenge")
+                        || collector.getName().equals("Copy")) {
+                    youngCollections += collector.getCollectionCount();
+                }
+            }
+            System.err.println(RESULT_PREFIX + allocated + " " + byServices + " " + youngCollections);
+        }
+
+        // Records the bytes allocated so far by every live thread except the sampler
+        private static void sample(com.sun.management.ThreadMXBean threads, Map<Long, Long> allocatedByThread, long self) {
+            long[] ids = threads.getAllThreadIds();
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != self && allocated[i] > 0) {
+                    allocatedByThread.merge(ids[i], allocated[i], Math::max);
+                }
+            }
+        }
+    }
+}
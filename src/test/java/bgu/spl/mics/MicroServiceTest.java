@@ -0,0 +1,94 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class MicroServiceTest {
+
+    @Test
+    void testDispatchCallsCallbackOfExactType() {
+        // Arrange: A service subscribed to two broadcast types
+        class FirstBroadcast implements Broadcast {}
+        class SecondBroadcast implements Broadcast {}
+        class UnsubscribedBroadcast implements Broadcast {}
+        List<String> calls = new ArrayList<>();
+        MicroService service = new MicroService("DispatchService") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(FirstBroadcast.class, broadcast -> calls.add("first"));
+                subscribeBroadcast(SecondBroadcast.class, broadcast -> calls.add("second"));
+            }
+        };
+        service.start();
+
+        // Act
+        service.dispatch(new SecondBroadcast());
+        service.dispatch(new UnsubscribedBroadcast());
+        service.dispatch(new FirstBroadcast());
+
+        // Assert: Each message reached its own callback, unknown types are ignored
+        assertEquals(List.of("second", "first"), calls);
+        service.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked") // Each anonymous class is a Broadcast
+    void testDispatchWithManySubscribedTypes() {
+        // Arrange: A service subscribed to more types than dispatch scans, each an anonymous class
+        List<Broadcast> subscribed = List.of(
+                new Broadcast() {}, new Broadcast() {}, new Broadcast() {}, new Broadcast() {},
+                new Broadcast() {}, new Broadcast() {}, new Broadcast() {}, new Broadcast() {},
+                new Broadcast() {}, new Broadcast() {}, new Broadcast() {}, new Broadcast() {});
+        class UnsubscribedBroadcast implements Broadcast {}
+        List<Integer> calls = new ArrayList<>();
+        MicroService service = new MicroService("HashedDispatchService") {
+            @Override
+            protected void initialize() {
+                for (int i = 0; i < subscribed.size(); i++) {
+                    int index = i;
+                    subscribeBroadcast((Class<Broadcast>) subscribed.get(i).getClass(), broadcast -> calls.add(index));
+                }
+            }
+        };
+        service.start();
+
+        // Act
+        for (int i = subscribed.size() - 1; i >= 0; i--) {
+            service.dispatch(subscribed.get(i));
+        }
+        service.dispatch(new UnsubscribedBroadcast());
+
+        // Assert: Each message reached its own callback, unknown types are ignored
+        assertEquals(List.of(11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0), calls);
+        service.stop();
+    }
+
+    @Test
+    void testSubscribingFromCallbackUpdatesDispatch() {
+        // Arrange: A service that subscribes to a second type only when it handles the first
+        class EnableBroadcast implements Broadcast {}
+        class LateBroadcast implements Broadcast {}
+        List<String> calls = new ArrayList<>();
+        MicroService service = new MicroService("LateSubscriber") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(EnableBroadcast.class,
+                        broadcast -> subscribeBroadcast(LateBroadcast.class, late -> calls.add("late")));
+            }
+        };
+        service.start();
+
+        // Act
+        service.dispatch(new LateBroadcast()); // Not subscribed yet
+        service.dispatch(new EnableBroadcast());
+        service.dispatch(new LateBroadcast());
+
+        // Assert: Only the message sent after the subscription was handled
+        assertEquals(List.of("late"), calls);
+        service.stop();
+    }
+}
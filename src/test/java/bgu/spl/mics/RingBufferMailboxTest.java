@@ -0,0 +1,300 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RingBufferMailboxTest {
+
+    private static class TickMessage implements Broadcast {}
+    @DeliveryPriority(MessagePriority.HIGH)
+    private static class ControlMessage implements Broadcast {}
+    @DeliveryPriority(MessagePriority.LOW)
+    private static class BulkMessage implements Broadcast {}
+    @Undroppable
+    private static class StopMessage implements Broadcast {}
+
+    @Test
+    void testHigherPriorityMessagesAreTakenFirst() throws InterruptedException {
+        // Arrange: Messages of all priorities, sent in mixed order
+        Mailbox mailbox = ringBuffer(8, OverflowPolicy.BLOCK, WaitStrategy.PARK, new MailboxCounters());
+        Message bulk1 = new BulkMessage();
+        Message tick1 = new TickMessage();
+        Message control = new ControlMessage();
+        Message bulk2 = new BulkMessage();
+        Message tick2 = new TickMessage();
+        for (Message message : List.of(bulk1, tick1, control, bulk2, tick2)) {
+            mailbox.add(message);
+        }
+
+        // Act & Assert: By priority, and in sending order within a priority
+        assertEquals(5, mailbox.size());
+        assertSame(control, mailbox.take());
+        assertSame(tick1, mailbox.poll());
+        assertEquals(List.of(tick2, bulk1, bulk2), drain(mailbox));
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    void testDropNewestRejectsNewMessages() {
+        // Arrange: A full mailbox of capacity 2
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = ringBuffer(2, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK, counters);
+        Message first = new TickMessage();
+        Message second = new TickMessage();
+        Message third = new TickMessage();
+        mailbox.add(first);
+        mailbox.add(second);
+
+        // Act
+        Message dropped = mailbox.add(third);
+
+        // Assert: The new message was not queued
+        assertSame(third, dropped);
+        assertEquals(List.of(first, second), drain(mailbox));
+        assertEquals(1, counters.getDroppedNewest());
+        assertEquals(2, counters.getHighWaterMark());
+    }
+
+    @Test
+    void testDropNewestWaitsForRoomForUndroppableMessages() throws InterruptedException {
+        // Arrange: A full mailbox, and a sender trying to add an undroppable message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = ringBuffer(1, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK, counters);
+        Message tick = new TickMessage();
+        Message stop = new StopMessage();
+        mailbox.add(tick);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            assertNull(mailbox.add(stop));
+            added.countDown();
+        });
+        sender.start();
+
+        // Assert: The sender waits instead of dropping its message
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS), "The sender should wait for room.");
+
+        // Act: Make room
+        assertSame(tick, mailbox.take());
+
+        // Assert: The undroppable message was queued
+        assertTrue(added.await(5, TimeUnit.SECONDS), "The sender should continue once there is room.");
+        assertSame(stop, mailbox.take());
+        assertEquals(0, counters.getDroppedNewest());
+        sender.join();
+    }
+
+    @Test
+    void testBlockWaitsForRoom() throws InterruptedException {
+        // Arrange: A full mailbox of capacity 1, and a sender trying to add another message
+        MailboxCounters counters = new MailboxCounters();
+        Mailbox mailbox = ringBuffer(1, OverflowPolicy.BLOCK, WaitStrategy.PARK, counters);
+        Message first = new TickMessage();
+        Message second = new TickMessage();
+        mailbox.add(first);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            mailbox.add(second);
+            added.countDown();
+        });
+        sender.start();
+
+        // Assert: The sender waits while the mailbox is full
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS), "The sender should wait for room.");
+
+        // Act: Make room
+        assertSame(first, mailbox.take());
+
+        // Assert: The sender completed, nothing was lost
+        assertTrue(added.await(5, TimeUnit.SECONDS), "The sender should continue once there is room.");
+        assertSame(second, mailbox.take());
+        assertEquals(1, counters.getBlockedSends());
+        sender.join();
+    }
+
+    @Test
+    void testEveryWaitStrategyWakesTheReceiver() throws InterruptedException {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            // Arrange: A receiver waiting on an empty mailbox, long enough to stop spinning
+            Mailbox mailbox = ringBuffer(4, OverflowPolicy.BLOCK, waitStrategy, new MailboxCounters());
+            List<Message> taken = new ArrayList<>();
+            Thread receiver = new Thread(() -> {
+                try {
+                    taken.add(mailbox.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            receiver.start();
+            Thread.sleep(50);
+
+            // Act
+            Message message = new TickMessage();
+            mailbox.add(message);
+            receiver.join(5000);
+
+            // Assert
+            assertFalse(receiver.isAlive(), waitStrategy + " should wake the receiver.");
+            assertEquals(List.of(message), taken);
+        }
+    }
+
+    @Test
+    void testTakeIsInterruptible() throws InterruptedException {
+        // Arrange: A receiver parked on an empty mailbox
+        Mailbox mailbox = ringBuffer(4, OverflowPolicy.BLOCK, WaitStrategy.PARK, new MailboxCounters());
+        List<Boolean> interrupted = new ArrayList<>();
+        Thread receiver = new Thread(() -> {
+            try {
+                mailbox.take();
+            } catch (InterruptedException e) {
+                interrupted.add(true);
+            }
+        });
+        receiver.start();
+        Thread.sleep(50);
+
+        // Act
+        receiver.interrupt();
+        receiver.join(5000);
+
+        // Assert
+        assertFalse(receiver.isAlive(), "Interrupting the receiver should end take().");
+        assertEquals(List.of(true), interrupted);
+    }
+
+    @Test
+    void testCloseReleasesBlockedSenders() throws InterruptedException {
+        // Arrange: A sender waiting on a full mailbox
+        Mailbox mailbox = ringBuffer(1, OverflowPolicy.BLOCK, WaitStrategy.PARK, new MailboxCounters());
+        Message first = new TickMessage();
+        mailbox.add(first);
+        Message second = new TickMessage();
+        List<Message> returned = new ArrayList<>();
+        Thread sender = new Thread(() -> returned.add(mailbox.add(second)));
+        sender.start();
+
+        // Act: Close the mailbox, as unregister does
+        Thread.sleep(50);
+        mailbox.close();
+        sender.join(5000);
+
+        // Assert: The sender got its message back, the queued message can still be drained
+        assertFalse(sender.isAlive(), "Closing the mailbox should release blocked senders.");
+        assertEquals(List.of(second), returned);
+        assertEquals(List.of(first), drain(mailbox));
+    }
+
+    @Test
+    void testConcurrentSendersLoseNothing() throws InterruptedException {
+        // Arrange: Several senders sharing a small mailbox, so they keep waiting for room
+        int senders = 4;
+        int messagesPerSender = 10_000;
+        Mailbox mailbox = ringBuffer(16, OverflowPolicy.BLOCK, WaitStrategy.SPIN_THEN_YIELD, new MailboxCounters());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < messagesPerSender; j++) {
+                    mailbox.add(new TickMessage());
+                }
+            }));
+        }
+
+        // Act
+        threads.forEach(Thread::start);
+        Set<Message> received = new HashSet<>();
+        List<Message> batch = new ArrayList<>();
+        while (received.size() < senders * messagesPerSender) {
+            mailbox.takeBatch(batch, 64);
+            received.addAll(batch);
+            batch.clear();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert: Every message arrived exactly once
+        assertEquals(senders * messagesPerSender, received.size());
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    void testTopicBroadcastsAreReadInOrderWithMessages() throws InterruptedException {
+        // Arrange: A mailbox reading a topic, with a receiver waiting on it
+        Mailbox mailbox = ringBuffer(8, OverflowPolicy.BLOCK, WaitStrategy.PARK, new MailboxCounters());
+        BroadcastTopic topic = new BroadcastTopic(new AtomicLong());
+        topic.subscribe(mailbox, null);
+        Message first = new TickMessage();
+        Broadcast broadcast = new TickMessage();
+        Message second = new TickMessage();
+        List<Message> taken = new ArrayList<>();
+        Thread receiver = new Thread(() -> {
+            try {
+                taken.add(mailbox.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        receiver.start();
+        Thread.sleep(50);
+
+        // Act: The waiting receiver is woken by the topic, then a sender reads the topic ahead of its message
+        topic.publish(broadcast);
+        receiver.join(5000);
+        mailbox.add(first);
+        topic.publish(broadcast);
+        mailbox.add(second);
+
+        // Assert
+        assertFalse(receiver.isAlive(), "Publishing to the topic should wake the receiver.");
+        assertEquals(List.of(broadcast), taken);
+        assertEquals(List.of(first, broadcast, second), drain(mailbox));
+    }
+
+    @Test
+    void testRegisterCreatesConfiguredMailbox() {
+        // Arrange
+        MessageBusImpl messageBus = MessageBusImpl.getInstance();
+        messageBus.setMailboxConfig("RingBufferService",
+                new MailboxConfig(64, OverflowPolicy.BLOCK, MailboxType.RING_BUFFER, WaitStrategy.PARK));
+        MicroService service = new MicroService("RingBufferService") {
+            @Override
+            protected void initialize() {
+                // Not started
+            }
+        };
+
+        // Act
+        messageBus.register(service);
+
+        // Assert
+        assertInstanceOf(RingBufferMailbox.class, messageBus.getMailbox(service));
+        messageBus.unregister(service);
+    }
+
+    @Test
+    void testUnsupportedOverflowPolicyIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MailboxConfig(4, OverflowPolicy.DROP_OLDEST, MailboxType.RING_BUFFER, WaitStrategy.PARK));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MailboxConfig(Integer.MAX_VALUE, OverflowPolicy.BLOCK, MailboxType.RING_BUFFER, WaitStrategy.PARK));
+    }
+
+    private static Mailbox ringBuffer(int capacity, OverflowPolicy policy, WaitStrategy waitStrategy, MailboxCounters counters) {
+        return new RingBufferMailbox(new MailboxConfig(capacity, policy, MailboxType.RING_BUFFER, waitStrategy), counters);
+    }
+
+    private static List<Message> drain(Mailbox mailbox) {
+        List<Message> messages = new ArrayList<>();
+        mailbox.drainTo(messages);
+        return messages;
+    }
+}
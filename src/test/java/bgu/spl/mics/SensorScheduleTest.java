@@ -0,0 +1,93 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+class SensorScheduleTest {
+
+    private GPSIMU gpsimu;
+    private Camera camera;
+
+    @BeforeEach
+    void setUp() {
+        FusionSlam.getInstance().reset();
+        // The PoseService stopped, so only the camera and the LiDAR workers are due
+        gpsimu = new GPSIMU(Collections.emptyList());
+        gpsimu.setStatus(STATUS.DOWN);
+        // Sends its detections 2 ticks after taking them at ticks 3 and 6, and stops at tick 8
+        camera = new Camera(1, 2, List.of(
+                new StampedDetectedObjects(3, List.of(new DetectedObject("Wall_1", "Wall"))),
+                new StampedDetectedObjects(6, List.of(new DetectedObject("Wall_2", "Wall")))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        FusionSlam.getInstance().reset();
+    }
+
+    @Test
+    void testEveryTickIsDueWhileThePoseServiceRuns() {
+        // Arrange
+        gpsimu.setStatus(STATUS.UP);
+        SensorSchedule schedule = new SensorSchedule(List.of(camera), Collections.emptyList(), gpsimu, null);
+
+        // Act & Assert
+        assertEquals(2, schedule.nextDueTick(1));
+        assertEquals(5, schedule.nextDueTick(4));
+    }
+
+    @Test
+    void testCameraIsDueWhenItTakesSendsOrStops() {
+        // Arrange
+        SensorSchedule schedule = new SensorSchedule(List.of(camera), Collections.emptyList(), gpsimu, null);
+
+        // Act & Assert: Takes at 3 and 6, sends at 5 and 8, and stops at 8
+        assertEquals(3, schedule.nextDueTick(1));
+        assertEquals(5, schedule.nextDueTick(3));
+        assertEquals(6, schedule.nextDueTick(5));
+        assertEquals(8, schedule.nextDueTick(6));
+        assertEquals(9, schedule.nextDueTick(8), "A camera still up should stop at the next tick.");
+    }
+
+    @Test
+    void testNoTickIsDueOnceEverySensorStopped() {
+        // Arrange
+        camera.setStatus(STATUS.DOWN);
+        SensorSchedule schedule = new SensorSchedule(List.of(camera), Collections.emptyList(), gpsimu, null);
+
+        // Act & Assert
+        assertEquals(Integer.MAX_VALUE, schedule.nextDueTick(1));
+    }
+
+    @Test
+    void testLiDarWorkerIsDueAtDelayedDetectionsAndErrors() throws IOException {
+        // Arrange: A worker sending detections 3 ticks after they were taken, and crashing at tick 12
+        Path lidarData = Files.createTempFile("lidar_data", ".json");
+        Files.writeString(lidarData, "[{\"time\": 12, \"id\": \"ERROR\", \"cloudPoints\": []}]");
+        LiDarDataBase.initializeInstance(lidarData.toString());
+        camera.setStatus(STATUS.DOWN);
+        LiDarWorkerTracker lidarWorker = new LiDarWorkerTracker(1, 3, lidarData.toString());
+        SensorSchedule schedule = new SensorSchedule(List.of(camera), List.of(lidarWorker), gpsimu, LiDarDataBase.getInstance());
+        FusionSlam.getInstance().setActiveCameras(1);
+
+        // Act & Assert: Detections taken at 3 and 6 are sent at 6 and 9, then the error comes
+        assertEquals(6, schedule.nextDueTick(1));
+        assertEquals(9, schedule.nextDueTick(6));
+        assertEquals(12, schedule.nextDueTick(9));
+
+        // Act & Assert: Once the cameras stopped, the worker stops at the next tick
+        FusionSlam.getInstance().setActiveCameras(0);
+        assertEquals(10, schedule.nextDueTick(9));
+        Files.delete(lidarData);
+    }
+}
@@ -0,0 +1,235 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ServiceLifecycleTest {
+
+    private static class GoBroadcast implements Broadcast {}
+
+    private static class StopBroadcast implements Broadcast {}
+
+    private static class ReportEvent implements Event<Boolean> {
+        final String sender;
+
+        ReportEvent(String sender) {
+            this.sender = sender;
+        }
+    }
+
+    private static class CascadeEvent implements Event<Boolean> {}
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    // A driver sending a single broadcast, then stopping the services
+    private MicroService newDriver(String name) {
+        return new MicroService(name) {
+            @Override
+            protected void initialize() {
+                sendBroadcast(new GoBroadcast());
+                sendBroadcast(new StopBroadcast());
+                terminate();
+            }
+        };
+    }
+
+    @Test
+    void testDriverStartsOnceEveryServiceSubscribed() throws InterruptedException {
+        // Arrange: Services slow to subscribe, which would miss a broadcast sent right away
+        ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 4; i++) {
+            String name = "LifecycleSlow" + i;
+            long delay = 20L * i;
+            lifecycle.start(new MicroService(name) {
+                @Override
+                protected void initialize() {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    subscribeBroadcast(GoBroadcast.class, broadcast -> received.add(getName()));
+                    subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+                }
+            });
+        }
+
+        // Act
+        lifecycle.startDriver(newDriver("LifecycleDriver"));
+        lifecycle.awaitTermination();
+
+        // Assert: No service missed the first broadcast
+        assertEquals(4, received.size());
+    }
+
+    @Test
+    void testActionRunsOnceAfterEveryServiceStopped() throws InterruptedException {
+        // Arrange: Producers reporting to a collector before they stop
+        ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+        List<String> collected = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch collectorDone = new CountDownLatch(1);
+        lifecycle.start(new MicroService("LifecycleCollector") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(ReportEvent.class, event -> collected.add(event.sender));
+                subscribeBroadcast(StopBroadcast.class, MessagePriority.LOW, broadcast -> {
+                    collected.add("done");
+                    terminate();
+                    collectorDone.countDown();
+                });
+            }
+        });
+        List<MicroService> producers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            producers.add(new MicroService("LifecycleProducer" + i) {
+                @Override
+                protected void initialize() {
+                    subscribeBroadcast(GoBroadcast.class, broadcast -> {
+                        sendOneWay(new ReportEvent(getName()));
+                        terminate();
+                    });
+                }
+            });
+        }
+        AtomicInteger actions = new AtomicInteger();
+        lifecycle.whenStopped(producers, () -> {
+            actions.incrementAndGet();
+            messageBus.sendBroadcast(new StopBroadcast());
+        });
+        producers.forEach(lifecycle::start);
+
+        // Act
+        lifecycle.startDriver(new MicroService("LifecycleGo") {
+            @Override
+            protected void initialize() {
+                sendBroadcast(new GoBroadcast());
+                terminate();
+            }
+        });
+
+        // Assert: The action ran once, after every report was queued
+        assertTrue(collectorDone.await(5, TimeUnit.SECONDS), "The collector should be stopped by the action.");
+        lifecycle.awaitTermination();
+        assertEquals(1, actions.get());
+        assertEquals(4, collected.size());
+        assertEquals("done", collected.get(3));
+    }
+
+    @Test
+    void testEmptyGroupRunsActionAtOnce() {
+        // Arrange
+        ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+        AtomicInteger actions = new AtomicInteger();
+
+        // Act
+        lifecycle.whenStopped(List.of(), actions::incrementAndGet);
+
+        // Assert
+        assertEquals(1, actions.get());
+    }
+
+    @Test
+    void testFailedInitializationDoesNotBlockStartup() throws InterruptedException {
+        // Arrange: An actor whose initialization fails
+        ActorScheduler scheduler = new ActorScheduler(2);
+        ServiceLifecycle lifecycle = new ServiceLifecycle(scheduler);
+        AtomicInteger stopped = new AtomicInteger();
+        MicroService failing = new MicroService("LifecycleFailing") {
+            @Override
+            protected void initialize() {
+                throw new IllegalStateException("Expected by the test");
+            }
+        };
+        lifecycle.whenStopped(List.of(failing), stopped::incrementAndGet);
+
+        // Act
+        lifecycle.start(failing);
+        lifecycle.awaitStartup();
+        lifecycle.awaitTermination();
+
+        // Assert: It is counted as stopped as well
+        assertEquals(1, stopped.get());
+    }
+
+    @Test
+    void testQuiescenceWaitsForCascadingMessages() throws InterruptedException {
+        assertQuiescenceWaitsForCascade(new ServiceLifecycle(ExecutionMode.PLATFORM), "Platform");
+    }
+
+    @Test
+    void testQuiescenceWaitsForCascadingMessagesOfActors() throws InterruptedException {
+        assertQuiescenceWaitsForCascade(new ServiceLifecycle(new ActorScheduler(2)), "Actor");
+    }
+
+    @Test
+    void testQuiescenceWaitsForCascadingMessagesOfDeterministicActors() throws InterruptedException {
+        assertQuiescenceWaitsForCascade(new ServiceLifecycle(new DeterministicScheduler()), "Deterministic");
+    }
+
+    // A driver sends a broadcast to a service forwarding an event to another, both slow to handle
+    // them, and checks the event was handled once it waited for quiescence
+    private void assertQuiescenceWaitsForCascade(ServiceLifecycle lifecycle, String prefix) throws InterruptedException {
+        // Arrange
+        AtomicInteger handled = new AtomicInteger();
+        List<Integer> seenByDriver = Collections.synchronizedList(new ArrayList<>());
+        lifecycle.start(new MicroService(prefix + "QuiescentForwarder") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(GoBroadcast.class, broadcast -> {
+                    sleep(20);
+                    sendOneWay(new CascadeEvent());
+                });
+                subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+            }
+        });
+        lifecycle.start(new MicroService(prefix + "QuiescentHandler") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(CascadeEvent.class, event -> {
+                    sleep(20);
+                    handled.incrementAndGet();
+                });
+                subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+            }
+        });
+
+        // Act
+        lifecycle.startDriver(new MicroService(prefix + "QuiescentDriver") {
+            @Override
+            protected void initialize() {
+                try {
+                    for (int round = 0; round < 3; round++) {
+                        sendBroadcast(new GoBroadcast());
+                        awaitQuiescence();
+                        seenByDriver.add(handled.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sendBroadcast(new StopBroadcast());
+                terminate();
+            }
+        });
+        lifecycle.awaitTermination();
+
+        // Assert: Every round was fully handled before the driver went on
+        assertEquals(List.of(1, 2, 3), seenByDriver);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
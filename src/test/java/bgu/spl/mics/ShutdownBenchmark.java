@@ -0,0 +1,85 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how long it takes to unregister thousands of micro-services while many
+ * message types are in use, like the end of a simulation with many sensors.
+ * Each service subscribes to a few of {@link #EVENT_TYPES} event types and
+ * {@link #BROADCAST_TYPES} broadcast types.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+class ShutdownBenchmark {
+
+    private static final int[] SERVICE_COUNTS = {1_000, 5_000, 10_000};
+    private static final int EVENT_TYPES = 100;
+    private static final int BROADCAST_TYPES = 100;
+    private static final int SUBSCRIPTIONS_PER_KIND = 2;
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void benchmarkUnregister() {
+        List<Class<? extends Event<?>>> eventTypes = new ArrayList<>();
+        List<Class<? extends Broadcast>> broadcastTypes = new ArrayList<>();
+        for (int i = 0; i < EVENT_TYPES; i++) {
+            eventTypes.add((Class) newMessageType(Event.class));
+        }
+        for (int i = 0; i < BROADCAST_TYPES; i++) {
+            broadcastTypes.add(newMessageType(Broadcast.class));
+        }
+
+        System.out.println("ShutdownBenchmark: " + EVENT_TYPES + " event types, " + BROADCAST_TYPES
+                + " broadcast types, " + SUBSCRIPTIONS_PER_KIND + " of each per service");
+        runRound(1_000, eventTypes, broadcastTypes, true); // Warm up the JIT
+        for (int services : SERVICE_COUNTS) {
+            runRound(services, eventTypes, broadcastTypes, false);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void runRound(int services, List<Class<? extends Event<?>>> eventTypes,
+                          List<Class<? extends Broadcast>> broadcastTypes, boolean warmUp) {
+        List<MicroService> registered = new ArrayList<>();
+        for (int i = 0; i < services; i++) {
+            MicroService m = new MicroService("Service" + i) {
+                @Override
+                protected void initialize() {
+                    // Driven directly through the message bus
+                }
+            };
+            messageBus.register(m);
+            for (int j = 0; j < SUBSCRIPTIONS_PER_KIND; j++) {
+                messageBus.subscribeEvent((Class) eventTypes.get((i * SUBSCRIPTIONS_PER_KIND + j) % eventTypes.size()), m);
+                messageBus.subscribeBroadcast(broadcastTypes.get((i * SUBSCRIPTIONS_PER_KIND + j) % broadcastTypes.size()), m);
+            }
+            registered.add(m);
+        }
+
+        long startTime = System.nanoTime();
+        for (MicroService m : registered) {
+            messageBus.unregister(m);
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        if (!warmUp) {
+            System.out.printf("  services=%,6d  unregister all=%8.2f ms  per service=%8.2f us%n",
+                    services, elapsed / 1e6, elapsed / 1e3 / services);
+        }
+    }
+
+    // Creates a new message type implementing messageInterface. Proxy classes are cached per class
+    // loader, so a fresh loader gives a distinct class every time.
+    @SuppressWarnings("unchecked")
+    private static <T> Class<? extends T> newMessageType(Class<T> messageInterface) {
+        ClassLoader loader = new ClassLoader(ShutdownBenchmark.class.getClassLoader()) {};
+        Object instance = Proxy.newProxyInstance(loader, new Class<?>[]{messageInterface}, (proxy, method, args) -> null);
+        return (Class<? extends T>) instance.getClass();
+    }
+}
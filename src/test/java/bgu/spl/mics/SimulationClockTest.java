@@ -0,0 +1,147 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class SimulationClockTest {
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void testAwaitTickWaitsUntilClockReachesTick() throws InterruptedException {
+        // Arrange: A thread waiting for the second tick
+        SimulationClock clock = new SimulationClock();
+        CountDownLatch reached = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                clock.awaitTick(2);
+                reached.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        // Act & Assert: The first tick does not release it, the second does
+        assertEquals(0, clock.currentTick());
+        assertEquals(1, clock.advance());
+        assertFalse(reached.await(100, TimeUnit.MILLISECONDS), "The waiter should wait for tick 2.");
+        assertEquals(2, clock.advance());
+        assertTrue(reached.await(5, TimeUnit.SECONDS), "The waiter should be released at tick 2.");
+        waiter.join(5000);
+
+        // A tick already reached does not block
+        clock.awaitTick(1);
+    }
+
+    @Test
+    void testServiceHandlesEveryTickInOrder() throws InterruptedException {
+        runTickingService("LockingTickService", MailboxConfig.UNBOUNDED);
+    }
+
+    @Test
+    void testRingBufferServiceHandlesEveryTickInOrder() throws InterruptedException {
+        runTickingService("RingBufferTickService",
+                new MailboxConfig(1024, OverflowPolicy.BLOCK, MailboxType.RING_BUFFER, WaitStrategy.PARK));
+    }
+
+    // Advances the clock faster than a service following it handles the ticks, and checks it handled each one
+    private void runTickingService(String name, MailboxConfig config) throws InterruptedException {
+        class TestBroadcast implements Broadcast {}
+        class StopBroadcast implements Broadcast {}
+        int ticks = 500;
+        SimulationClock clock = new SimulationClock();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        List<Integer> handled = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        messageBus.setMailboxConfig(name, config);
+        MicroService service = new MicroService(name) {
+            @Override
+            protected void initialize() {
+                subscribeTick(clock, handled::add);
+                subscribeBroadcast(TestBroadcast.class, broadcast -> messages.add("broadcast"));
+                subscribeBroadcast(StopBroadcast.class, broadcast -> terminate());
+                subscribed.countDown();
+            }
+        };
+        Thread thread = new Thread(service);
+        thread.start();
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS), "The service should initialize.");
+
+        // Act: Messages are still delivered next to the ticks
+        messageBus.sendBroadcast(new TestBroadcast());
+        for (int i = 0; i < ticks; i++) {
+            clock.advance();
+        }
+        messageBus.sendBroadcast(new StopBroadcast());
+        thread.join(5000);
+
+        // Assert: The ticks reached before the stop broadcast was taken are handled before it
+        assertFalse(thread.isAlive(), "The service should terminate.");
+        List<Integer> expected = new ArrayList<>();
+        for (int tick = 1; tick <= ticks; tick++) {
+            expected.add(tick);
+        }
+        assertEquals(expected, handled);
+        assertEquals(List.of("broadcast"), messages);
+    }
+
+    @Test
+    void testActorIsScheduledOnTicks() throws InterruptedException {
+        // Arrange: An actor following the clock, without any messages
+        SimulationClock clock = new SimulationClock();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        CountDownLatch lastTick = new CountDownLatch(1);
+        List<Integer> handled = new ArrayList<>();
+        ActorScheduler scheduler = new ActorScheduler(2);
+        scheduler.spawn(new MicroService("TickActor") {
+            @Override
+            protected void initialize() {
+                subscribeTick(clock, tick -> {
+                    handled.add(tick);
+                    if (tick == 3) {
+                        terminate();
+                        lastTick.countDown();
+                    }
+                });
+                subscribed.countDown();
+            }
+        });
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS), "The actor should initialize.");
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            clock.advance();
+        }
+
+        // Assert
+        assertTrue(lastTick.await(5, TimeUnit.SECONDS), "The actor should run on every tick.");
+        scheduler.awaitTermination();
+        assertEquals(List.of(1, 2, 3), handled);
+    }
+
+    @Test
+    void testFollowingTwoClocksFails() {
+        // Arrange
+        SimulationClock first = new SimulationClock();
+        SimulationClock second = new SimulationClock();
+        MicroService service = new MicroService("TwoClocks") {
+            @Override
+            protected void initialize() {
+                subscribeTick(first, tick -> {});
+                subscribeTick(first, tick -> {}); // A second callback on the same clock is fine
+                subscribeTick(second, tick -> {});
+            }
+        };
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, service::start);
+        service.stop();
+    }
+}
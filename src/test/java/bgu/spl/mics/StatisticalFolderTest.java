@@ -0,0 +1,29 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticalFolderTest {
+
+    private StatisticalFolder statisticalFolder;
+
+    @BeforeEach
+    void setUp() {
+        statisticalFolder = StatisticalFolder.getInstance();
+        statisticalFolder.reset();
+    }
+
+    @Test
+    void testSkippedTicksCountInTheSystemRuntime() {
+        // Act: One sent tick, then 4 skipped ones, then none
+        statisticalFolder.incrementSystemRuntime();
+        statisticalFolder.incrementSystemRuntime(4);
+        statisticalFolder.incrementSystemRuntime(0);
+
+        // Assert
+        assertEquals(5, statisticalFolder.getSystemRuntime());
+    }
+}
@@ -0,0 +1,201 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.broadcasts.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.broadcasts.TickBroadcast;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.SensorSchedule;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.services.TickPacing;
+import bgu.spl.mics.application.services.TickTimings;
+import bgu.spl.mics.application.services.TimeService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeServiceTest {
+
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
+
+    @Test
+    void testMillisecondTicksDoNotDrift() throws InterruptedException {
+        // Arrange: 50 ticks of 4 milliseconds
+        SimulationClock clock = new SimulationClock();
+        TimeService timeService = new TimeService(4, TimeUnit.MILLISECONDS, 50, clock, TickPacing.PACED);
+        Thread thread = new Thread(timeService);
+
+        // Act
+        long start = System.nanoTime();
+        thread.start();
+        thread.join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert: Every tick was sent and timed, and the run took 50 ticks, not 50 ticks plus the time spent sending them
+        assertEquals(50, clock.currentTick());
+        TickTimings timings = timeService.getTickTimings();
+        assertEquals(50, timings.getTicks());
+        assertTrue(elapsedMillis >= 200, "The ticks should not come early, took " + elapsedMillis + " ms.");
+        assertTrue(elapsedMillis < 400, "The ticks should keep to their schedule, took " + elapsedMillis + " ms.");
+        assertTrue(timings.getMaxJitterNanos() >= timings.getMeanJitterNanos());
+    }
+
+    @Test
+    void testTicksBackToBackAreNotTimed() throws InterruptedException {
+        // Arrange
+        SimulationClock clock = new SimulationClock();
+        TimeService timeService = new TimeService(0, TimeUnit.MILLISECONDS, 20, clock, TickPacing.PACED);
+        Thread thread = new Thread(timeService);
+
+        // Act
+        thread.start();
+        thread.join();
+
+        // Assert
+        assertEquals(20, clock.currentTick());
+        assertEquals(0, timeService.getTickTimings().getTicks());
+    }
+
+    @Test
+    void testReplaySpeedChangesWhileRunning() throws InterruptedException {
+        // Arrange: 40 ticks of 5 milliseconds, 200 milliseconds at replay speed 1
+        SimulationClock clock = new SimulationClock();
+        TimeService timeService = new TimeService(5, TimeUnit.MILLISECONDS, 40, clock, TickPacing.PACED);
+        Thread thread = new Thread(timeService);
+
+        // Act: Replay 4 times as fast from tick 10 on
+        long start = System.nanoTime();
+        thread.start();
+        clock.awaitTick(10);
+        timeService.setReplaySpeed(4);
+        thread.join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert: About 10 ticks of 5 milliseconds and 30 of 1.25 milliseconds
+        assertEquals(40, clock.currentTick());
+        assertEquals(4, timeService.getReplaySpeed());
+        assertTrue(elapsedMillis >= 70, "The ticks should not come early, took " + elapsedMillis + " ms.");
+        assertTrue(elapsedMillis < 160, "The ticks should come faster, took " + elapsedMillis + " ms.");
+    }
+
+    @Test
+    void testReplaySpeedMustBePositive() {
+        // Arrange
+        TimeService timeService = new TimeService(1, 10);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> timeService.setReplaySpeed(0));
+        assertThrows(IllegalArgumentException.class, () -> timeService.setReplaySpeed(-2));
+        assertThrows(IllegalArgumentException.class, () -> timeService.setReplaySpeed(Double.NaN));
+        assertEquals(1, timeService.getReplaySpeed());
+    }
+
+    @Test
+    void testTicksDueWhileServicesFallBehindAreCounted() throws InterruptedException {
+        // Arrange: A service taking 10 milliseconds per tick of 2 milliseconds
+        ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+        lifecycle.start(new MicroService("TimeServiceSlowSubscriber") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> terminate());
+            }
+        });
+        TimeService timeService = new TimeService(2, TimeUnit.MILLISECONDS, 10, null, TickPacing.PACED);
+
+        // Act
+        lifecycle.startDriver(timeService);
+        lifecycle.awaitTermination();
+
+        // Assert: The ticks after the first one were due before the service handled the one before
+        assertTrue(timeService.getTickTimings().getLaggingTicks() > 0, "The slow service should be reported as lagging.");
+    }
+
+    @Test
+    void testSparseTicksSkipTheTicksNoSensorIsDueAt() throws InterruptedException {
+        // Arrange: A camera taking detections at ticks 3 and 6 and sending them 2 ticks later, stopped by
+        // its subscriber once it sent the last one. The PoseService already stopped.
+        FusionSlam.getInstance().reset();
+        StatisticalFolder.getInstance().reset();
+        GPSIMU gpsimu = new GPSIMU(Collections.emptyList());
+        gpsimu.setStatus(STATUS.DOWN);
+        Camera camera = new Camera(1, 2, List.of(
+                new StampedDetectedObjects(3, List.of(new DetectedObject("Wall_1", "Wall"))),
+                new StampedDetectedObjects(6, List.of(new DetectedObject("Wall_2", "Wall")))));
+        SensorSchedule schedule = new SensorSchedule(List.of(camera), Collections.emptyList(), gpsimu, null);
+        ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        lifecycle.start(new MicroService("TimeServiceSparseCamera") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    handled.add(tick.getCurrentTick());
+                    if (tick.getCurrentTick() == 8) {
+                        camera.setStatus(STATUS.DOWN);
+                    }
+                });
+                subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> terminate());
+            }
+        });
+        TimeService timeService = new TimeService(1, TimeUnit.SECONDS, 20, null, TickPacing.AS_FAST_AS_POSSIBLE, schedule);
+
+        // Act
+        lifecycle.startDriver(timeService);
+        lifecycle.awaitTermination();
+
+        // Assert: Only the due ticks were sent, and the skipped ones, up to the end of the run, still count
+        assertEquals(List.of(1, 3, 5, 6, 8), handled);
+        assertEquals(20, StatisticalFolder.getInstance().getSystemRuntime());
+    }
+
+    @Test
+    void testTicksAsFastAsPossibleSkipTopicTicksRejectedByAFilter() throws InterruptedException {
+        // Arrange: Ticks read from a topic by a service only due at even ticks
+        messageBus.setBroadcastMode(TickBroadcast.class, BroadcastMode.TOPIC);
+        try {
+            ServiceLifecycle lifecycle = new ServiceLifecycle(ExecutionMode.PLATFORM);
+            List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+            lifecycle.start(new MicroService("TimeServiceEvenTicks") {
+                @Override
+                protected void initialize() {
+                    subscribeBroadcast(TickBroadcast.class, tick -> tick.getCurrentTick() % 2 == 0,
+                            tick -> handled.add(tick.getCurrentTick()));
+                    subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> terminate());
+                }
+            });
+            TimeService timeService = new TimeService(1, TimeUnit.SECONDS, 10, null, TickPacing.AS_FAST_AS_POSSIBLE);
+
+            // Act: The odd ticks never wake the service, which must still count as quiescent
+            lifecycle.startDriver(timeService);
+            Thread waiter = new Thread(() -> {
+                try {
+                    lifecycle.awaitTermination();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiter.start();
+            waiter.join(10000);
+
+            // Assert
+            assertFalse(waiter.isAlive(), "The ticks should not stop at the first tick the filter rejects.");
+            assertEquals(List.of(2, 4, 6, 8, 10), handled);
+        } finally {
+            messageBus.setBroadcastMode(TickBroadcast.class, BroadcastMode.FAN_OUT);
+        }
+    }
+}